@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.MetaScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.split.HBaseSplitKeys;
+
+/**
+ * The region boundaries of a set of tables: for each table, the start keys of its regions, in order, 
+ * leaving out the first region's (which is always empty). A table with one region has no boundaries.
+ * 
+ * A layout can come from a live cluster (the regions listed in .META.), from a snapshot (which records the 
+ * cluster's layout when it was taken), or from a schema whose tables declare how they're split (with 
+ * SPLITKEYS, or the attributes that pre-split a new table; see HBaseSplitKeys). Tables in a schema that 
+ * don't declare any splits aren't in its layout, so they're never compared.
+ */
+public class HBaseRegionLayout {
+
+  private final SortedMap<String, List<byte[]>> boundaries = new TreeMap<String, List<byte[]>>();
+
+  /**
+   * Get the layout of the tables on the cluster the configuration points to, that match the filter. Regions 
+   * that are offline, or that have been split (and are waiting to be cleaned up), are left out.
+   */
+  public static HBaseRegionLayout fromCluster(Configuration config, HBaseTableFilter tableFilter) {
+    HBaseRegionLayout layout = new HBaseRegionLayout();
+    List<HRegionInfo> regions;
+    try {
+      regions = MetaScanner.listAllRegions(config, false);
+    } catch (IOException e) {
+      throw new ScootException("Unable to list the regions on the cluster: " + e.getMessage(), e);
+    }
+    Map<String, TreeSet<byte[]>> keys = new TreeMap<String, TreeSet<byte[]>>();
+    for (HRegionInfo region : regions) {
+      String tableName = region.getTableNameAsString();
+      if (!tableFilter.matches(tableName)) continue;
+      TreeSet<byte[]> tableKeys = keys.get(tableName);
+      if (tableKeys == null) {
+        tableKeys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+        keys.put(tableName, tableKeys);
+      }
+      if (region.getStartKey().length > 0) tableKeys.add(region.getStartKey());
+    }
+    for (Map.Entry<String, TreeSet<byte[]>> table : keys.entrySet()) {
+      layout.addTable(table.getKey(), new ArrayList<byte[]>(table.getValue()));
+    }
+    return layout;
+  }
+
+  /**
+   * Get the layout the tables in the schema declare
+   */
+  public static HBaseRegionLayout fromSchema(HBaseSchema schema) {
+    HBaseRegionLayout layout = new HBaseRegionLayout();
+    for (HTableDescriptor table : schema.getTables()) {
+      if (table.getValue(HBaseSchemaAttribute.SPLITKEYS.name()) == null 
+          && table.getValue(HBaseSchemaAttribute.NUMREGIONS.name()) == null
+          && table.getValue(HBaseSchemaAttribute.SALTBUCKETS.name()) == null) {
+        continue;
+      }
+      byte[][] keys = HBaseSplitKeys.getSplitKeys(table);
+      List<byte[]> tableKeys = new ArrayList<byte[]>();
+      if (keys != null) Collections.addAll(tableKeys, keys);
+      layout.addTable(table.getNameAsString(), tableKeys);
+    }
+    return layout;
+  }
+
+  /**
+   * Get a layout that was written to properties with toProperties
+   */
+  public static HBaseRegionLayout fromProperties(Map<String, String> properties, String prefix) {
+    HBaseRegionLayout layout = new HBaseRegionLayout();
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      if (property.getKey().startsWith(prefix)) {
+        List<byte[]> keys = new ArrayList<byte[]>();
+        Collections.addAll(keys, HBaseSplitKeys.fromString(property.getValue()));
+        layout.addTable(property.getKey().substring(prefix.length()), keys);
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * Write the layout into properties: one per table, named with the prefix and the table name, listing
+   * its boundaries the way SPLITKEYS does
+   */
+  public void toProperties(Map<String, String> properties, String prefix) {
+    for (Map.Entry<String, List<byte[]>> table : boundaries.entrySet()) {
+      properties.put(prefix + table.getKey(), HBaseSplitKeys.toString(table.getValue().toArray(new byte[0][])));
+    }
+  }
+
+  /**
+   * Set the boundaries of a table, which have to be in ascending order
+   */
+  public void addTable(String tableName, List<byte[]> tableBoundaries) {
+    for (int i = 1; i < tableBoundaries.size(); i++) {
+      if (Bytes.compareTo(tableBoundaries.get(i - 1), tableBoundaries.get(i)) >= 0) {
+        throw new ScootException("The region boundaries of table " + tableName + " aren't in ascending order");
+      }
+    }
+    boundaries.put(tableName, Collections.unmodifiableList(new ArrayList<byte[]>(tableBoundaries)));
+  }
+
+  /**
+   * The names of the tables in the layout, in order
+   */
+  public List<String> getTableNames() {
+    return new ArrayList<String>(boundaries.keySet());
+  }
+
+  /**
+   * The boundaries of the table, in order, or null if it isn't in the layout
+   */
+  public List<byte[]> getBoundaries(String tableName) {
+    return boundaries.get(tableName);
+  }
+
+  public int getTableCount() {
+    return boundaries.size();
+  }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * The differences between the region boundaries of two layouts (see HBaseRegionLayout): the "from" layout is 
+ * the one a cluster has, and the "to" layout is the reference it should have. For each table in both, the 
+ * boundaries the reference has that the cluster doesn't are missing (and can be added by splitting the region 
+ * they fall in), and the ones the cluster has that the reference doesn't are extra.
+ * 
+ * HBase can't merge regions while their table is online, so extra boundaries are only reported; nothing 
+ * here removes them. Tables that are only in one of the layouts are counted, but not compared.
+ */
+public class HBaseRegionLayoutDiff {
+
+  private final List<TableLayoutChange> changes = new ArrayList<TableLayoutChange>();
+  private int matchingTables = 0;
+  private final List<String> onlyFrom = new ArrayList<String>();
+  private final List<String> onlyTo = new ArrayList<String>();
+
+  public HBaseRegionLayoutDiff(HBaseRegionLayout from, HBaseRegionLayout to) {
+    for (String tableName : from.getTableNames()) {
+      if (to.getBoundaries(tableName) == null) onlyFrom.add(tableName);
+    }
+    for (String tableName : to.getTableNames()) {
+      List<byte[]> fromBoundaries = from.getBoundaries(tableName);
+      if (fromBoundaries == null) {
+        onlyTo.add(tableName);
+        continue;
+      }
+      TableLayoutChange change = new TableLayoutChange(tableName, fromBoundaries, to.getBoundaries(tableName));
+      if (change.isEmpty()) {
+        matchingTables++;
+      } else {
+        changes.add(change);
+      }
+    }
+  }
+
+  /**
+   * The tables whose boundaries differ, in name order
+   */
+  public List<TableLayoutChange> getTableChanges() {
+    return changes;
+  }
+
+  /**
+   * How many tables have the same boundaries in both layouts
+   */
+  public int getMatchingTableCount() {
+    return matchingTables;
+  }
+
+  /**
+   * The tables in the "from" layout (the cluster's) that the reference doesn't have a layout for
+   */
+  public List<String> getTablesOnlyInFrom() {
+    return onlyFrom;
+  }
+
+  /**
+   * The tables the reference has a layout for that aren't in the "from" layout, so can't be split to match it
+   */
+  public List<String> getTablesOnlyInTo() {
+    return onlyTo;
+  }
+
+  /**
+   * How many boundaries are missing from the "from" layout, across all the tables
+   */
+  public int getMissingCount() {
+    int count = 0;
+    for (TableLayoutChange change : changes) {
+      count += change.missing.size();
+    }
+    return count;
+  }
+
+  /**
+   * Describe the differences, table by table
+   */
+  public String getReport() {
+    StringBuilder sb = new StringBuilder();
+    int extra = 0;
+    for (TableLayoutChange change : changes) {
+      extra += change.extra.size();
+    }
+    sb.append("Region layouts: ").append(changes.size()).append(" table(s) differ, ").append(matchingTables)
+      .append(" match; ").append(getMissingCount()).append(" boundaries missing, ").append(extra).append(" extra.\n");
+    for (TableLayoutChange change : changes) {
+      sb.append("  ").append(change.tableName).append(": ").append(change.fromCount).append(" region(s), should have ")
+        .append(change.toCount).append('\n');
+      for (byte[] key : change.missing) {
+        sb.append("    missing ").append(Bytes.toStringBinary(key)).append('\n');
+      }
+      for (byte[] key : change.extra) {
+        sb.append("    extra   ").append(Bytes.toStringBinary(key)).append('\n');
+      }
+    }
+    if (!onlyFrom.isEmpty()) {
+      sb.append("  Not in the reference layout: ").append(onlyFrom).append('\n');
+    }
+    if (!onlyTo.isEmpty()) {
+      sb.append("  Missing from the cluster, so not compared: ").append(onlyTo).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The differences between the boundaries of one table
+   */
+  public static class TableLayoutChange {
+    public final String tableName;
+    /** Boundaries the reference has that the cluster doesn't, in order */
+    public final List<byte[]> missing;
+    /** Boundaries the cluster has that the reference doesn't, in order */
+    public final List<byte[]> extra;
+    /** How many regions the table has in each layout */
+    public final int fromCount;
+    public final int toCount;
+
+    TableLayoutChange(String tableName, List<byte[]> from, List<byte[]> to) {
+      this.tableName = tableName;
+      this.fromCount = from.size() + 1;
+      this.toCount = to.size() + 1;
+      List<byte[]> missing = new ArrayList<byte[]>();
+      List<byte[]> extra = new ArrayList<byte[]>();
+      // both are in order, so walk them together
+      int f = 0, t = 0;
+      while (f < from.size() || t < to.size()) {
+        int compared = f == from.size() ? 1 : t == to.size() ? -1 : Bytes.compareTo(from.get(f), to.get(t));
+        if (compared < 0) {
+          extra.add(from.get(f++));
+        } else if (compared > 0) {
+          missing.add(to.get(t++));
+        } else {
+          f++;
+          t++;
+        }
+      }
+      this.missing = Collections.unmodifiableList(missing);
+      this.extra = Collections.unmodifiableList(extra);
+    }
+
+    public boolean isEmpty() {
+      return missing.isEmpty() && extra.isEmpty();
+    }
+  }
+
+}
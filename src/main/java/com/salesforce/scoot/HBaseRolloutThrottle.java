@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+
+/**
+ * Limits how hard applying a schema change leans on the master. Every table operation opens, closes or 
+ * reopens regions, which the master has to assign; so before each operation is started, this waits until 
+ * the number of regions in transition on the cluster is down to a limit, and it pauses between one operation
+ * and the next (on each thread or lane). How many operations run at once is limited separately, by the 
+ * script's lanes or the executor's threads. The time spent waiting is added up, so it can be reported.
+ * 
+ * The limits come from the configuration:
+ *   scoot.throttle.max.regions.in.transition - wait until there are no more than this many (default -1: don't wait)
+ *   scoot.throttle.pause.ms                  - how long to pause between operations (default 0)
+ *   scoot.throttle.poll.ms                   - how often to check the regions in transition while waiting (default 1000)
+ * 
+ * The same limits apply whether the changes are scripted (see HBaseRubySchemaPatchScripter) or applied directly.
+ */
+public class HBaseRolloutThrottle {
+
+  public static final String MAX_REGIONS_IN_TRANSITION_KEY = "scoot.throttle.max.regions.in.transition";
+  public static final String PAUSE_KEY = "scoot.throttle.pause.ms";
+  public static final String POLL_KEY = "scoot.throttle.poll.ms";
+  public static final long DEFAULT_POLL_MS = 1000;
+
+  private final int maxRegionsInTransition;
+  private final long pauseMs;
+  private final long pollMs;
+  private final AtomicLong waitedMs = new AtomicLong();
+  private final AtomicLong pausedMs = new AtomicLong();
+
+  public HBaseRolloutThrottle(Configuration config) {
+    this(config.getInt(MAX_REGIONS_IN_TRANSITION_KEY, -1), config.getLong(PAUSE_KEY, 0), config.getLong(POLL_KEY, DEFAULT_POLL_MS));
+  }
+
+  /**
+   * @param maxRegionsInTransition negative not to wait for regions in transition
+   */
+  public HBaseRolloutThrottle(int maxRegionsInTransition, long pauseMs, long pollMs) {
+    this.maxRegionsInTransition = maxRegionsInTransition;
+    this.pauseMs = Math.max(0, pauseMs);
+    this.pollMs = Math.max(1, pollMs);
+  }
+
+  /**
+   * Does this ever hold anything up?
+   */
+  public boolean isThrottling() {
+    return isLimitingRegionsInTransition() || pauseMs > 0;
+  }
+
+  public boolean isLimitingRegionsInTransition() {
+    return maxRegionsInTransition >= 0;
+  }
+
+  public int getMaxRegionsInTransition() {
+    return maxRegionsInTransition;
+  }
+
+  public long getPauseMs() {
+    return pauseMs;
+  }
+
+  public long getPollMs() {
+    return pollMs;
+  }
+
+  /**
+   * Wait until the cluster has few enough regions in transition to start another operation
+   */
+  public void awaitRegionsInTransition(HBaseAdmin admin) throws IOException {
+    if (!isLimitingRegionsInTransition()) return;
+    long start = System.currentTimeMillis();
+    try {
+      while (admin.getClusterStatus().getRegionsInTransition().size() > maxRegionsInTransition) {
+        sleep(pollMs);
+      }
+    } finally {
+      waitedMs.addAndGet(System.currentTimeMillis() - start);
+    }
+  }
+
+  /**
+   * Pause between one operation and the next
+   */
+  public void pause() throws IOException {
+    if (pauseMs == 0) return;
+    long start = System.currentTimeMillis();
+    try {
+      sleep(pauseMs);
+    } finally {
+      pausedMs.addAndGet(System.currentTimeMillis() - start);
+    }
+  }
+
+  private static void sleep(long ms) throws IOException {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while throttled.");
+    }
+  }
+
+  /**
+   * The total time (over all threads) spent waiting for regions in transition so far
+   */
+  public long getWaitedMs() {
+    return waitedMs.get();
+  }
+
+  /**
+   * The total time (over all threads) spent pausing between operations so far
+   */
+  public long getPausedMs() {
+    return pausedMs.get();
+  }
+
+  /**
+   * Describe how long was spent throttled
+   */
+  public String getReport() {
+    return "Throttled for " + (getWaitedMs() + getPausedMs()) + " ms in all: " + getWaitedMs() 
+        + " ms waiting for regions in transition, " + getPausedMs() + " ms pausing between operations.";
+  }
+
+}
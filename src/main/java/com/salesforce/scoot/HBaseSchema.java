@@ -27,7 +27,10 @@ package com.salesforce.scoot;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hbase.HTableDescriptor;
 
@@ -35,11 +38,52 @@ import org.apache.hadoop.hbase.HTableDescriptor;
  * A collection of tables
  */
 public class HBaseSchema {
-  private final List<HTableDescriptor> tables = new ArrayList<HTableDescriptor>();
+  private final List<HTableDescriptor> tables;
+  private final Map<HTableDescriptor, Long> fingerprints = new IdentityHashMap<HTableDescriptor, Long>();
+  public HBaseSchema() {
+    this(new ArrayList<HTableDescriptor>());
+  }
+  /**
+   * Create a schema backed by the given list of tables. If the list is read-only, so is the schema.
+   */
+  public HBaseSchema(List<HTableDescriptor> tables) {
+    this.tables = tables;
+  }
   public void addTable(HTableDescriptor t) {
     tables.add(t);
   }
   public List<HTableDescriptor> getTables(){
     return Collections.unmodifiableList(tables);
   }
+  /**
+   * Get the tables in this schema as a name/object map, throwing an exception if there are duplicates
+   */
+  public Map<String, HTableDescriptor> getTablesByName() {
+    Map<String, HTableDescriptor> result = new HashMap<String, HTableDescriptor>();
+    for (HTableDescriptor t : tables) {
+      if (result.containsKey(t.getNameAsString())) {
+        throw new ScootException("Schema contains duplicate tables:" + t.getNameAsString());
+      }
+      result.put(t.getNameAsString(), t);
+    }
+    return result;
+  }
+  /**
+   * Get the fingerprint of one of the tables in this schema (see HBaseTableFingerprint). It's only computed
+   * the first time it's asked for, so tables shouldn't be modified after they've been diffed.
+   */
+  public long getFingerprint(HTableDescriptor t) {
+    Long fingerprint;
+    synchronized (fingerprints) {
+      fingerprint = fingerprints.get(t);
+    }
+    if (fingerprint == null) {
+      // computed outside the lock, so diffs on several threads don't wait for each other
+      fingerprint = HBaseTableFingerprint.of(t);
+      synchronized (fingerprints) {
+        fingerprints.put(t, fingerprint);
+      }
+    }
+    return fingerprint;
+  }
 }
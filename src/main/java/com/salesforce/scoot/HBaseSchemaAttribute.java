@@ -35,54 +35,67 @@ import org.apache.hadoop.hbase.regionserver.StoreFile;
 /**
  * Represents an officially supported attribute that a schema element in HBase can have. Scoot supports loading
  * other attributes, but it gives special treatment to these in making sure they can be correctly cast to the real
- * type, and allowing the loader to equate missing values and default values.
+ * type, and allowing the loader (and the diff) to equate missing values and default values.
  */
 public enum HBaseSchemaAttribute {
 
   /* Tables */
   DEFERRED_LOG_FLUSH(HTableDescriptor.DEFERRED_LOG_FLUSH, HTableDescriptor.class, Boolean.class, 
-      /* HTableDescriptor.DEFAULT_DEFERRED_LOG_FLUSH */ String.valueOf(false), null),
+      /* HTableDescriptor.DEFAULT_DEFERRED_LOG_FLUSH */ String.valueOf(false), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   IS_META(HTableDescriptor.IS_META, HTableDescriptor.class, Boolean.class, 
-      String.valueOf(false), null),
+      String.valueOf(false), null, HBaseSchemaChangeCost.DISABLE_REQUIRED),
   IS_ROOT(HTableDescriptor.IS_ROOT, HTableDescriptor.class, Boolean.class, 
-      String.valueOf(false), null),
+      String.valueOf(false), null, HBaseSchemaChangeCost.DISABLE_REQUIRED),
   MAX_FILESIZE(HTableDescriptor.MAX_FILESIZE, HTableDescriptor.class, Long.class, 
-      String.valueOf(HConstants.DEFAULT_MAX_FILE_SIZE), null),
+      String.valueOf(HConstants.DEFAULT_MAX_FILE_SIZE), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   MEMSTORE_FLUSHSIZE(HTableDescriptor.MEMSTORE_FLUSHSIZE, HTableDescriptor.class, Long.class, 
-      String.valueOf(HTableDescriptor.DEFAULT_MEMSTORE_FLUSH_SIZE), null),
+      String.valueOf(HTableDescriptor.DEFAULT_MEMSTORE_FLUSH_SIZE), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   OWNER(HTableDescriptor.OWNER, HTableDescriptor.class, String.class, 
-      null, null),
+      null, null, HBaseSchemaChangeCost.METADATA_ONLY),
   READONLY(HTableDescriptor.READONLY, HTableDescriptor.class, Boolean.class, 
-      String.valueOf(HTableDescriptor.DEFAULT_READONLY), null),
-  // NUMREGIONS and SPLITALGO aren't proper table attributes, but are used when pre-splitting a table
-  NUMREGIONS("NUMREGIONS", HTableDescriptor.class, Integer.class, null, null),
-  SPLITALGO("SPLITALGO", HTableDescriptor.class, String.class, null, null),
+      String.valueOf(HTableDescriptor.DEFAULT_READONLY), null, HBaseSchemaChangeCost.DISABLE_REQUIRED),
+  SPLIT_POLICY(HTableDescriptor.SPLIT_POLICY, HTableDescriptor.class, String.class, 
+      null, null, HBaseSchemaChangeCost.ONLINE_MODIFY),
+  // These aren't proper table attributes, but are used when pre-splitting a table (so changing them on an existing 
+  // table doesn't do anything, and they're never stored on the cluster); see HBaseSplitKeys
+  NUMREGIONS("NUMREGIONS", HTableDescriptor.class, Integer.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SPLITALGO("SPLITALGO", HTableDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SPLITFIRSTROW("SPLITFIRSTROW", HTableDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SPLITLASTROW("SPLITLASTROW", HTableDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SPLITSAMPLES("SPLITSAMPLES", HTableDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SPLITKEYS("SPLITKEYS", HTableDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SALTBUCKETS("SALTBUCKETS", HTableDescriptor.class, Integer.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  SALTWIDTH("SALTWIDTH", HTableDescriptor.class, Integer.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
   
   /* Column families */
   BLOCKCACHE(HColumnDescriptor.BLOCKCACHE, HColumnDescriptor.class, Boolean.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKCACHE), null),
+      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKCACHE), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   BLOCKSIZE(HColumnDescriptor.BLOCKSIZE, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE), 7),
+      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE), 7, HBaseSchemaChangeCost.ONLINE_MODIFY),
   BLOOMFILTER(HColumnDescriptor.BLOOMFILTER, HColumnDescriptor.class, StoreFile.BloomType.class, 
-      HColumnDescriptor.DEFAULT_BLOOMFILTER, 8),
+      HColumnDescriptor.DEFAULT_BLOOMFILTER, 8, HBaseSchemaChangeCost.ONLINE_MODIFY),
   COMPRESSION(HColumnDescriptor.COMPRESSION, HColumnDescriptor.class, Compression.Algorithm.class, 
-      HColumnDescriptor.DEFAULT_COMPRESSION, 7),
+      HColumnDescriptor.DEFAULT_COMPRESSION, 7, HBaseSchemaChangeCost.ONLINE_MODIFY),
   DATA_BLOCK_ENCODING(HColumnDescriptor.DATA_BLOCK_ENCODING, HColumnDescriptor.class, DataBlockEncoding.class, 
-      HColumnDescriptor.DEFAULT_DATA_BLOCK_ENCODING, 9),
+      HColumnDescriptor.DEFAULT_DATA_BLOCK_ENCODING, 9, HBaseSchemaChangeCost.ONLINE_MODIFY),
   ENCODE_ON_DISK(HColumnDescriptor.ENCODE_ON_DISK, HColumnDescriptor.class, Boolean.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_ENCODE_ON_DISK), 9),
+      String.valueOf(HColumnDescriptor.DEFAULT_ENCODE_ON_DISK), 9, HBaseSchemaChangeCost.ONLINE_MODIFY),
   IN_MEMORY(HConstants.IN_MEMORY, HColumnDescriptor.class, Boolean.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_IN_MEMORY), 9),
+      String.valueOf(HColumnDescriptor.DEFAULT_IN_MEMORY), 9, HBaseSchemaChangeCost.ONLINE_MODIFY),
   KEEP_DELETED_CELLS(HColumnDescriptor.KEEP_DELETED_CELLS, HColumnDescriptor.class, Boolean.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_KEEP_DELETED), 9),
+      String.valueOf(HColumnDescriptor.DEFAULT_KEEP_DELETED), 9, HBaseSchemaChangeCost.ONLINE_MODIFY),
   MIN_VERSIONS(HColumnDescriptor.MIN_VERSIONS, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_MIN_VERSIONS), 8),
+      String.valueOf(HColumnDescriptor.DEFAULT_MIN_VERSIONS), 8, HBaseSchemaChangeCost.ONLINE_MODIFY),
   REPLICATION_SCOPE(HColumnDescriptor.REPLICATION_SCOPE, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_REPLICATION_SCOPE), null),
+      String.valueOf(HColumnDescriptor.DEFAULT_REPLICATION_SCOPE), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   TTL(HColumnDescriptor.TTL, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_TTL), null),
+      String.valueOf(HColumnDescriptor.DEFAULT_TTL), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
   VERSIONS(HConstants.VERSIONS, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_VERSIONS), null),
+      String.valueOf(HColumnDescriptor.DEFAULT_VERSIONS), null, HBaseSchemaChangeCost.ONLINE_MODIFY),
+  // Nor are these: they describe how a family is used, for the advisor's rules (see HBaseSchemaAdvisor), and are 
+  // never stored on the cluster
+  ACCESS_PATTERN("ACCESS_PATTERN", HColumnDescriptor.class, String.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
+  EXPECTED_SIZE_GB("EXPECTED_SIZE_GB", HColumnDescriptor.class, Long.class, null, null, HBaseSchemaChangeCost.METADATA_ONLY, false),
 
   ;
   
@@ -97,13 +110,27 @@ public enum HBaseSchemaAttribute {
   /** What's the earliest integer version of the schema element that supports this attribute? As defined in the HTableDescriptor and HColumnDescriptor source. 
    *  Versions older than 7 aren't tracked, as this tool doesn't purport to work with anything older than 7. */
   public final Integer minVersion;
+  /** How disruptive is it to change this attribute on an existing table? */
+  public final HBaseSchemaChangeCost changeCost;
+  /** Is this attribute written to the cluster? Some only tell scoot something about a table or family: they stay in
+   *  the parsed descriptors, but are left out of diffs, scripts, and anything sent to the cluster (see 
+   *  HBaseSchemaValues.forCluster). */
+  public final boolean storedOnCluster;
 
-  private HBaseSchemaAttribute(String name, Class<?> appliesToObjectType, Class<?> type, String defaultValue, Integer minVersion){
+  private HBaseSchemaAttribute(String name, Class<?> appliesToObjectType, Class<?> type, String defaultValue, Integer minVersion, 
+      HBaseSchemaChangeCost changeCost){
+    this(name, appliesToObjectType, type, defaultValue, minVersion, changeCost, true);
+  }
+
+  private HBaseSchemaAttribute(String name, Class<?> appliesToObjectType, Class<?> type, String defaultValue, Integer minVersion, 
+      HBaseSchemaChangeCost changeCost, boolean storedOnCluster){
     this.name = name;
     this.appliesToObjectType = appliesToObjectType;
     this.type = type;
     this.defaultValue = defaultValue;
     this.minVersion = minVersion;
+    this.changeCost = changeCost;
+    this.storedOnCluster = storedOnCluster;
   }
   
   public static HBaseSchemaAttribute getFromName(String name){
@@ -114,7 +141,64 @@ public enum HBaseSchemaAttribute {
     }
     return null;
   }
+
+  /**
+   * Get the attribute that a value with this key sets on the given type of schema element (HTableDescriptor or 
+   * HColumnDescriptor), or null if it isn't one of ours, like a user defined value. Unlike getFromName, the case has to match.
+   */
+  public static HBaseSchemaAttribute getFromKey(String key, Class<?> objectType){
+    HBaseSchemaAttribute a = getFromName(key);
+    return a != null && a.name.equals(key) && a.appliesToObjectType.equals(objectType) ? a : null;
+  }
+
+  /**
+   * Is a value with this key on the given type of schema element written to the cluster? Everything is, except our 
+   * attributes that aren't storedOnCluster.
+   */
+  public static boolean isStoredOnCluster(String key, Class<?> objectType){
+    HBaseSchemaAttribute a = getFromKey(key, objectType);
+    return a == null || a.storedOnCluster;
+  }
+
+  /**
+   * Would HBase treat these two values of a key on the given type of schema element the same way? Values of our 
+   * attributes are compared normalized, with a missing (null) value standing in for the default; any other value has
+   * to match exactly. This is how the schema diff decides that a difference doesn't need to be applied, so checks of 
+   * the result of applying one should use it too.
+   */
+  public static boolean isEquivalent(String key, Class<?> objectType, String value1, String value2){
+    HBaseSchemaAttribute a = getFromKey(key, objectType);
+    if (a != null) {
+      if (value1 == null) value1 = a.defaultValue;
+      if (value2 == null) value2 = a.defaultValue;
+    }
+    if (value1 == null || value2 == null) return value1 == value2;
+    return a == null ? value1.equals(value2) : a.normalize(value1).equals(a.normalize(value2));
+  }
   
+  /**
+   * Put a value of this attribute into a canonical form, so values that HBase would treat the same way compare as
+   * equal: numbers without leading zeros or signs, lower case booleans, and upper case enums (which HBase looks up 
+   * in upper case). Values that don't parse as the attribute's type are left alone.
+   */
+  public String normalize(String attributeValue) {
+    String trimmed = attributeValue.trim();
+    if (this.type.equals(Integer.class) || this.type.equals(Long.class)) {
+      try {
+        return String.valueOf(Long.parseLong(trimmed.startsWith("+") ? trimmed.substring(1) : trimmed));
+      } catch (NumberFormatException e) {
+        return attributeValue;
+      }
+    }
+    if (this.type.equals(Boolean.class)) {
+      return trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("false") ? trimmed.toLowerCase() : attributeValue;
+    }
+    if (this.type.isEnum()) {
+      return trimmed.toUpperCase();
+    }
+    return attributeValue;
+  }
+
   /**
    * See if the supplied string can be successfully parsed as this type, and throw if not
    */
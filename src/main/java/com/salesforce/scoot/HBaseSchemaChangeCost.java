@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import org.apache.hadoop.hbase.HConstants;
+
+/**
+ * How disruptive it is to apply a change to an existing table, from the cheapest to the most expensive.
+ * Each HBaseSchemaAttribute has one. Attributes HBase doesn't know about (like scoot's own fullSchema) are 
+ * only kept in the descriptor, so changing them is metadata only; the exception is coprocessors, which 
+ * every region loads when it opens, and which are risky to swap out from under a live table.
+ */
+public enum HBaseSchemaChangeCost {
+
+  /** Only the descriptor changes; nothing on the region servers depends on it */
+  METADATA_ONLY,
+  /** The regions pick the change up when they're reopened, which can be done one region at a time with the 
+   *  table enabled, if online schema updates are enabled on the cluster */
+  ONLINE_MODIFY,
+  /** The table has to be disabled while the change is made */
+  DISABLE_REQUIRED,
+
+  ;
+
+  /**
+   * Get the cost of changing the named attribute (of a table or a column family)
+   */
+  public static HBaseSchemaChangeCost of(String attributeName) {
+    HBaseSchemaAttribute a = HBaseSchemaAttribute.getFromName(attributeName);
+    if (a != null) {
+      return a.changeCost;
+    }
+    if (HConstants.CP_HTD_ATTR_KEY_PATTERN.matcher(attributeName).matches()) {
+      return DISABLE_REQUIRED;
+    }
+    return METADATA_ONLY;
+  }
+
+  /**
+   * Get the more expensive of this cost and the other one
+   */
+  public HBaseSchemaChangeCost max(HBaseSchemaChangeCost other) {
+    return other.compareTo(this) > 0 ? other : this;
+  }
+
+}
@@ -26,20 +26,29 @@
 package com.salesforce.scoot;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import com.salesforce.scoot.HBaseSchemaValues.SortedValues;
+
 /**
  * Allows iterating over the changes between any two schemas. Specifically, the first schema 
  * is the "from" one (i.e. the one you started with) and the second is the "to" schema (the 
@@ -49,19 +58,96 @@ import org.apache.hadoop.hbase.util.Bytes;
  * an existing cluster whose schema you want to replicate somewhere else; and you'd get the
  * "from schema" from pointing this utility at a live cluster you want to modify, or pass in 
  * an empty schema to create something from scratch.
+ * 
+ * Changes are always listed in table name order. Large schemas are diffed on several threads, each 
+ * taking its own ranges of table names, with the results put back together in name order.
+ * 
+ * By default, every change (including the IGNORE entries for unchanged tables) is kept, to be looked at
+ * once the diff is done. For very large schemas, the diff can instead keep just a count of the unchanged
+ * tables, or hand every change to a visitor as soon as it's found (a range of tables at a time) and keep 
+ * nothing but counts; either way, memory use then depends on the size of the change rather than the size 
+ * of the schemas.
+ * 
+ * Values of the attributes HBase defines (see HBaseSchemaAttribute) are compared by what they mean, not just 
+ * their bytes: "none" and "NONE" are the same compression, and a missing value is the same as the default. 
+ * Differences like that aren't changes, but they're reported with the table they were found in, as suppressed 
+ * changes.
  */
 public class HBaseSchemaDiff {
 
+  /** Schemas with fewer tables than this (per thread) aren't worth splitting up */
+  private static final int MIN_TABLES_PER_THREAD = 1000;
+  /** Split the tables into more ranges than there are threads, so one slow range doesn't hold up the rest */
+  private static final int RANGES_PER_THREAD = 4;
+  /** Ranges are no bigger than this, so changes can be handed on before the whole schema has been compared */
+  private static final int MAX_TABLES_PER_RANGE = 1000;
+
   private final HBaseSchema fromSchema;
   private final HBaseSchema toSchema;
+  private final HBaseTableFilter tableFilter;
+  private final int threads;
+  private final int[] changeCounts = new int[ChangeType.values().length];
 
   /**
    * Construct the class with a from and to schema.
    */
   public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema){
+    this(fromSchema, toSchema, HBaseTableFilter.ALL);
+  }
+
+  /**
+   * Construct the class with a from and to schema, only considering the tables that match the filter
+   * (in either schema); everything else is left out of the diff entirely, rather than being created or dropped.
+   */
+  public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, HBaseTableFilter tableFilter){
+    this(fromSchema, toSchema, tableFilter, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Construct the class with a from and to schema and a table filter, using up to the given number of threads
+   */
+  public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, HBaseTableFilter tableFilter, int threads){
+    this(fromSchema, toSchema, tableFilter, threads, true);
+  }
+
+  /**
+   * Construct the class with a from and to schema and a table filter, using up to the given number of threads.
+   * If keepIgnored is false, unchanged tables are only counted (see getChangeCount), not kept as IGNORE changes.
+   */
+  public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, HBaseTableFilter tableFilter, int threads, boolean keepIgnored){
+    this(fromSchema, toSchema, tableFilter, threads, null, keepIgnored);
+  }
+
+  /**
+   * Diff the from and to schemas (the tables that match the filter), using up to the given number of threads, 
+   * handing each change (IGNORE included) to the visitor as it's found, in table name order. None of the changes 
+   * are kept, so only getChangeCount tells you anything once this returns.
+   */
+  public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, HBaseTableFilter tableFilter, int threads, HBaseSchemaChangeVisitor visitor){
+    this(fromSchema, toSchema, tableFilter, threads, visitor, false);
+  }
+
+  private HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, HBaseTableFilter tableFilter, int threads, 
+      HBaseSchemaChangeVisitor visitor, final boolean keepIgnored){
     this.fromSchema = fromSchema;
     this.toSchema = toSchema;
-    analyze();
+    this.tableFilter = tableFilter;
+    this.threads = Math.max(1, threads);
+    for (ChangeType c : ChangeType.values()) {
+      changesByType.put(c, new ArrayList<HBaseSchemaChange>());
+    }
+    if (visitor == null) {
+      // keep the changes, organized into a map by type for convenience
+      visitor = new HBaseSchemaChangeVisitor() {
+        public void visit(HBaseSchemaChange change) {
+          if (change.type != ChangeType.IGNORE || keepIgnored) {
+            changeList.changes.add(change);
+            changesByType.get(change.type).add(change);
+          }
+        }
+      };
+    }
+    analyze(visitor);
   }
 
   /**
@@ -76,15 +162,18 @@ public class HBaseSchemaDiff {
   }
   
   /**
-   * Simple struct representing a change to a single property of an object in a schema.  
+   * Simple struct representing a change to a single property of an object in a schema, and how disruptive it is to apply.
    */
   public static class PropertyChange{
     public String schemaObjectName;
     public String key;
     public String oldValue;
     public String newValue;
+    public HBaseSchemaChangeCost cost;
+    /** The column family this changes (including adding or removing it), or null if it's one of the table's own values */
+    public String columnFamily;
     PropertyChange(){}
-    PropertyChange(String schemaObjectName, String key) { this.schemaObjectName = schemaObjectName; this.key = key;}
+    PropertyChange(String schemaObjectName, String key, HBaseSchemaChangeCost cost) { this.schemaObjectName = schemaObjectName; this.key = key; this.cost = cost;}
     @Override public String toString(){ return schemaObjectName + ":" + key + ((oldValue != null || newValue != null) ? ":" + oldValue + "->" + newValue : "") + ";"; }
   }
 
@@ -98,8 +187,64 @@ public class HBaseSchemaDiff {
     public HTableDescriptor newTable;
     public ChangeType type;
     public List<PropertyChange> propertyChanges = new ArrayList<PropertyChange>();
+    /** Differences that were left out of the property changes because the values are equivalent */
+    public List<PropertyChange> suppressedChanges = new ArrayList<PropertyChange>();
+
+    /**
+     * How disruptive is this change to apply? For an ALTER, that's the most expensive of its property changes; 
+     * dropping a table means disabling it, and creating one (or leaving it alone) doesn't affect anything that exists.
+     */
+    public HBaseSchemaChangeCost getCost() {
+      HBaseSchemaChangeCost cost = type == ChangeType.DROP ? HBaseSchemaChangeCost.DISABLE_REQUIRED : HBaseSchemaChangeCost.METADATA_ONLY;
+      for (PropertyChange p : propertyChanges) {
+        cost = cost.max(p.cost);
+      }
+      return cost;
+    }
+
+    /**
+     * The names of the column families an ALTER changes (including adding or removing them), in name order
+     */
+    public SortedSet<String> getChangedFamilies() {
+      SortedSet<String> families = new TreeSet<String>();
+      for (PropertyChange p : propertyChanges) {
+        if (p.columnFamily != null) families.add(p.columnFamily);
+      }
+      return families;
+    }
+
+    /**
+     * The changes an ALTER makes to the table's own values (as opposed to its column families)
+     */
+    public List<PropertyChange> getTableValueChanges() {
+      List<PropertyChange> changes = new ArrayList<PropertyChange>();
+      for (PropertyChange p : propertyChanges) {
+        if (p.columnFamily == null) changes.add(p);
+      }
+      return changes;
+    }
+
+    /**
+     * The changes an ALTER makes to the values of one of the column families in both tables (so, not counting
+     * adding or removing it); differences that were suppressed as equivalent aren't among them
+     */
+    public List<PropertyChange> getFamilyValueChanges(String family) {
+      List<PropertyChange> changes = new ArrayList<PropertyChange>();
+      for (PropertyChange p : propertyChanges) {
+        if (family.equals(p.columnFamily) && (p.oldValue != null || p.newValue != null)) changes.add(p);
+      }
+      return changes;
+    }
   }
   
+  /**
+   * Receives the changes in a diff, one at a time, in table name order. It's always called on the thread
+   * that constructed the diff, even when the tables are compared on several.
+   */
+  public interface HBaseSchemaChangeVisitor {
+    void visit(HBaseSchemaChange change);
+  }
+
   /**
    * Helper class to collect a set of changes using a simple method call for each addition.
    */
@@ -121,32 +266,45 @@ public class HBaseSchemaDiff {
       change.oldTable = oldTable;
       changes.add(change);
     }
-    public void alter(HTableDescriptor oldTable, HTableDescriptor newTable, List<PropertyChange> propertyChanges){
+    public void alter(HTableDescriptor oldTable, HTableDescriptor newTable, List<PropertyChange> propertyChanges, List<PropertyChange> suppressedChanges){
       HBaseSchemaChange change = new HBaseSchemaChange();
       change.tableName = oldTable.getNameAsString();
       change.type = ChangeType.ALTER;
       change.newTable = newTable;
       change.oldTable = oldTable;
       change.propertyChanges.addAll(propertyChanges);
+      change.suppressedChanges.addAll(suppressedChanges);
       changes.add(change);
     }
     public void ignore(HTableDescriptor sameTable){
+      ignore(sameTable, Collections.<PropertyChange>emptyList());
+    }
+    public void ignore(HTableDescriptor sameTable, List<PropertyChange> suppressedChanges){
       HBaseSchemaChange change = new HBaseSchemaChange();
       change.tableName = sameTable.getNameAsString();
       change.type = ChangeType.IGNORE;
       change.newTable = sameTable;
       change.oldTable = sameTable;
+      change.suppressedChanges.addAll(suppressedChanges);
       changes.add(change);
     }
   }
   
   private final HBaseSchemaChangeList changeList = new HBaseSchemaChangeList();
+
+  /** Buffers for comparing value maps (old and new), reused by each thread that compares them */
+  private static final ThreadLocal<SortedValues[]> sortedValues = new ThreadLocal<SortedValues[]>() {
+    @Override
+    protected SortedValues[] initialValue() {
+      return new SortedValues[] { new SortedValues(), new SortedValues() };
+    }
+  };
   private final Map<ChangeType, List<HBaseSchemaChange>> changesByType = new HashMap<ChangeType, List<HBaseSchemaChange>>();
 
   /**
-   * Make a single pass through the input schemas to detect and organize the changes by type
+   * Make a single pass through the input schemas to detect the changes, and hand them to the visitor in order
    */
-  private void analyze() {
+  private void analyze(HBaseSchemaChangeVisitor visitor) {
     
     // reorganize the tables in the two schemas by name
     Map<String, HTableDescriptor> oldTablesByName = getTableMap(fromSchema);
@@ -154,140 +312,232 @@ public class HBaseSchemaDiff {
     Set<String> allTableNames = new HashSet<String>();
     allTableNames.addAll(oldTablesByName.keySet());
     allTableNames.addAll(newTablesByName.keySet());
+    List<String> tableNames = new ArrayList<String>();
+    for (String tableName : allTableNames) {
+      if (tableFilter.matches(tableName)) tableNames.add(tableName);
+    }
+    Collections.sort(tableNames);
     
-    // Diff the objects
-    for (String tableName : allTableNames){
+    // Diff the objects, on this thread if there aren't many of them
+    int threadsToUse = Math.min(threads, tableNames.size() / MIN_TABLES_PER_THREAD);
+    if (threadsToUse <= 1) {
+      for (int start = 0; start < tableNames.size(); start += MAX_TABLES_PER_RANGE) {
+        HBaseSchemaChangeList changes = new HBaseSchemaChangeList();
+        analyzeTables(tableNames.subList(start, Math.min(start + MAX_TABLES_PER_RANGE, tableNames.size())), oldTablesByName, newTablesByName, changes);
+        visitChanges(changes, visitor);
+      }
+    } else {
+      analyzeTablesInParallel(tableNames, oldTablesByName, newTablesByName, threadsToUse, visitor);
+    }
+  }
+
+  /**
+   * Count the given changes, and hand them to the visitor
+   */
+  private void visitChanges(HBaseSchemaChangeList changes, HBaseSchemaChangeVisitor visitor) {
+    for (HBaseSchemaChange change : changes.changes) {
+      changeCounts[change.type.ordinal()]++;
+      visitor.visit(change);
+    }
+  }
+  
+  /**
+   * Diff the given tables, adding the changes to the list in the same order as the names
+   */
+  private void analyzeTables(List<String> tableNames, Map<String, HTableDescriptor> oldTablesByName, 
+      Map<String, HTableDescriptor> newTablesByName, HBaseSchemaChangeList changes) {
+    for (String tableName : tableNames){
       HTableDescriptor oldTable = oldTablesByName.get(tableName);
       HTableDescriptor newTable = newTablesByName.get(tableName);
       
       // If the object isn't found in old, but is in new, CREATE
       if (oldTable == null && newTable != null){
-        changeList.create(newTable);
+        changes.create(newTable);
       }
       // if the object isn't found in new, but is in old, DROP
       else if (oldTable != null && newTable == null){
-        changeList.drop(oldTable);
+        changes.drop(oldTable);
       }
       // otherwise, it's ALTER or IGNORE
       else if (oldTable != null && newTable != null) {
-        List<PropertyChange> propertyChanges = getTableModifications(oldTable, newTable);
+        // most tables are unchanged; if the fingerprints match, don't bother comparing them in depth
+        if (fromSchema.getFingerprint(oldTable) == toSchema.getFingerprint(newTable)) {
+          changes.ignore(oldTable);
+          continue;
+        }
+        List<PropertyChange> suppressedChanges = new ArrayList<PropertyChange>();
+        List<PropertyChange> propertyChanges = getTableModifications(oldTable, newTable, suppressedChanges);
         if (! propertyChanges.isEmpty()){
           // if it was modified, it's ALTER
-          changeList.alter(oldTable, newTable, propertyChanges);
+          changes.alter(oldTable, newTable, propertyChanges, suppressedChanges);
         } else {
           // if it was not modified, it's IGNORE
-          changeList.ignore(oldTable);
+          changes.ignore(oldTable, suppressedChanges);
         }
       }
     }
-    
-    // Organize the resulting changes into a map by type, for convenience
-    for (ChangeType c : ChangeType.values()) {
-      changesByType.put(c, new ArrayList<HBaseSchemaChange>());
-    }
-    for (HBaseSchemaChange c : changeList.changes){
-      changesByType.get(c.type).add(c);
+  }
+
+  /**
+   * Split the (sorted) table names into ranges, diff each range on a pool of threads, and then hand the changes 
+   * from each range to the visitor in order, so the result is the same as diffing them in one pass. Only a few
+   * ranges per thread are queued up at once, so finished ranges that are waiting on earlier ones can't pile up.
+   */
+  private void analyzeTablesInParallel(List<String> tableNames, final Map<String, HTableDescriptor> oldTablesByName, 
+      final Map<String, HTableDescriptor> newTablesByName, int threadsToUse, HBaseSchemaChangeVisitor visitor) {
+    int ranges = Math.max(threadsToUse * RANGES_PER_THREAD, (tableNames.size() + MAX_TABLES_PER_RANGE - 1) / MAX_TABLES_PER_RANGE);
+    ExecutorService executor = Executors.newFixedThreadPool(threadsToUse);
+    try {
+      LinkedList<Future<HBaseSchemaChangeList>> futures = new LinkedList<Future<HBaseSchemaChangeList>>();
+      int submitted = 0;
+      while (submitted < ranges || !futures.isEmpty()) {
+        while (submitted < ranges && futures.size() < threadsToUse * RANGES_PER_THREAD) {
+          final List<String> range = tableNames.subList(submitted * tableNames.size() / ranges, (submitted + 1) * tableNames.size() / ranges);
+          futures.add(executor.submit(new Callable<HBaseSchemaChangeList>() {
+            public HBaseSchemaChangeList call() {
+              HBaseSchemaChangeList changes = new HBaseSchemaChangeList();
+              analyzeTables(range, oldTablesByName, newTablesByName, changes);
+              return changes;
+            }
+          }));
+          submitted++;
+        }
+        try {
+          visitChanges(futures.removeFirst().get(), visitor);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof ScootException) throw (ScootException)e.getCause();
+          throw new ScootException("Unable to diff schemas: " + e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ScootException("Interrupted while diffing schemas.", e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
     }
-    
   }
-  
+
   /**
    * Create the modification data structure from two tables that both exist. Property changes include
    * changes to the properties of the table's attributes, addition or removal of column families, and
-   * changes to the properties of column families.
+   * changes to the properties of column families. Differences between equivalent values go in suppressedChanges.
    */
-  private List<PropertyChange> getTableModifications(HTableDescriptor oldTable, HTableDescriptor newTable) {
+  private List<PropertyChange> getTableModifications(HTableDescriptor oldTable, HTableDescriptor newTable, List<PropertyChange> suppressedChanges) {
     List<PropertyChange> propertyChanges = new ArrayList<PropertyChange>();
     
     // check the table properties
-    propertyChanges.addAll(getPropertyChanges(newTable.getNameAsString(), oldTable.getValues(), newTable.getValues()));
-    
-    // check the column families and their properties.
-    Map<String,HColumnDescriptor> oldColumnFamilies = getColumnFamilyMap(oldTable.getFamilies());
-    Map<String,HColumnDescriptor> newColumnFamilies = getColumnFamilyMap(newTable.getFamilies());
+    addPropertyChanges(propertyChanges, suppressedChanges, newTable, null, oldTable.getValues(), newTable.getValues());
     
-    // some are added (new name that didn't previously exist)
-    Set<String> addedColumnFamilies = new HashSet<String>(newColumnFamilies.keySet());
-    addedColumnFamilies.removeAll(oldColumnFamilies.keySet());
-    for (String addedColumnFamily : addedColumnFamilies) {
-      propertyChanges.add(new PropertyChange(newTable.getNameAsString(), "Added column family " + addedColumnFamily));
-    }
-
-    // some are removed (old name no longer exists)
-    Set<String> removedColumnFamilies = new HashSet<String>(oldColumnFamilies.keySet());
-    removedColumnFamilies.removeAll(newColumnFamilies.keySet());
-    for (String removedColumnFamily : removedColumnFamilies) {
-      propertyChanges.add(new PropertyChange(oldTable.getNameAsString(), "Removed column family " + removedColumnFamily));
-    }
-
-    // some are altered
-    for (Entry<String, HColumnDescriptor> e : oldColumnFamilies.entrySet()) {
-      HColumnDescriptor oldColumnFamily = e.getValue();
-      HColumnDescriptor newColumnFamily = newColumnFamilies.get(e.getKey());
-      if (newColumnFamily != null && !oldColumnFamily.equals(newColumnFamily)) {
-        // get the individual property changes, so we can show them as well
-        propertyChanges.addAll(getPropertyChanges(newTable.getNameAsString() + ":" + newColumnFamily.getNameAsString(), oldColumnFamily.getValues(), newColumnFamily.getValues()));
+    // check the column families and their properties, walking the two (name ordered) lists of them together
+    Iterator<HColumnDescriptor> oldColumnFamilies = oldTable.getFamilies().iterator();
+    Iterator<HColumnDescriptor> newColumnFamilies = newTable.getFamilies().iterator();
+    HColumnDescriptor oldColumnFamily = oldColumnFamilies.hasNext() ? oldColumnFamilies.next() : null;
+    HColumnDescriptor newColumnFamily = newColumnFamilies.hasNext() ? newColumnFamilies.next() : null;
+    while (oldColumnFamily != null || newColumnFamily != null) {
+      int c = oldColumnFamily == null ? 1 : newColumnFamily == null ? -1 : Bytes.compareTo(oldColumnFamily.getName(), newColumnFamily.getName());
+      if (c < 0) {
+        // removed (old name no longer exists)
+        PropertyChange p = new PropertyChange(oldTable.getNameAsString(), "Removed column family " + oldColumnFamily.getNameAsString(), 
+            HBaseSchemaChangeCost.DISABLE_REQUIRED);
+        p.columnFamily = oldColumnFamily.getNameAsString();
+        propertyChanges.add(p);
+        oldColumnFamily = oldColumnFamilies.hasNext() ? oldColumnFamilies.next() : null;
+      } else if (c > 0) {
+        // added (new name that didn't previously exist)
+        PropertyChange p = new PropertyChange(newTable.getNameAsString(), "Added column family " + newColumnFamily.getNameAsString(), 
+            HBaseSchemaChangeCost.ONLINE_MODIFY);
+        p.columnFamily = newColumnFamily.getNameAsString();
+        propertyChanges.add(p);
+        newColumnFamily = newColumnFamilies.hasNext() ? newColumnFamilies.next() : null;
+      } else {
+        // in both, so get the individual property changes (if any)
+        addPropertyChanges(propertyChanges, suppressedChanges, newTable, newColumnFamily, oldColumnFamily.getValues(), newColumnFamily.getValues());
+        oldColumnFamily = oldColumnFamilies.hasNext() ? oldColumnFamilies.next() : null;
+        newColumnFamily = newColumnFamilies.hasNext() ? newColumnFamilies.next() : null;
       }
     }
 
     return propertyChanges;
   }
 
-
   /**
-   * Compares two maps and returns a flat list of changes (key, old value, new value), accounting for adds & removes
+   * Compares two maps and adds a flat list of changes (key, old value, new value), accounting for adds & removes,
+   * to the given list. The maps are compared as raw bytes, walking their sorted entries together; nothing is
+   * converted to a string (or allocated at all, once this thread's buffers are big enough) unless it changed.
+   * Differences between values that are equivalent (see isEquivalent) go in suppressedChanges instead, and values
+   * that aren't stored on the cluster (see HBaseSchemaAttribute.storedOnCluster) aren't compared at all.
+   * @param columnFamily the column family whose values these are, or null if they're the table's
    */
-  private List<PropertyChange> getPropertyChanges(String schemaObjectName, Map<ImmutableBytesWritable,ImmutableBytesWritable> oldValues, Map<ImmutableBytesWritable,ImmutableBytesWritable> newValues){
-    List<PropertyChange> propertyChanges = new ArrayList<PropertyChange>();
-    // this finds properties that have been modified or removed
-    for (Entry<ImmutableBytesWritable,ImmutableBytesWritable> e : oldValues.entrySet()){
-      if (! e.getValue().equals(newValues.get(e.getKey()))){
-        PropertyChange p = new PropertyChange(schemaObjectName, Bytes.toString(e.getKey().get()));
-        p.oldValue = Bytes.toString(e.getValue().get());
-        p.newValue = newValues.containsKey(e.getKey()) ? Bytes.toString(newValues.get(e.getKey()).get()) : null;
-        propertyChanges.add(p);
-      }
-    }
-    // this finds properties that have been added
-    for (Entry<ImmutableBytesWritable,ImmutableBytesWritable> e : newValues.entrySet()){
-      if (! oldValues.containsKey(e.getKey())){
-        PropertyChange p = new PropertyChange(schemaObjectName, Bytes.toString(e.getKey().get()));
-        p.newValue = newValues.containsKey(e.getKey()) ? Bytes.toString(newValues.get(e.getKey()).get()) : null;
-        propertyChanges.add(p);
+  private void addPropertyChanges(List<PropertyChange> propertyChanges, List<PropertyChange> suppressedChanges, HTableDescriptor table, HColumnDescriptor columnFamily,
+      Map<ImmutableBytesWritable,ImmutableBytesWritable> oldValues, Map<ImmutableBytesWritable,ImmutableBytesWritable> newValues){
+    SortedValues[] buffers = sortedValues.get();
+    SortedValues oldSorted = buffers[0].load(oldValues);
+    SortedValues newSorted = buffers[1].load(newValues);
+    Class<?> objectType = columnFamily == null ? HTableDescriptor.class : HColumnDescriptor.class;
+    try {
+      int o = 0;
+      int n = 0;
+      while (o < oldSorted.size() || n < newSorted.size()) {
+        int c = o == oldSorted.size() ? 1 : n == newSorted.size() ? -1 : HBaseSchemaValues.compare(oldSorted.getKey(o), newSorted.getKey(n));
+        if (c <= 0 ? !HBaseSchemaValues.isStoredOnCluster(oldSorted.getKey(o), objectType) 
+            : !HBaseSchemaValues.isStoredOnCluster(newSorted.getKey(n), objectType)) {
+          // not stored on the cluster, so not compared; step past it (in both maps, if it's in both)
+          if (c <= 0) o++;
+          if (c >= 0) n++;
+        } else if (c == 0) {
+          // this finds properties that have been modified
+          if (HBaseSchemaValues.compare(oldSorted.getValue(o), newSorted.getValue(n)) != 0) {
+            PropertyChange p = newPropertyChange(table, columnFamily, HBaseSchemaValues.toString(oldSorted.getKey(o)));
+            p.oldValue = HBaseSchemaValues.toString(oldSorted.getValue(o));
+            p.newValue = HBaseSchemaValues.toString(newSorted.getValue(n));
+            (isEquivalent(p) ? suppressedChanges : propertyChanges).add(p);
+          }
+          o++;
+          n++;
+        } else if (c < 0) {
+          // this finds properties that have been removed
+          PropertyChange p = newPropertyChange(table, columnFamily, HBaseSchemaValues.toString(oldSorted.getKey(o)));
+          p.oldValue = HBaseSchemaValues.toString(oldSorted.getValue(o));
+          (isEquivalent(p) ? suppressedChanges : propertyChanges).add(p);
+          o++;
+        } else {
+          // this finds properties that have been added
+          PropertyChange p = newPropertyChange(table, columnFamily, HBaseSchemaValues.toString(newSorted.getKey(n)));
+          p.newValue = HBaseSchemaValues.toString(newSorted.getValue(n));
+          (isEquivalent(p) ? suppressedChanges : propertyChanges).add(p);
+          n++;
+        }
       }
+    } finally {
+      oldSorted.clear();
+      newSorted.clear();
     }
-    return propertyChanges; 
   }
 
   /**
-   * Convert the given collection of tables into a name/object map, throwing an exception if there are duplicates
-   * @param the schema out of which you want to pull tables into the map
+   * Is a difference in a value really a change? Not if HBase would treat the two values the same way; see
+   * HBaseSchemaAttribute.isEquivalent.
    */
-  private Map<String, HTableDescriptor> getTableMap(HBaseSchema schema) {
-    Map<String, HTableDescriptor> result = new HashMap<String, HTableDescriptor>();
-    for (HTableDescriptor t : schema.getTables()) {
-      if (result.containsKey(t.getNameAsString())) {
-        throw new ScootException("Schema contains duplicate tables:" + t.getNameAsString());
-      }
-      result.put(t.getNameAsString(), t);
-    }
-    return result;
+  private static boolean isEquivalent(PropertyChange p) {
+    return HBaseSchemaAttribute.isEquivalent(p.key, p.columnFamily == null ? HTableDescriptor.class : HColumnDescriptor.class, 
+        p.oldValue, p.newValue);
+  }
+
+  private static PropertyChange newPropertyChange(HTableDescriptor table, HColumnDescriptor columnFamily, String key) {
+    String schemaObjectName = columnFamily == null ? table.getNameAsString() : table.getNameAsString() + ":" + columnFamily.getNameAsString();
+    PropertyChange p = new PropertyChange(schemaObjectName, key, HBaseSchemaChangeCost.of(key));
+    p.columnFamily = columnFamily == null ? null : columnFamily.getNameAsString();
+    return p;
   }
 
   /**
-   * Convert a collection of column families to a name/object map, throwing an exception if there are duplicates
+   * Convert the given collection of tables into a name/object map, throwing an exception if there are duplicates
+   * @param the schema out of which you want to pull tables into the map
    */
-  private Map<String, HColumnDescriptor> getColumnFamilyMap(Collection<HColumnDescriptor> families) {
-    Map<String, HColumnDescriptor> result = new HashMap<String, HColumnDescriptor>();
-    for (HColumnDescriptor cf : families) {
-      if (result.containsKey(cf.getNameAsString())) {
-        throw new ScootException("Schema contains duplicate column families:" + cf.getNameAsString());
-      }
-      result.put(cf.getNameAsString(), cf);
-    }
-    return result;
+  private Map<String, HTableDescriptor> getTableMap(HBaseSchema schema) {
+    return schema.getTablesByName();
   }
-  
+
   /**
    * Get the list of tables that are part of this diff
    * @return an umodifiable representation of the list
@@ -314,4 +564,11 @@ public class HBaseSchemaDiff {
     return Collections.unmodifiableMap(changesByType);
   }
 
+  /**
+   * Get the number of tables in the diff with the given change type, whether or not the changes were kept
+   */
+  public int getChangeCount(ChangeType type){
+    return changeCounts[type.ordinal()];
+  }
+
 }
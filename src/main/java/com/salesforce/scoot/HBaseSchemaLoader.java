@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+
+/**
+ * Loads a schema using a given parser class. The schema name is normally handed straight to a single
+ * parser, but it can also be a directory (meaning every .xml file in it) or a file name pattern using
+ * '*' and '?' wildcards in its last path element (e.g. "schemas/service-*.xml"); in that case each
+ * matching file is parsed by its own parser instance, in parallel, and the results are merged into a 
+ * single schema.
+ * 
+ * If a parse cache is set, file resources are looked up in it before being parsed, and added to it after.
+ * If a table filter or a configuration is set, it's handed to every parser (see HBaseSchemaParser).
+ */
+public class HBaseSchemaLoader {
+
+  private final String parserClassName;
+  private final int threads;
+  private HBaseSchemaParseCache cache;
+  private HBaseTableFilter tableFilter = HBaseTableFilter.ALL;
+  private Configuration configuration;
+
+  public HBaseSchemaLoader(String parserClassName) {
+    this(parserClassName, Runtime.getRuntime().availableProcessors());
+  }
+
+  public HBaseSchemaLoader(String parserClassName, int threads) {
+    this.parserClassName = parserClassName;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Use the given cache for parsed schema files (or no cache, if null)
+   */
+  public void setCache(HBaseSchemaParseCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Limit the tables the parsers need to return
+   */
+  public void setTableFilter(HBaseTableFilter tableFilter) {
+    this.tableFilter = tableFilter;
+  }
+
+  /**
+   * Supply the configuration the parsers use (or the default, if null)
+   */
+  public void setConfiguration(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Load the named schema, which may span multiple files (see the class description)
+   */
+  public HBaseSchema load(String schemaName) {
+    if (!isMultiFile(schemaName)) {
+      return parse(schemaName);
+    }
+    List<File> files = getSchemaFiles(schemaName);
+    if (files.isEmpty()) {
+      throw new ScootException("No schema files found for: " + schemaName);
+    }
+    List<HBaseSchema> parsed = parseAll(files);
+
+    // merge in file name order, so the result doesn't depend on which parse finished first
+    HBaseSchema result = new HBaseSchema();
+    for (HBaseSchema s : parsed) {
+      for (HTableDescriptor t : s.getTables()) {
+        result.addTable(t);
+      }
+    }
+    result.getTablesByName(); // fail now (rather than at diff time) if the files define the same table twice
+    return result;
+  }
+
+  /**
+   * Parse the given files in parallel, returning the schemas in the same order as the files
+   */
+  private List<HBaseSchema> parseAll(List<File> files) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      List<Future<HBaseSchema>> futures = new ArrayList<Future<HBaseSchema>>();
+      for (final File file : files) {
+        futures.add(executor.submit(new Callable<HBaseSchema>() {
+          public HBaseSchema call() {
+            return parse(file.getPath());
+          }
+        }));
+      }
+      List<HBaseSchema> result = new ArrayList<HBaseSchema>();
+      for (int x = 0; x < futures.size(); x++) {
+        try {
+          result.add(futures.get(x).get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof ScootException) throw (ScootException)e.getCause();
+          throw new ScootException("Unable to parse schema file " + files.get(x) + ": " + e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ScootException("Interrupted while parsing schema files.", e);
+        }
+      }
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Parse a single resource, using the cache if there is one, the resource is a file, and the parser's results 
+   * can be cached
+   */
+  private HBaseSchema parse(String resourceName) {
+    File file = new File(resourceName);
+    HBaseSchemaParser parser = newParser(resourceName);
+    if (cache == null || !file.isFile() || !parser.isCacheable()) {
+      return parser.parse();
+    }
+    HBaseSchema schema = cache.get(file, parserClassName);
+    if (schema == null) {
+      schema = parser.parse();
+      cache.put(file, parserClassName, schema);
+    }
+    return schema;
+  }
+
+  /**
+   * Get a new instance of the parser, set up to parse a single resource
+   */
+  private HBaseSchemaParser newParser(String resourceName) {
+    HBaseSchemaParser parser;
+    try {
+      parser = (HBaseSchemaParser)Class.forName(parserClassName).newInstance();
+    } catch (Exception e) {
+      throw new ScootException("Unable to instantiate supplied parser: " + parserClassName, e);
+    }
+    parser.setTableFilter(tableFilter);
+    parser.setConfiguration(configuration);
+    try {
+      parser.setResourceToParse(resourceName);
+    } catch (Exception e) {
+      throw new ScootException("Unable to parse given resource using parser '" + parserClassName + "': " + resourceName, e);
+    }
+    return parser;
+  }
+
+  /**
+   * Does this name refer to a set of schema files (a directory or a wildcard pattern), rather than one resource?
+   */
+  public static boolean isMultiFile(String schemaName) {
+    return new File(schemaName).isDirectory() || getFileName(schemaName).indexOf('*') >= 0 || getFileName(schemaName).indexOf('?') >= 0;
+  }
+
+  /**
+   * List the files a directory or wildcard pattern refers to, sorted by name
+   */
+  static List<File> getSchemaFiles(String schemaName) {
+    File named = new File(schemaName);
+    final File directory;
+    final Pattern pattern;
+    if (named.isDirectory()) {
+      directory = named;
+      pattern = Pattern.compile(".*\\.xml");
+    } else {
+      directory = named.getAbsoluteFile().getParentFile();
+      pattern = globToPattern(getFileName(schemaName));
+    }
+    File[] files = directory.listFiles(new FileFilter() {
+      public boolean accept(File f) {
+        return f.isFile() && pattern.matcher(f.getName()).matches();
+      }
+    });
+    if (files == null) {
+      throw new ScootException("Unable to list schema files in directory: " + directory);
+    }
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  private static String getFileName(String schemaName) {
+    return new File(schemaName).getName();
+  }
+
+  private static Pattern globToPattern(String glob) {
+    StringBuilder regex = new StringBuilder();
+    for (char c : glob.toCharArray()) {
+      if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * An on-disk cache of parsed schema files, so that repeated runs over files that haven't changed can
+ * skip parsing (and validation, and default handling) entirely. Entries are keyed by a hash of the 
+ * file's contents plus the name of the parser class that produced them, so editing a file, or reading 
+ * it with a different parser, just misses the cache. The directory the file is in is part of the key too, 
+ * since parsers resolve the relative paths in a schema (like a table's SPLITSAMPLES) against it. Each entry holds the schema's table descriptors 
+ * in their own Writable binary form.
+ * 
+ * The cache can be shared by several threads (and several processes; entries are written to a temp 
+ * file and renamed into place). Stale entries are never cleaned up; delete the directory to reset it.
+ */
+public class HBaseSchemaParseCache {
+
+  private static final int MAGIC = 0x53434F54; // "SCOT"
+  /** Bump this if the entry format, or the way parsers build descriptors, changes */
+  private static final int FORMAT_VERSION = 2;
+  private static final String ENTRY_SUFFIX = ".schema";
+
+  private final File directory;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public HBaseSchemaParseCache(File directory) {
+    this.directory = directory;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new ScootException("Unable to create schema cache directory: " + directory);
+    }
+  }
+
+  /**
+   * Get the cached schema for the given file as parsed by the given parser, or null if there isn't one
+   */
+  public HBaseSchema get(File schemaFile, String parserClassName) {
+    File entry = getEntryFile(schemaFile, parserClassName);
+    if (!entry.isFile()) {
+      misses.incrementAndGet();
+      return null;
+    }
+    try {
+      HBaseSchema schema = read(entry);
+      hits.incrementAndGet();
+      return schema;
+    } catch (IOException e) {
+      // treat an unreadable entry as a miss; it'll be overwritten
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Store the schema parsed from the given file by the given parser
+   */
+  public void put(File schemaFile, String parserClassName, HBaseSchema schema) {
+    File entry = getEntryFile(schemaFile, parserClassName);
+    try {
+      File tmp = File.createTempFile(entry.getName(), ".tmp", directory);
+      try {
+        write(tmp, schema);
+        if (!tmp.renameTo(entry)) {
+          // someone else may have just written the same entry; if not, the next run will try again
+          tmp.delete();
+        }
+      } catch (IOException e) {
+        tmp.delete();
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new ScootException("Unable to write schema cache entry " + entry + ": " + e.getMessage(), e);
+    }
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  private File getEntryFile(File schemaFile, String parserClassName) {
+    return new File(directory, getContentHash(schemaFile, parserClassName) + ENTRY_SUFFIX);
+  }
+
+  /**
+   * Hash of the file's contents and directory, the parser class, and the cache format
+   */
+  private static String getContentHash(File schemaFile, String parserClassName) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(Bytes.toBytes(FORMAT_VERSION));
+      digest.update(Bytes.toBytes(parserClassName));
+      digest.update(Bytes.toBytes(schemaFile.getAbsoluteFile().getParent()));
+      InputStream in = new FileInputStream(schemaFile);
+      try {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          digest.update(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (Exception e) {
+      throw new ScootException("Unable to hash schema file " + schemaFile + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static HBaseSchema read(File entry) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Not a schema cache entry: " + entry);
+      }
+      HBaseSchema schema = new HBaseSchema();
+      int tableCount = in.readInt();
+      for (int x = 0; x < tableCount; x++) {
+        HTableDescriptor t = new HTableDescriptor();
+        t.readFields(in);
+        schema.addTable(t);
+      }
+      return schema;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void write(File file, HBaseSchema schema) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(schema.getTables().size());
+      for (HTableDescriptor t : schema.getTables()) {
+        t.write(out);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
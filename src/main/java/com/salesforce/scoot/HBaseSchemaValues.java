@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Helpers for working with the raw (ImmutableBytesWritable) value maps of tables and column families 
+ * without converting them to strings or copying them.
+ */
+public final class HBaseSchemaValues {
+
+  private HBaseSchemaValues() {}
+
+  /**
+   * Reusable space for the entries of a value map, sorted by key. Loading a map into one of these doesn't 
+   * allocate anything once it's big enough, so one per thread can be used for any number of maps. (The maps
+   * HBase hands out are unmodifiable views, whose entry iterators wrap every entry in a new object; so the 
+   * keys are iterated instead, and their values looked up.)
+   */
+  public static final class SortedValues {
+    private ImmutableBytesWritable[] keys = new ImmutableBytesWritable[32];
+    private ImmutableBytesWritable[] values = new ImmutableBytesWritable[32];
+    private int size;
+
+    /**
+     * Replace the contents with the entries of the given map, in key byte order
+     */
+    public SortedValues load(Map<ImmutableBytesWritable, ImmutableBytesWritable> map) {
+      clear();
+      if (keys.length < map.size()) {
+        keys = new ImmutableBytesWritable[Math.max(map.size(), keys.length * 2)];
+        values = new ImmutableBytesWritable[keys.length];
+      }
+      for (ImmutableBytesWritable key : map.keySet()) {
+        keys[size++] = key;
+      }
+      Arrays.sort(keys, 0, size, KEY_ORDER);
+      for (int x = 0; x < size; x++) {
+        values[x] = map.get(keys[x]);
+      }
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public ImmutableBytesWritable getKey(int index) {
+      return keys[index];
+    }
+
+    public ImmutableBytesWritable getValue(int index) {
+      return values[index];
+    }
+
+    /**
+     * Let go of the entries, so they can be collected
+     */
+    public void clear() {
+      Arrays.fill(keys, 0, size, null);
+      Arrays.fill(values, 0, size, null);
+      size = 0;
+    }
+  }
+
+  private static final Comparator<ImmutableBytesWritable> KEY_ORDER = new Comparator<ImmutableBytesWritable>() {
+    public int compare(ImmutableBytesWritable a, ImmutableBytesWritable b) {
+      return HBaseSchemaValues.compare(a, b);
+    }
+  };
+
+  /**
+   * Compare the raw bytes of two keys or values
+   */
+  public static int compare(ImmutableBytesWritable a, ImmutableBytesWritable b) {
+    return Bytes.compareTo(a.get(), a.getOffset(), a.getLength(), b.get(), b.getOffset(), b.getLength());
+  }
+
+  /**
+   * Convert a key or value to a string
+   */
+  public static String toString(ImmutableBytesWritable b) {
+    return Bytes.toString(b.get(), b.getOffset(), b.getLength());
+  }
+
+  /** The keys of the attributes that aren't stored on the cluster, and the type of schema element each is on */
+  private static final List<ImmutableBytesWritable> UNSTORED_KEYS = new ArrayList<ImmutableBytesWritable>();
+  private static final List<Class<?>> UNSTORED_TYPES = new ArrayList<Class<?>>();
+  static {
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (!a.storedOnCluster) {
+        UNSTORED_KEYS.add(new ImmutableBytesWritable(Bytes.toBytes(a.name)));
+        UNSTORED_TYPES.add(a.appliesToObjectType);
+      }
+    }
+  }
+
+  /**
+   * Is a value with this key on the given type of schema element written to the cluster (see 
+   * HBaseSchemaAttribute.storedOnCluster)? Checked against the raw bytes of the key.
+   */
+  public static boolean isStoredOnCluster(ImmutableBytesWritable key, Class<?> objectType) {
+    for (int x = 0; x < UNSTORED_KEYS.size(); x++) {
+      if (UNSTORED_TYPES.get(x).equals(objectType) && compare(key, UNSTORED_KEYS.get(x)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get a table the way it should be on the cluster: a copy without the values that aren't stored there, or the 
+   * table itself if it doesn't have any
+   */
+  public static HTableDescriptor forCluster(HTableDescriptor table) {
+    if (!hasUnstoredValues(table)) {
+      return table;
+    }
+    HTableDescriptor copy = new HTableDescriptor(table);
+    for (int x = 0; x < UNSTORED_KEYS.size(); x++) {
+      byte[] key = UNSTORED_KEYS.get(x).copyBytes();
+      if (UNSTORED_TYPES.get(x).equals(HTableDescriptor.class)) {
+        copy.remove(key);
+      } else {
+        for (HColumnDescriptor family : copy.getFamilies()) {
+          family.remove(key);
+        }
+      }
+    }
+    return copy;
+  }
+
+  private static boolean hasUnstoredValues(HTableDescriptor table) {
+    for (ImmutableBytesWritable key : table.getValues().keySet()) {
+      if (!isStoredOnCluster(key, HTableDescriptor.class)) return true;
+    }
+    for (HColumnDescriptor family : table.getFamilies()) {
+      for (ImmutableBytesWritable key : family.getValues().keySet()) {
+        if (!isStoredOnCluster(key, HColumnDescriptor.class)) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the entries of a value map as strings, sorted by key
+   */
+  public static List<Entry<String, String>> toSortedStrings(Map<ImmutableBytesWritable, ImmutableBytesWritable> values) {
+    SortedValues sorted = new SortedValues().load(values);
+    List<Entry<String, String>> result = new ArrayList<Entry<String, String>>(sorted.size());
+    for (int x = 0; x < sorted.size(); x++) {
+      result.add(new SimpleImmutableEntry<String, String>(toString(sorted.getKey(x)), toString(sorted.getValue(x))));
+    }
+    return result;
+  }
+
+}
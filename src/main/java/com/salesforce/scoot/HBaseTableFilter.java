@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Limits the tables that scoot looks at to the ones whose names match at least one of the include
+ * patterns (or any name, if there are none) and none of the exclude patterns. Patterns are java 
+ * regular expressions, and must match the whole table name.
+ * 
+ * Parsers reading from a live cluster use this to only fetch the matching tables, and the diff uses it
+ * to ignore everything else, so (for example) a table that exists on the cluster but is outside the 
+ * filter is never considered a DROP.
+ */
+public class HBaseTableFilter {
+
+  /**
+   * A filter that matches every table
+   */
+  public static final HBaseTableFilter ALL = new HBaseTableFilter(null, null);
+
+  private final List<Pattern> includes;
+  private final List<Pattern> excludes;
+
+  /**
+   * @param includes patterns of table names to include (null or empty to include all tables)
+   * @param excludes patterns of table names to exclude, even if they're included (may be null)
+   */
+  public HBaseTableFilter(String[] includes, String[] excludes) {
+    this.includes = compile(includes);
+    this.excludes = compile(excludes);
+  }
+
+  private static List<Pattern> compile(String[] patterns) {
+    if (patterns == null) return Collections.emptyList();
+    List<Pattern> result = new ArrayList<Pattern>();
+    for (String p : patterns) {
+      result.add(Pattern.compile(p));
+    }
+    return result;
+  }
+
+  /**
+   * Is the named table one we should look at?
+   */
+  public boolean matches(String tableName) {
+    boolean included = includes.isEmpty();
+    for (Pattern p : includes) {
+      if (p.matcher(tableName).matches()) {
+        included = true;
+        break;
+      }
+    }
+    if (!included) return false;
+    for (Pattern p : excludes) {
+      if (p.matcher(tableName).matches()) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Does this filter match every table (i.e. does it have no patterns)?
+   */
+  public boolean matchesAll() {
+    return includes.isEmpty() && excludes.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "include " + (includes.isEmpty() ? "all" : includes) + ", exclude " + excludes;
+  }
+
+}
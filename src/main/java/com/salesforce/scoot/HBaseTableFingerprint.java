@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.scoot.HBaseSchemaValues.SortedValues;
+
+/**
+ * A stable 64 bit fingerprint of a table's content: its name, its values, and its column families and their
+ * values, taken in sorted order (so the order in which values were set doesn't matter). Tables with the same
+ * content always have the same fingerprint, and the chance of two different tables sharing one is negligible
+ * (about 1 in 2^64), so comparing fingerprints is a cheap way to find the tables that don't need to be 
+ * compared in depth.
+ * 
+ * The content is hashed 8 bytes at a time with MurmurHash3's 64 bit mixing steps, with every byte string 
+ * prefixed by its length.
+ */
+public final class HBaseTableFingerprint {
+
+  private static final long SEED = 0x5CD07L;
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private static final ThreadLocal<SortedValues> SORTED_VALUES = new ThreadLocal<SortedValues>() {
+    @Override
+    protected SortedValues initialValue() {
+      return new SortedValues();
+    }
+  };
+
+  private HBaseTableFingerprint() {}
+
+  /**
+   * Compute the fingerprint of the given table
+   */
+  public static long of(HTableDescriptor table) {
+    long hash = SEED;
+    hash = add(hash, table.getName());
+    hash = addValues(hash, table.getValues());
+    // families are kept sorted by name
+    hash = addWord(hash, table.getFamilies().size());
+    for (HColumnDescriptor cf : table.getFamilies()) {
+      hash = add(hash, cf.getName());
+      hash = addValues(hash, cf.getValues());
+    }
+    // final avalanche, so that every input bit affects every output bit
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  private static long addValues(long hash, Map<ImmutableBytesWritable, ImmutableBytesWritable> values) {
+    SortedValues sorted = SORTED_VALUES.get().load(values);
+    try {
+      hash = addWord(hash, sorted.size());
+      for (int x = 0; x < sorted.size(); x++) {
+        ImmutableBytesWritable key = sorted.getKey(x);
+        ImmutableBytesWritable value = sorted.getValue(x);
+        hash = add(hash, key.get(), key.getOffset(), key.getLength());
+        hash = add(hash, value.get(), value.getOffset(), value.getLength());
+      }
+      return hash;
+    } finally {
+      sorted.clear();
+    }
+  }
+
+  private static long add(long hash, byte[] bytes) {
+    return add(hash, bytes, 0, bytes.length);
+  }
+
+  private static long add(long hash, byte[] bytes, int offset, int length) {
+    hash = addWord(hash, length);
+    int end = offset + length;
+    int x = offset;
+    for (; x + 8 <= end; x += 8) {
+      hash = addWord(hash, (bytes[x] & 0xffL) << 56 | (bytes[x + 1] & 0xffL) << 48 | (bytes[x + 2] & 0xffL) << 40 
+          | (bytes[x + 3] & 0xffL) << 32 | (bytes[x + 4] & 0xffL) << 24 | (bytes[x + 5] & 0xffL) << 16 
+          | (bytes[x + 6] & 0xffL) << 8 | (bytes[x + 7] & 0xffL));
+    }
+    if (x < end) {
+      long tail = 0;
+      for (; x < end; x++) {
+        tail = tail << 8 | (bytes[x] & 0xffL);
+      }
+      hash = addWord(hash, tail);
+    }
+    return hash;
+  }
+
+  private static long addWord(long hash, long word) {
+    word *= C1;
+    word = Long.rotateLeft(word, 31);
+    word *= C2;
+    hash ^= word;
+    hash = Long.rotateLeft(hash, 27);
+    return hash * 5 + 0x52dce729;
+  }
+
+}
@@ -25,22 +25,43 @@
  */
 package com.salesforce.scoot;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
 
 import com.google.common.base.Preconditions;
+import com.salesforce.scoot.advisor.HBaseCapacityModel;
+import com.salesforce.scoot.advisor.HBaseCapacityModel.Projection;
+import com.salesforce.scoot.advisor.HBaseSchemaAdvisor;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding;
+import com.salesforce.scoot.executor.HBaseRegionSplitExecutor;
+import com.salesforce.scoot.executor.HBaseSchemaPatchExecutor;
 import com.salesforce.scoot.parser.HBaseClusterParser;
-import com.salesforce.scoot.parser.HBaseSchemaParser;
+import com.salesforce.scoot.parser.HBaseClusterSnapshotParser;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaParser;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaWriter;
 import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.scripter.HBaseRubyRegionSplitScripter;
 import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
 
 /**
@@ -56,14 +77,44 @@ public class Scoot {
     options.addOption("t", "to", true, "The schema you want to end up with.");
     options.addOption("tp", "to-parser", true, "The parser to use for the 'to' schema. If not supplied, the tool will attempt to auto-detect it.");
     options.addOption("o", "output", true, "The name of the file to output.");
+    options.addOption("i", "include", true, "Only look at tables whose names match this regular expression. May be given more than once.");
+    options.addOption("x", "exclude", true, "Don't look at tables whose names match this regular expression, even if they're included. May be given more than once.");
+    options.addOption("u", "unlisted-unchanged", false, "Count the tables that haven't changed in the script's summary, rather than listing them (saves memory and script size for very large schemas).");
+    options.addOption("l", "lanes", true, "Run the script's table modifications in this many parallel lanes (threads), each with its own connection. Defaults to 1 (one table at a time), or when applying, to " + HBaseSchemaPatchExecutor.THREADS_KEY + ".");
+    options.addOption("a", "apply", true, "Apply the changes directly to this cluster (a zookeeper quorum), rather than writing a script for the hbase shell. It's validated before and after, as the script would be. Both are throttled as the scoot.throttle.* properties say (see HBaseRolloutThrottle).");
+    options.addOption("c", "cache", true, "Directory in which to cache parsed schema files between runs. Unchanged files are not re-parsed.");
     options.addOption("h", "help", true, "Get help on using this utility.");
+    OptionBuilder.withArgName("key=value");
+    OptionBuilder.hasArgs(2);
+    OptionBuilder.withValueSeparator();
+    OptionBuilder.withDescription("Set a configuration property, overriding hbase-site.xml (e.g. " + HBaseClusterSnapshotParser.MAX_AGE_KEY + "=3600000). May be given more than once.");
+    options.addOption(OptionBuilder.create("D"));
+  }
+
+  /**
+   * Commands other than the default (scripting the diff between two schemas), given as the first unflagged argument
+   */
+  private static final Map<String, String> commands = new LinkedHashMap<String, String>();
+  static {
+    commands.put("compile", "Compile the 'from' schema into a binary file (" + HBaseCompiledSchemaParser.FILE_EXTENSION + ") that loads without parsing, written to the output file.");
+    commands.put("snapshot", "Save the schema of the 'from' cluster (a zookeeper quorum) to the output file, along with the time and the cluster ID, so it can be diffed against offline. Snapshots use the compiled format; set " + HBaseClusterSnapshotParser.MAX_AGE_KEY + " to go back to the cluster when one is older than that.");
+    commands.put("regions", "Compare the region boundaries of the 'from' cluster (or a snapshot of it) with the 'to' reference: another cluster, a snapshot, or a schema whose tables declare their splits (SPLITKEYS, or the pre-split attributes). The missing and extra boundaries are reported; with an output file, a script is written that splits regions to add the missing ones, or with --apply, the splits are done directly. Splits are throttled as the scoot.throttle.* properties say, and time out after " + HBaseRegionSplitExecutor.TIMEOUT_KEY + ".");
+    commands.put("advise", "Check the tables in the 'from' schema for settings that are likely to hurt performance, and report what's found, by severity; with an output file, the findings are also written to it as JSON. Set " + HBaseSchemaAdvisor.FAIL_ON_KEY + " to a severity to fail if anything that severe is found (see HBaseSchemaAdvisor for the rest of the settings).");
+    commands.put("capacity", "Project how much block cache and memstore the tables in the 'from' schema ask of each region server, given a cluster profile (" + HBaseCapacityModel.REGION_SERVERS_KEY + ", " + HBaseCapacityModel.HEAP_MB_KEY + " and the rest; see HBaseCapacityModel), and flag over-commitment. The region counts of the tables on the 'to' cluster (or snapshot), if it's given, are used. With an output file, the findings are written to it as JSON. When a profile is set, diffs project the 'to' schema too, and --apply stops if it would over-commit the servers.");
   }
   
+  private final String commandName;
   private final String fromSchemaName;
   private final String fromSchemaParser;
   private final String toSchemaName;
   private final String toSchemaParser;
   private final String outputFileName;
+  private final HBaseSchemaParseCache parseCache;
+  private final HBaseTableFilter tableFilter;
+  private final Configuration configuration;
+  private final boolean listingUnchangedTables;
+  private final Integer laneCount;
+  private final String applyTo;
   private final boolean helpMode;
   
   /**
@@ -82,11 +133,19 @@ public class Scoot {
         helpMode = false;
       }
 
+      // is this a command other than a diff?
+      List<String> unflaggedArgs = new ArrayList<String>(Arrays.asList(command.getArgs()));
+      if (!unflaggedArgs.isEmpty() && commands.containsKey(unflaggedArgs.get(0))) {
+        commandName = unflaggedArgs.remove(0);
+      } else {
+        commandName = null;
+      }
+
       // figure out the "from" schema & type
       if (command.hasOption("f")) {
         fromSchemaName = command.getOptionValue("f");
-      } else if (command.getArgs().length > 0) {
-        fromSchemaName = command.getArgs()[0];
+      } else if (unflaggedArgs.size() > 0) {
+        fromSchemaName = unflaggedArgs.get(0);
       } else {
         fromSchemaName = null;
       }
@@ -99,8 +158,8 @@ public class Scoot {
       // figure out the "to" schema & type
       if (command.hasOption("t")) {
         toSchemaName = command.getOptionValue("t");
-      } else if (command.getArgs().length > 1) {
-        toSchemaName = command.getArgs()[1];
+      } else if (unflaggedArgs.size() > 1) {
+        toSchemaName = unflaggedArgs.get(1);
       } else {
         toSchemaName = null;
       }
@@ -118,6 +177,38 @@ public class Scoot {
         outputFileName = null;
       }
 
+      if (command.hasOption("c")) {
+        parseCache = new HBaseSchemaParseCache(new File(command.getOptionValue("c")));
+      } else {
+        parseCache = null;
+      }
+
+      listingUnchangedTables = !command.hasOption("u");
+
+      if (command.hasOption("l")) {
+        try {
+          laneCount = Integer.parseInt(command.getOptionValue("l"));
+        } catch (NumberFormatException e) {
+          throw new ScootException("Invalid number of lanes: " + command.getOptionValue("l"), e);
+        }
+      } else {
+        laneCount = null;
+      }
+
+      if (command.hasOption("a")) {
+        applyTo = command.getOptionValue("a");
+      } else {
+        applyTo = null;
+      }
+
+      tableFilter = new HBaseTableFilter(command.getOptionValues("i"), command.getOptionValues("x"));
+
+      configuration = HBaseConfiguration.create();
+      Properties properties = command.getOptionProperties("D");
+      for (String key : properties.stringPropertyNames()) {
+        configuration.set(key, properties.getProperty(key));
+      }
+
     } catch (ParseException e) {
       throw new ScootException("Error during initialization: ", e);
     }
@@ -138,76 +229,233 @@ public class Scoot {
 
     if (helpMode){
       HelpFormatter hf = new HelpFormatter();
-      hf.printHelp("scoot", options);
+      StringBuilder footer = new StringBuilder("commands:\n");
+      for (Entry<String, String> c : commands.entrySet()) {
+        footer.append(" ").append(c.getKey()).append(": ").append(c.getValue()).append("\n");
+      }
+      hf.printHelp("scoot", null, options, footer.toString());
       return;
     }
 
     Preconditions.checkNotNull(fromSchemaName, "Missing 'from' schema argument.");
     
+    if ("compile".equals(commandName)) {
+      compile();
+      return;
+    }
+    if ("snapshot".equals(commandName)) {
+      Preconditions.checkNotNull(outputFileName, "Missing output file argument.");
+      HBaseClusterSnapshotParser.writeSnapshot(fromSchemaName, configuration, tableFilter, new File(outputFileName));
+      return;
+    }
+    if ("regions".equals(commandName)) {
+      regions();
+      return;
+    }
+    if ("advise".equals(commandName)) {
+      advise();
+      return;
+    }
+    if ("capacity".equals(commandName)) {
+      capacity();
+      return;
+    }
+
     HBaseSchema fromSchema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
     HBaseSchema toSchema = parseSchema(toSchemaName, toSchemaParser == null ? getDefaultParser(toSchemaName) : toSchemaParser);
+    if (parseCache != null) {
+      System.out.println("Schema parse cache: " + parseCache.getHits() + " hit(s), " + parseCache.getMisses() + " miss(es).");
+    }
     
     // if there's no "to" schema, use an empty one (i.e. script this as a create operation)
     if (toSchema == null) toSchema = new HBaseSchema();
-    HBaseSchemaDiff diff = new HBaseSchemaDiff(fromSchema, toSchema);
-    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
-    writeFile(outputFileName, script);
+    checkCapacity(toSchema);
+    if (applyTo != null) {
+      apply(fromSchema, toSchema);
+      return;
+    }
+    // script the changes as the diff finds them, so they don't all have to be kept around (and neither does the 
+    // script: its sections are kept next to the output file until they're put together)
+    Preconditions.checkNotNull(outputFileName, "Missing output file argument.");
+    File outputFile = new File(outputFileName).getAbsoluteFile();
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter();
+    scripter.setSectionDirectory(outputFile.getParentFile());
+    scripter.setListingIgnoredTables(listingUnchangedTables);
+    scripter.setLanes(laneCount == null ? 1 : laneCount);
+    scripter.setThrottle(new HBaseRolloutThrottle(configuration));
+    scripter.setOnlineSchemaUpdates(configuration.getBoolean(HBaseRubySchemaPatchScripter.ONLINE_SCHEMA_UPDATE_KEY, false));
+    try {
+      new HBaseSchemaDiff(fromSchema, toSchema, tableFilter, Runtime.getRuntime().availableProcessors(), scripter);
+      scripter.writeScript(outputFile);
+    } finally {
+      scripter.discard();
+    }
   }
   
+  /**
+   * Apply the changes straight to the cluster, instead of scripting them
+   */
+  private void apply(HBaseSchema fromSchema, HBaseSchema toSchema) {
+    Configuration clusterConfiguration = new Configuration(configuration);
+    clusterConfiguration.set("hbase.zookeeper.quorum", applyTo);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(fromSchema, toSchema, tableFilter, Runtime.getRuntime().availableProcessors(), false);
+    HBaseSchemaPatchExecutor executor = new HBaseSchemaPatchExecutor(diff, clusterConfiguration);
+    if (laneCount != null) executor.setThreads(laneCount);
+    executor.apply();
+  }
+
+  /**
+   * Diff the region layouts of the "from" and "to" schemas, and script or apply the splits that bring "from" in line
+   */
+  private void regions() {
+    Preconditions.checkNotNull(toSchemaName, "Missing 'to' (reference) argument.");
+    HBaseRegionLayout fromLayout = loadRegionLayout(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
+    HBaseRegionLayout toLayout = loadRegionLayout(toSchemaName, toSchemaParser == null ? getDefaultParser(toSchemaName) : toSchemaParser);
+    HBaseRegionLayoutDiff diff = new HBaseRegionLayoutDiff(fromLayout, toLayout);
+    System.out.print(diff.getReport());
+    if (applyTo != null) {
+      Configuration clusterConfiguration = new Configuration(configuration);
+      clusterConfiguration.set("hbase.zookeeper.quorum", applyTo);
+      new HBaseRegionSplitExecutor(diff, clusterConfiguration).apply();
+    } else if (outputFileName != null) {
+      HBaseRubyRegionSplitScripter scripter = new HBaseRubyRegionSplitScripter(diff);
+      scripter.setThrottle(new HBaseRolloutThrottle(configuration));
+      scripter.setTimeoutMs(configuration.getLong(HBaseRegionSplitExecutor.TIMEOUT_KEY, HBaseRegionSplitExecutor.DEFAULT_TIMEOUT_MS));
+      scripter.writeScript(new File(outputFileName));
+    }
+  }
+
+  /**
+   * Get the region layout of a cluster, from the cluster itself or a snapshot of it, or the one a schema declares
+   */
+  private HBaseRegionLayout loadRegionLayout(String schemaName, String schemaParser) {
+    return loadRegionLayout(schemaName, schemaParser, true);
+  }
+
+  /**
+   * @param required if not, a snapshot that doesn't record the region layout gives null, rather than failing
+   */
+  private HBaseRegionLayout loadRegionLayout(String schemaName, String schemaParser, boolean required) {
+    if (HBaseClusterParser.class.getName().equals(schemaParser)) {
+      HBaseClusterParser parser = new HBaseClusterParser();
+      parser.setConfiguration(configuration);
+      parser.setTableFilter(tableFilter);
+      parser.setResourceToParse(schemaName);
+      return parser.getRegionLayout();
+    }
+    if (HBaseClusterSnapshotParser.class.getName().equals(schemaParser)) {
+      HBaseClusterSnapshotParser parser = new HBaseClusterSnapshotParser();
+      parser.setConfiguration(configuration);
+      parser.setTableFilter(tableFilter);
+      parser.setResourceToParse(schemaName);
+      parser.parse();
+      if (!required && !parser.hasRegionLayout()) return null;
+      return parser.getRegionLayout();
+    }
+    return HBaseRegionLayout.fromSchema(parseSchema(schemaName, schemaParser));
+  }
+
+  /**
+   * Run the advisor's rules over the "from" schema
+   */
+  private void advise() {
+    HBaseSchema schema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
+    HBaseSchemaAdvisor advisor = new HBaseSchemaAdvisor(configuration);
+    List<HBaseSchemaFinding> findings = advisor.advise(schema);
+    System.out.print(HBaseSchemaAdvisor.getReport(findings));
+    if (outputFileName != null) writeJson(findings);
+    advisor.check(findings);
+  }
+
+  /**
+   * Project what the "from" schema asks of the region servers in the cluster profile
+   */
+  private void capacity() {
+    HBaseSchema schema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
+    HBaseRegionLayout layout = null;
+    if (toSchemaName != null) {
+      layout = loadRegionLayout(toSchemaName, toSchemaParser == null ? getDefaultParser(toSchemaName) : toSchemaParser);
+    }
+    Projection projection = new HBaseCapacityModel(configuration).project(schema, layout);
+    System.out.print(projection.getReport());
+    if (outputFileName != null) writeJson(projection.getFindings());
+    new HBaseSchemaAdvisor(configuration).check(projection.getFindings());
+  }
+
+  /**
+   * If there's a cluster profile, project what the "to" schema asks of the region servers (with the region counts
+   * of the "from" schema's tables, if it's a live cluster or a snapshot of one, as the capacity command gets them);
+   * applying stops if they'd be over-committed
+   */
+  private void checkCapacity(HBaseSchema toSchema) {
+    if (!HBaseCapacityModel.isConfigured(configuration)) return;
+    String parser = fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser;
+    boolean cluster = HBaseClusterParser.class.getName().equals(parser) || HBaseClusterSnapshotParser.class.getName().equals(parser);
+    HBaseRegionLayout layout = cluster ? loadRegionLayout(fromSchemaName, parser, false) : null;
+    Projection projection = new HBaseCapacityModel(configuration).project(toSchema, layout);
+    System.out.print(projection.getReport());
+    if (applyTo != null && projection.isOverCommitted()) {
+      throw new ScootException("Not applying the changes: the new schema would over-commit the region servers.");
+    }
+  }
+
+  /**
+   * Write findings to the output file, as JSON
+   */
+  private void writeJson(List<HBaseSchemaFinding> findings) {
+    try {
+      Writer out = new OutputStreamWriter(new FileOutputStream(outputFileName), "UTF-8");
+      try {
+        out.write(HBaseSchemaAdvisor.toJson(findings));
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new ScootException("Error writing output file: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Compile the "from" schema into the binary format read by HBaseCompiledSchemaParser
+   */
+  private void compile() {
+    Preconditions.checkNotNull(outputFileName, "Missing output file argument.");
+    HBaseSchema schema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put("source", fromSchemaName);
+    properties.put("compiledAt", String.valueOf(System.currentTimeMillis()));
+    HBaseCompiledSchemaWriter.write(schema, properties, new File(outputFileName));
+  }
+
   /**
    * Detect the schema type based on the name and / or supplied parser, and return a parsed schema object.
-   * @param schemaName The name of the resource you're pulling schema from (the format of which depends on which parser you're using)
+   * @param schemaName The name of the resource you're pulling schema from (the format of which depends on which parser you're using).
+   *   For file based parsers, this can also be a directory or a wildcard pattern matching several files (see HBaseSchemaLoader).
    * @param schemaParser Fully qualified class name of the parser to use
    */
   private HBaseSchema parseSchema(String schemaName, String schemaParser) {
     if (schemaName == null || schemaParser == null) return null;
-    try {
-      HBaseSchemaParser parser = (HBaseSchemaParser)Class.forName(schemaParser).newInstance();
-      try {
-    	  parser.setResourceToParse(schemaName);
-      } catch (Exception e){
-          throw new ScootException("Unable to parse given resource using parser '" + schemaParser + "': " + schemaName);
-      }
-      return parser.parse();
-    } catch (Exception e) {
-      throw new ScootException("Unable to instantiate supplied parser: " + schemaParser);
-    } 
+    HBaseSchemaLoader loader = new HBaseSchemaLoader(schemaParser);
+    loader.setCache(parseCache);
+    loader.setTableFilter(tableFilter);
+    loader.setConfiguration(configuration);
+    return loader.load(schemaName);
   }
 
   /**
-   * For xml files, default is the scoot xml parser; for anything else, assume it's a live cluster.
+   * For xml files (or sets of them), default is the scoot xml parser; for compiled schema files, it's the snapshot
+   * parser (which reads any compiled schema, and also checks the age of snapshots); for anything else, assume it's 
+   * a live cluster.
    * TODO: this should probably be pluggable using an implementation supplied by injected parser classes.
    */
   private String getDefaultParser(String schemaName) {
-    if (schemaName.endsWith(".xml")) {
+    if (schemaName.endsWith(".xml") || HBaseSchemaLoader.isMultiFile(schemaName)) {
       return HBaseScootXMLParser.class.getName();
+    } else if (schemaName.endsWith(HBaseCompiledSchemaParser.FILE_EXTENSION)) {
+      return HBaseClusterSnapshotParser.class.getName();
     } else {
       return HBaseClusterParser.class.getName();
     }
   }
 
-  /**
-   * First write the file to a temp location, then move it to the desired location
-   */
-  private void writeFile(String outputFileName, String script) {
-    File destination = new File(outputFileName);
-    try{
-      File tmp = File.createTempFile("scoot_output_file_" + System.currentTimeMillis(), null);
-      FileWriter fstream = new FileWriter(tmp, false);
-      BufferedWriter out = new BufferedWriter(fstream);
-      out.write(script.toString());
-      out.close();
-
-      // if successful, move to real location
-      try {
-        FileUtils.moveFile(tmp, destination);
-      } catch (IOException e) {
-          throw new ScootException("Could not move temporary file " + tmp.getAbsolutePath() + " to " + destination + ": " + e.getMessage());
-      }
-    }catch (Exception x){ //Catch exception if any
-      throw new ScootException("Error writing output script file: " + x.getMessage(), x);
-    }
-  }
-
-  
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.advisor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseRegionLayout;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding.Severity;
+import com.salesforce.scoot.split.HBaseSplitKeys;
+
+/**
+ * Projects how much of each region server's heap a schema will ask for, from a profile of the cluster, and flags 
+ * schemas that ask for more than the servers have. The profile comes from the configuration:
+ * 
+ *   scoot.capacity.regionservers                 - how many region servers there are (the model is only used if this is set)
+ *   scoot.capacity.heap.mb                       - each region server's heap
+ *   hfile.block.cache.size                       - the fraction of the heap for the block cache (as HBase; default 0.25)
+ *   hbase.regionserver.global.memstore.upperLimit - the fraction of the heap all the memstores can use before updates 
+ *                                                  are blocked (as HBase; default 0.4), and lowerLimit, where flushes 
+ *                                                  are forced (default 0.35)
+ *   hbase.hregion.memstore.flush.size            - the flush size of tables that don't set MEMSTORE_FLUSHSIZE (as HBase)
+ *   scoot.capacity.in.memory.fraction            - the share of the block cache in-memory families get (default 0.25, 
+ *                                                  as LruBlockCache)
+ *   scoot.capacity.regions.per.table             - how many regions a table is expected to have (default 1)
+ *   scoot.capacity.table.regions.<table>         - how many regions the named table is expected to have
+ * 
+ * A table's region count is the one set for it in the profile, or else the number it has on the cluster, if the
+ * cluster's region layout is given, or else the number it's pre-split into (see HBaseSplitKeys), or else the 
+ * profile's default. Regions are assumed to be spread evenly over the servers.
+ * 
+ * HBase flushes a region once all its memstores add up to its table's flush size, so each region can hold that 
+ * much; if all of them together can hold more than the global memstore limits, the servers will be forcing 
+ * flushes (and blocking updates) rather than flushing regions as they fill. The in-memory families' 
+ * EXPECTED_SIZE_GB hints are compared with the in-memory share of the block cache; families without the hint 
+ * can't be counted, and are just listed.
+ */
+public class HBaseCapacityModel {
+
+  public static final String REGION_SERVERS_KEY = "scoot.capacity.regionservers";
+  public static final String HEAP_MB_KEY = "scoot.capacity.heap.mb";
+  public static final String IN_MEMORY_FRACTION_KEY = "scoot.capacity.in.memory.fraction";
+  public static final String REGIONS_PER_TABLE_KEY = "scoot.capacity.regions.per.table";
+  public static final String TABLE_REGIONS_KEY_PREFIX = "scoot.capacity.table.regions.";
+  public static final String MEMSTORE_UPPER_LIMIT_KEY = "hbase.regionserver.global.memstore.upperLimit";
+  public static final String MEMSTORE_LOWER_LIMIT_KEY = "hbase.regionserver.global.memstore.lowerLimit";
+  public static final String MEMSTORE_FLUSH_SIZE_KEY = "hbase.hregion.memstore.flush.size";
+
+  /** HBase won't start a region server whose block cache and memstores can have more than this much of the heap */
+  private static final float MAX_CACHE_AND_MEMSTORE_FRACTION = 0.8f;
+  private static final double MB = 1024 * 1024;
+  private static final double GB = MB * 1024;
+  /** How many of the biggest memstore users to list */
+  private static final int TOP_TABLES = 5;
+
+  private final Configuration config;
+  private final int regionServers;
+  private final long heapBytes;
+  private final float blockCacheFraction;
+  private final float memstoreUpperLimit;
+  private final float memstoreLowerLimit;
+  private final float inMemoryFraction;
+
+  /**
+   * Is there a cluster profile in the configuration?
+   */
+  public static boolean isConfigured(Configuration config) {
+    return config.get(REGION_SERVERS_KEY) != null;
+  }
+
+  public HBaseCapacityModel(Configuration config) {
+    this.config = config;
+    this.regionServers = config.getInt(REGION_SERVERS_KEY, 0);
+    this.heapBytes = config.getLong(HEAP_MB_KEY, 0) * (long)MB;
+    this.blockCacheFraction = config.getFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, HConstants.HFILE_BLOCK_CACHE_SIZE_DEFAULT);
+    this.memstoreUpperLimit = config.getFloat(MEMSTORE_UPPER_LIMIT_KEY, 0.4f);
+    this.memstoreLowerLimit = config.getFloat(MEMSTORE_LOWER_LIMIT_KEY, 0.35f);
+    this.inMemoryFraction = config.getFloat(IN_MEMORY_FRACTION_KEY, 0.25f);
+    if (regionServers <= 0) {
+      throw new ScootException("The cluster profile needs a positive number of region servers (" + REGION_SERVERS_KEY + ")");
+    }
+    if (heapBytes <= 0) {
+      throw new ScootException("The cluster profile needs each region server's heap size (" + HEAP_MB_KEY + ")");
+    }
+    if (blockCacheFraction + memstoreUpperLimit > MAX_CACHE_AND_MEMSTORE_FRACTION) {
+      throw new ScootException("The cluster profile gives the block cache (" + blockCacheFraction + ") and memstores (" 
+          + memstoreUpperLimit + ") more than " + MAX_CACHE_AND_MEMSTORE_FRACTION + " of the heap between them; HBase won't start like that");
+    }
+  }
+
+  /**
+   * Project what the schema asks of each region server
+   * @param layout the cluster's current region layout, for the region counts of the tables it has (may be null)
+   */
+  public Projection project(HBaseSchema schema, HBaseRegionLayout layout) {
+    Projection p = new Projection();
+    List<TableLoad> loads = new ArrayList<TableLoad>();
+    for (HTableDescriptor table : schema.getTables()) {
+      long regions = getRegionCount(table, layout);
+      long flushSize = getFlushSize(table);
+      p.regions += regions;
+      loads.add(new TableLoad(table.getNameAsString(), regions, regions * flushSize));
+      p.memstoreBytes += regions * flushSize;
+      for (HColumnDescriptor family : table.getFamilies()) {
+        if (!family.isInMemory()) continue;
+        String size = family.getValue(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name);
+        if (size == null) {
+          p.unsizedInMemoryFamilies.add(table.getNameAsString() + ":" + family.getNameAsString());
+        } else {
+          try {
+            p.inMemoryBytes += Long.parseLong(size.trim()) * GB;
+          } catch (NumberFormatException e) {
+            throw new ScootException("Column family " + family.getNameAsString() + " has an invalid " 
+                + HBaseSchemaAttribute.EXPECTED_SIZE_GB.name + ": " + size, e);
+          }
+        }
+      }
+    }
+    // per server
+    p.memstoreBytes /= regionServers;
+    p.inMemoryBytes /= regionServers;
+    Collections.sort(loads, new Comparator<TableLoad>() {
+      public int compare(TableLoad a, TableLoad b) {
+        return a.memstoreBytes == b.memstoreBytes ? a.tableName.compareTo(b.tableName) : a.memstoreBytes > b.memstoreBytes ? -1 : 1;
+      }
+    });
+    p.biggestTables = loads.subList(0, Math.min(TOP_TABLES, loads.size()));
+
+    double memstoreLimit = heapBytes * (double)memstoreUpperLimit;
+    double memstoreLowMark = heapBytes * (double)memstoreLowerLimit;
+    double inMemoryCache = heapBytes * (double)blockCacheFraction * inMemoryFraction;
+    if (p.memstoreBytes > memstoreLimit) {
+      p.findings.add(capacityFinding(Severity.ERROR, "memstore", HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE, 
+          "Memstores could hold " + mb(p.memstoreBytes) + " MB per server, over the global limit of " + mb(memstoreLimit) 
+          + " MB; updates would be blocked while regions are flushed early"));
+    } else if (p.memstoreBytes > memstoreLowMark) {
+      p.findings.add(capacityFinding(Severity.WARNING, "memstore", HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE, 
+          "Memstores could hold " + mb(p.memstoreBytes) + " MB per server, over the " + mb(memstoreLowMark) 
+          + " MB at which flushes are forced; regions would be flushed before they fill, into small files"));
+    }
+    if (p.inMemoryBytes > inMemoryCache) {
+      p.findings.add(capacityFinding(Severity.ERROR, "in-memory-cache", HBaseSchemaAttribute.IN_MEMORY, 
+          "In-memory families are expected to need " + mb(p.inMemoryBytes) + " MB per server, over the " + mb(inMemoryCache) 
+          + " MB of block cache they get; they would be evicted, and crowd out other blocks"));
+    }
+    if (!p.unsizedInMemoryFamilies.isEmpty()) {
+      p.findings.add(capacityFinding(Severity.INFO, "in-memory-cache", HBaseSchemaAttribute.IN_MEMORY, 
+          p.unsizedInMemoryFamilies.size() + " in-memory famil" + (p.unsizedInMemoryFamilies.size() == 1 ? "y doesn't" : "ies don't") 
+          + " have " + HBaseSchemaAttribute.EXPECTED_SIZE_GB.name + ", so can't be counted: " + p.unsizedInMemoryFamilies));
+    }
+    p.memstoreLimitBytes = memstoreLimit;
+    p.memstoreLowMarkBytes = memstoreLowMark;
+    p.inMemoryCacheBytes = inMemoryCache;
+    return p;
+  }
+
+  private HBaseSchemaFinding capacityFinding(Severity severity, String rule, HBaseSchemaAttribute attribute, String message) {
+    return new HBaseSchemaFinding(severity, rule, null, null, attribute, null, message);
+  }
+
+  /**
+   * How many regions the table is expected to have
+   */
+  private long getRegionCount(HTableDescriptor table, HBaseRegionLayout layout) {
+    String tableName = table.getNameAsString();
+    long regions = config.getLong(TABLE_REGIONS_KEY_PREFIX + tableName, -1);
+    if (regions > 0) return regions;
+    if (layout != null && layout.getBoundaries(tableName) != null) {
+      return layout.getBoundaries(tableName).size() + 1;
+    }
+    if (table.getValue(HBaseSchemaAttribute.NUMREGIONS.name) != null || table.getValue(HBaseSchemaAttribute.SPLITKEYS.name) != null 
+        || table.getValue(HBaseSchemaAttribute.SALTBUCKETS.name) != null) {
+      byte[][] keys = HBaseSplitKeys.getSplitKeys(table);
+      return keys == null ? 1 : keys.length + 1;
+    }
+    return config.getLong(REGIONS_PER_TABLE_KEY, 1);
+  }
+
+  /**
+   * The table's flush size, or the cluster's if it doesn't set one
+   */
+  private long getFlushSize(HTableDescriptor table) {
+    String value = table.getValue(HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE.name);
+    if (value != null) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        throw new ScootException("Table " + table.getNameAsString() + " has an invalid " 
+            + HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE.name + ": " + value, e);
+      }
+    }
+    return config.getLong(MEMSTORE_FLUSH_SIZE_KEY, HTableDescriptor.DEFAULT_MEMSTORE_FLUSH_SIZE);
+  }
+
+  private static String mb(double bytes) {
+    return String.format("%.1f", bytes / MB);
+  }
+
+  /**
+   * One table's share of the memstores, across the cluster
+   */
+  public static class TableLoad {
+    public final String tableName;
+    public final long regions;
+    public final long memstoreBytes;
+
+    TableLoad(String tableName, long regions, long memstoreBytes) {
+      this.tableName = tableName;
+      this.regions = regions;
+      this.memstoreBytes = memstoreBytes;
+    }
+  }
+
+  /**
+   * What a schema asks of each region server, and what's wrong with it
+   */
+  public class Projection {
+    long regions;
+    double memstoreBytes;
+    double memstoreLimitBytes;
+    double memstoreLowMarkBytes;
+    double inMemoryBytes;
+    double inMemoryCacheBytes;
+    List<TableLoad> biggestTables;
+    final List<String> unsizedInMemoryFamilies = new ArrayList<String>();
+    final List<HBaseSchemaFinding> findings = new ArrayList<HBaseSchemaFinding>();
+
+    /** How many regions there are in all */
+    public long getRegions() {
+      return regions;
+    }
+
+    /** How much each server's memstores can hold, if every region's fills up to its flush size */
+    public double getMemstoreBytesPerServer() {
+      return memstoreBytes;
+    }
+
+    /** How much the in-memory families (the ones with size hints) need on each server */
+    public double getInMemoryBytesPerServer() {
+      return inMemoryBytes;
+    }
+
+    /** The tables whose memstores can hold the most, most first */
+    public List<TableLoad> getBiggestTables() {
+      return biggestTables;
+    }
+
+    public List<HBaseSchemaFinding> getFindings() {
+      return findings;
+    }
+
+    /**
+     * Is anything over-committed?
+     */
+    public boolean isOverCommitted() {
+      for (HBaseSchemaFinding finding : findings) {
+        if (finding.severity == Severity.ERROR) return true;
+      }
+      return false;
+    }
+
+    public String getReport() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Capacity projection for ").append(regionServers).append(" region server(s), with ").append(mb(heapBytes))
+        .append(" MB of heap each:\n");
+      sb.append("  Regions:     ").append(regions).append(" in all, ").append(String.format("%.1f", regions / (double)regionServers))
+        .append(" per server\n");
+      sb.append("  Memstores:   ").append(mb(memstoreBytes)).append(" MB per server, if every region fills to its flush size; the limit is ")
+        .append(mb(memstoreLimitBytes)).append(" MB, and flushes are forced above ").append(mb(memstoreLowMarkBytes)).append(" MB\n");
+      sb.append("  Block cache: ").append(mb(heapBytes * (double)blockCacheFraction)).append(" MB per server, ")
+        .append(mb(inMemoryCacheBytes)).append(" MB of it for in-memory families, which are expected to need ")
+        .append(mb(inMemoryBytes)).append(" MB\n");
+      if (!biggestTables.isEmpty()) {
+        sb.append("  Biggest memstore users:");
+        for (TableLoad load : biggestTables) {
+          sb.append(' ').append(load.tableName).append(" (").append(load.regions).append(" regions, ")
+            .append(mb(load.memstoreBytes / (double)regionServers)).append(" MB per server)");
+        }
+        sb.append('\n');
+      }
+      for (HBaseSchemaFinding finding : findings) {
+        sb.append(finding).append('\n');
+      }
+      return sb.toString();
+    }
+  }
+
+}
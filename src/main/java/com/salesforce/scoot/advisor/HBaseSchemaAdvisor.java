@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.advisor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding.Severity;
+
+/**
+ * Runs a set of rules (see HBaseSchemaRule) over every table in a schema, flagging settings that are likely to 
+ * hurt performance. The built-in rules are in HBaseSchemaRules; the configuration can add more, turn some off, and 
+ * set their thresholds:
+ * 
+ *   scoot.advise.rules    - class names of extra rules to run, separated by commas
+ *   scoot.advise.disabled - names of rules not to run, separated by commas
+ *   scoot.advise.fail.on  - a severity (INFO, WARNING or ERROR); if anything is found at or above it, check fails,
+ *                           so a build can be stopped on it. By default, nothing fails.
+ * 
+ * Findings can be reported as text, or as JSON for other tools to read.
+ */
+public class HBaseSchemaAdvisor {
+
+  public static final String RULES_KEY = "scoot.advise.rules";
+  public static final String DISABLED_KEY = "scoot.advise.disabled";
+  public static final String FAIL_ON_KEY = "scoot.advise.fail.on";
+
+  private final Configuration config;
+  private final List<HBaseSchemaRule> rules = new ArrayList<HBaseSchemaRule>();
+  private final Set<String> disabled;
+
+  public HBaseSchemaAdvisor(Configuration config) {
+    this.config = config;
+    this.disabled = new HashSet<String>(Arrays.asList(config.getStrings(DISABLED_KEY, new String[0])));
+    for (HBaseSchemaRule rule : HBaseSchemaRules.getBuiltInRules()) {
+      addRule(rule);
+    }
+    for (String className : config.getStrings(RULES_KEY, new String[0])) {
+      Class<?> ruleClass;
+      try {
+        ruleClass = config.getClassByName(className.trim());
+      } catch (ClassNotFoundException e) {
+        throw new ScootException("Unknown schema rule class: " + className, e);
+      }
+      if (!HBaseSchemaRule.class.isAssignableFrom(ruleClass)) {
+        throw new ScootException(className + " isn't a schema rule (it doesn't extend " + HBaseSchemaRule.class.getName() + ")");
+      }
+      addRule((HBaseSchemaRule)ReflectionUtils.newInstance(ruleClass, config));
+    }
+  }
+
+  /**
+   * Run this rule as well (unless it's disabled), with the advisor's configuration if it doesn't have one
+   */
+  public void addRule(HBaseSchemaRule rule) {
+    if (disabled.contains(rule.getName())) return;
+    if (rule.getConf() == null) rule.setConf(config);
+    rules.add(rule);
+  }
+
+  /**
+   * The rules that are run, in the order they're run
+   */
+  public List<HBaseSchemaRule> getRules() {
+    return Collections.unmodifiableList(rules);
+  }
+
+  /**
+   * Run every rule over every table in the schema. The findings are in table name order, and then rule order.
+   */
+  public List<HBaseSchemaFinding> advise(HBaseSchema schema) {
+    List<HBaseSchemaFinding> findings = new ArrayList<HBaseSchemaFinding>();
+    for (HTableDescriptor table : new TreeMap<String, HTableDescriptor>(schema.getTablesByName()).values()) {
+      for (HBaseSchemaRule rule : rules) {
+        rule.checkTable(table, findings);
+      }
+    }
+    return findings;
+  }
+
+  /**
+   * The severity findings fail at (see scoot.advise.fail.on), or null if none do
+   */
+  public Severity getFailSeverity() {
+    String failOn = config.get(FAIL_ON_KEY);
+    if (failOn == null) return null;
+    try {
+      return Severity.valueOf(failOn.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new ScootException("Invalid " + FAIL_ON_KEY + ": " + failOn + " (expected one of " + Arrays.toString(Severity.values()) + ")");
+    }
+  }
+
+  /**
+   * Throw a ScootException if any of the findings are at or above the severity that fails
+   */
+  public void check(List<HBaseSchemaFinding> findings) {
+    Severity failOn = getFailSeverity();
+    if (failOn == null) return;
+    int failed = 0;
+    for (HBaseSchemaFinding finding : findings) {
+      if (finding.severity.compareTo(failOn) >= 0) failed++;
+    }
+    if (failed > 0) {
+      throw new ScootException("Schema advice failed: " + failed + " finding(s) at " + failOn + " or above.");
+    }
+  }
+
+  /**
+   * Count the findings of each severity, indexed by the severity's ordinal
+   */
+  public static int[] count(List<HBaseSchemaFinding> findings) {
+    int[] counts = new int[Severity.values().length];
+    for (HBaseSchemaFinding finding : findings) {
+      counts[finding.severity.ordinal()]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Describe the findings, one per line, with a count of each severity at the end
+   */
+  public static String getReport(List<HBaseSchemaFinding> findings) {
+    StringBuilder sb = new StringBuilder();
+    for (HBaseSchemaFinding finding : findings) {
+      sb.append(finding).append('\n');
+    }
+    int[] counts = count(findings);
+    sb.append(findings.size()).append(" finding(s): ").append(counts[Severity.ERROR.ordinal()]).append(" error(s), ")
+      .append(counts[Severity.WARNING.ordinal()]).append(" warning(s), ").append(counts[Severity.INFO.ordinal()]).append(" info.\n");
+    return sb.toString();
+  }
+
+  /**
+   * Write the findings as a JSON object: a "findings" array, with an object for each finding, and the "counts" of 
+   * each severity
+   */
+  public static String toJson(List<HBaseSchemaFinding> findings) {
+    StringBuilder sb = new StringBuilder("{\n  \"findings\": [");
+    for (int i = 0; i < findings.size(); i++) {
+      HBaseSchemaFinding finding = findings.get(i);
+      sb.append(i == 0 ? "\n" : ",\n").append("    {");
+      json(sb, "severity", finding.severity.name()).append(", ");
+      json(sb, "rule", finding.rule).append(", ");
+      json(sb, "table", finding.tableName).append(", ");
+      json(sb, "family", finding.familyName).append(", ");
+      json(sb, "attribute", finding.getAttributeName()).append(", ");
+      json(sb, "value", finding.value).append(", ");
+      json(sb, "message", finding.message).append("}");
+    }
+    sb.append(findings.isEmpty() ? "],\n" : "\n  ],\n").append("  \"counts\": {");
+    int[] counts = count(findings);
+    for (Severity severity : Severity.values()) {
+      sb.append(severity.ordinal() == 0 ? "" : ", ").append('"').append(severity.name()).append("\": ").append(counts[severity.ordinal()]);
+    }
+    return sb.append("}\n}\n").toString();
+  }
+
+  private static StringBuilder json(StringBuilder sb, String name, String value) {
+    sb.append('"').append(name).append("\": ");
+    if (value == null) return sb.append("null");
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int)c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"');
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.advisor;
+
+import com.salesforce.scoot.HBaseSchemaAttribute;
+
+/**
+ * Something a rule found about a table or column family: how bad it is, which attribute (and value) it's about, 
+ * and why.
+ */
+public class HBaseSchemaFinding {
+
+  /** How much a finding matters, least first */
+  public enum Severity { INFO, WARNING, ERROR }
+
+  public final Severity severity;
+  /** The name of the rule that found it */
+  public final String rule;
+  /** The table it's about, or null if it's about the cluster as a whole */
+  public final String tableName;
+  /** The column family it's about, or null if it's about the table */
+  public final String familyName;
+  /** The attribute it's about, or null if it's about the family's (or table's) name */
+  public final HBaseSchemaAttribute attribute;
+  /** The attribute's value (or its default, if it isn't set, or the name), or null if it has neither */
+  public final String value;
+  public final String message;
+
+  public HBaseSchemaFinding(Severity severity, String rule, String tableName, String familyName, 
+      HBaseSchemaAttribute attribute, String value, String message) {
+    this.severity = severity;
+    this.rule = rule;
+    this.tableName = tableName;
+    this.familyName = familyName;
+    this.attribute = attribute;
+    this.value = value;
+    this.message = message;
+  }
+
+  /**
+   * Where the finding is: the table, or the table and family (or the cluster)
+   */
+  public String getLocation() {
+    if (tableName == null) return "(cluster)";
+    return familyName == null ? tableName : tableName + ":" + familyName;
+  }
+
+  @Override
+  public String toString() {
+    return severity + " " + getLocation() + " " + getAttributeName() + (value == null ? "" : "=" + value) + " [" + rule + "] " + message;
+  }
+
+  /**
+   * The name of the attribute the finding is about, or NAME if it's about a name
+   */
+  public String getAttributeName() {
+    return attribute == null ? "NAME" : attribute.name;
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.advisor;
+
+import java.util.List;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding.Severity;
+
+/**
+ * A check the advisor runs over every table in a schema. Rules get the advisor's configuration (for their 
+ * thresholds) before they're run; to add one, extend this (with a no-arg constructor) and list the class in 
+ * scoot.advise.rules.
+ * 
+ * By default, a rule checks each column family of the table in turn; override checkTable to look at the 
+ * table as a whole.
+ */
+public abstract class HBaseSchemaRule extends Configured {
+
+  /**
+   * The name the rule's findings are reported under, and that scoot.advise.disabled lists it by
+   */
+  public abstract String getName();
+
+  /**
+   * Add whatever the rule finds about the table to the findings
+   */
+  public void checkTable(HTableDescriptor table, List<HBaseSchemaFinding> findings) {
+    for (HColumnDescriptor family : table.getFamilies()) {
+      checkFamily(table, family, findings);
+    }
+  }
+
+  /**
+   * Add whatever the rule finds about one column family of the table to the findings
+   */
+  protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+  }
+
+  /**
+   * Report a finding about a column family's attribute
+   */
+  protected HBaseSchemaFinding finding(Severity severity, HTableDescriptor table, HColumnDescriptor family, 
+      HBaseSchemaAttribute attribute, String message) {
+    return new HBaseSchemaFinding(severity, getName(), table.getNameAsString(), family == null ? null : family.getNameAsString(), 
+        attribute, family == null ? getValue(table, attribute) : getValue(family, attribute), message);
+  }
+
+  /**
+   * The family's value of the attribute, or its default if it isn't set (null if there's no default)
+   */
+  protected static String getValue(HColumnDescriptor family, HBaseSchemaAttribute attribute) {
+    String value = family.getValue(attribute.name);
+    return value == null ? attribute.defaultValue : value;
+  }
+
+  /**
+   * The table's value of the attribute, or its default if it isn't set (null if there's no default)
+   */
+  protected static String getValue(HTableDescriptor table, HBaseSchemaAttribute attribute) {
+    String value = table.getValue(attribute.name);
+    return value == null ? attribute.defaultValue : value;
+  }
+
+  /**
+   * The family's value of a numeric attribute, or null if it isn't set and has no default
+   */
+  protected static Long getLong(HColumnDescriptor family, HBaseSchemaAttribute attribute) {
+    String value = getValue(family, attribute);
+    if (value == null) return null;
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new ScootException("Column family " + family.getNameAsString() + " has an invalid " + attribute.name + ": " + value, e);
+    }
+  }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.advisor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding.Severity;
+
+/**
+ * The advisor's built-in rules. Several of them depend on what a column family holds and how it's read, which
+ * the schema can only say with the ACCESS_PATTERN and EXPECTED_SIZE_GB hints (XML accessPattern and 
+ * expectedSizeGB), which are only kept in the parsed schema, never on the cluster; the rules have nothing to say 
+ * about families without them.
+ * 
+ * ACCESS_PATTERN is one of:
+ *   RANDOM - mostly gets, or short scans, of rows all over the table
+ *   SCAN   - mostly long scans
+ *   MIXED  - both
+ */
+public class HBaseSchemaRules {
+
+  public static final String LARGE_FAMILY_GB_KEY = "scoot.advise.large.family.gb";
+  public static final String IN_MEMORY_MAX_GB_KEY = "scoot.advise.in.memory.max.gb";
+  public static final String RANDOM_READ_MAX_BLOCKSIZE_KEY = "scoot.advise.random.read.max.blocksize";
+  public static final String SCAN_MIN_BLOCKSIZE_KEY = "scoot.advise.scan.min.blocksize";
+  public static final String MAX_VERSIONS_KEY = "scoot.advise.max.versions";
+  public static final String MAX_FAMILY_NAME_LENGTH_KEY = "scoot.advise.max.family.name.length";
+
+  static final String RANDOM = "RANDOM";
+  static final String SCAN = "SCAN";
+  static final String MIXED = "MIXED";
+
+  private HBaseSchemaRules() {
+  }
+
+  /**
+   * Every built-in rule
+   */
+  public static List<HBaseSchemaRule> getBuiltInRules() {
+    return Arrays.<HBaseSchemaRule>asList(new Compression(), new BloomFilter(), new BlockSize(), new InMemory(), 
+        new Versions(), new FamilyNameLength());
+  }
+
+  /**
+   * The family's access pattern hint, in upper case, or null if it doesn't have one
+   */
+  static String getAccessPattern(HColumnDescriptor family) {
+    String pattern = family.getValue(HBaseSchemaAttribute.ACCESS_PATTERN.name);
+    if (pattern == null) return null;
+    pattern = pattern.trim().toUpperCase();
+    if (!pattern.equals(RANDOM) && !pattern.equals(SCAN) && !pattern.equals(MIXED)) {
+      throw new ScootException("Column family " + family.getNameAsString() + " has an unknown " 
+          + HBaseSchemaAttribute.ACCESS_PATTERN.name + ": " + pattern + " (expected " + RANDOM + ", " + SCAN + " or " + MIXED + ")");
+    }
+    return pattern;
+  }
+
+  /**
+   * Large families should be compressed: it saves disk and I/O, and more of them fits in the block cache
+   */
+  public static class Compression extends HBaseSchemaRule {
+    public String getName() {
+      return "compression";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      Long size = getLong(family, HBaseSchemaAttribute.EXPECTED_SIZE_GB);
+      long large = getConf().getLong(LARGE_FAMILY_GB_KEY, 10);
+      if (size != null && size >= large && "NONE".equalsIgnoreCase(getValue(family, HBaseSchemaAttribute.COMPRESSION))) {
+        findings.add(finding(Severity.WARNING, table, family, HBaseSchemaAttribute.COMPRESSION, 
+            "Family is expected to hold " + size + " GB uncompressed; compressing it (e.g. SNAPPY) saves disk, I/O and block cache"));
+      }
+    }
+  }
+
+  /**
+   * Families that are read randomly should have bloom filters, so gets can skip the store files that don't have the row
+   */
+  public static class BloomFilter extends HBaseSchemaRule {
+    public String getName() {
+      return "bloomfilter";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      String pattern = getAccessPattern(family);
+      if ((RANDOM.equals(pattern) || MIXED.equals(pattern)) && "NONE".equalsIgnoreCase(getValue(family, HBaseSchemaAttribute.BLOOMFILTER))) {
+        findings.add(finding(RANDOM.equals(pattern) ? Severity.WARNING : Severity.INFO, table, family, HBaseSchemaAttribute.BLOOMFILTER, 
+            "Family takes random reads, but has no bloom filter; ROW (or ROWCOL) lets reads skip store files without the row"));
+      }
+    }
+  }
+
+  /**
+   * Random reads want small blocks (less is read for each one), and scans want big ones (fewer blocks, smaller index)
+   */
+  public static class BlockSize extends HBaseSchemaRule {
+    public String getName() {
+      return "blocksize";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      String pattern = getAccessPattern(family);
+      Long blockSize = getLong(family, HBaseSchemaAttribute.BLOCKSIZE);
+      long randomMax = getConf().getLong(RANDOM_READ_MAX_BLOCKSIZE_KEY, HColumnDescriptor.DEFAULT_BLOCKSIZE);
+      long scanMin = getConf().getLong(SCAN_MIN_BLOCKSIZE_KEY, HColumnDescriptor.DEFAULT_BLOCKSIZE);
+      if (RANDOM.equals(pattern) && blockSize > randomMax) {
+        findings.add(finding(Severity.WARNING, table, family, HBaseSchemaAttribute.BLOCKSIZE, 
+            "Family takes random reads, which read a whole block for each row; blocks over " + randomMax + " bytes waste I/O and block cache"));
+      } else if (SCAN.equals(pattern) && blockSize < scanMin) {
+        findings.add(finding(Severity.INFO, table, family, HBaseSchemaAttribute.BLOCKSIZE, 
+            "Family is mostly scanned; blocks under " + scanMin + " bytes mean more blocks to read and a bigger block index"));
+      }
+    }
+  }
+
+  /**
+   * In-memory families get priority in the block cache, which a big one can take over
+   */
+  public static class InMemory extends HBaseSchemaRule {
+    public String getName() {
+      return "in-memory";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      if (!"true".equalsIgnoreCase(getValue(family, HBaseSchemaAttribute.IN_MEMORY))) return;
+      Long size = getLong(family, HBaseSchemaAttribute.EXPECTED_SIZE_GB);
+      long max = getConf().getLong(IN_MEMORY_MAX_GB_KEY, 1);
+      if (size != null && size > max) {
+        findings.add(finding(Severity.ERROR, table, family, HBaseSchemaAttribute.IN_MEMORY, 
+            "Family is expected to hold " + size + " GB, too much to keep in memory (over " + max 
+            + " GB); it would push everything else out of the in-memory part of the block cache"));
+      }
+      if (!"true".equalsIgnoreCase(getValue(family, HBaseSchemaAttribute.BLOCKCACHE))) {
+        findings.add(finding(Severity.INFO, table, family, HBaseSchemaAttribute.IN_MEMORY, 
+            "Family is in-memory, but isn't block cached, so it makes no difference"));
+      }
+    }
+  }
+
+  /**
+   * Every version kept is stored, and read past by gets and scans
+   */
+  public static class Versions extends HBaseSchemaRule {
+    public String getName() {
+      return "versions";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      Long versions = getLong(family, HBaseSchemaAttribute.VERSIONS);
+      long max = getConf().getLong(MAX_VERSIONS_KEY, 10);
+      if (versions > max) {
+        findings.add(finding(Severity.WARNING, table, family, HBaseSchemaAttribute.VERSIONS, 
+            "Family keeps up to " + versions + " versions of each cell (more than " + max 
+            + "), which all take space and are read past; keep only as many as are read, or use a TTL"));
+      }
+    }
+  }
+
+  /**
+   * The family name is stored in every KeyValue, so a long one takes space in every cell on disk and in memory
+   */
+  public static class FamilyNameLength extends HBaseSchemaRule {
+    public String getName() {
+      return "family-name";
+    }
+
+    @Override
+    protected void checkFamily(HTableDescriptor table, HColumnDescriptor family, List<HBaseSchemaFinding> findings) {
+      int max = getConf().getInt(MAX_FAMILY_NAME_LENGTH_KEY, 4);
+      if (family.getName().length > max) {
+        findings.add(new HBaseSchemaFinding(Severity.INFO, getName(), table.getNameAsString(), family.getNameAsString(), 
+            null, family.getNameAsString(), 
+            "Family name is " + family.getName().length + " bytes, and is stored in every cell; names of " + max + " bytes or less are cheaper"));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.executor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.HBaseRegionLayoutDiff;
+import com.salesforce.scoot.HBaseRegionLayoutDiff.TableLayoutChange;
+import com.salesforce.scoot.HBaseRolloutThrottle;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Splits regions on a cluster, through HBaseAdmin, to add the boundaries a region layout diff says it's missing
+ * (see HBaseRegionLayoutDiff); the extra boundaries it reports are left alone. This does what the script 
+ * HBaseRubyRegionSplitScripter writes would do.
+ * 
+ * The splits are done one at a time, in table and key order, each throttled as the configuration says (see 
+ * HBaseRolloutThrottle). A split isn't done until a region starts at its key: HBase splits in the background,
+ * and won't split a region that still has references to its parent's files, so the split is asked for again 
+ * every scoot.throttle.poll.ms until it happens, or scoot.split.timeout.ms (default 5 minutes) goes by. A split
+ * that times out is an error, but the rest are still done.
+ */
+public class HBaseRegionSplitExecutor {
+
+  public static final String TIMEOUT_KEY = "scoot.split.timeout.ms";
+  public static final long DEFAULT_TIMEOUT_MS = 300000;
+
+  private final HBaseRegionLayoutDiff diff;
+  private final Configuration config;
+  private final HBaseRolloutThrottle throttle;
+  private final long timeoutMs;
+  private PrintStream out = System.out;
+
+  /**
+   * Split the regions of the cluster the configuration points to
+   */
+  public HBaseRegionSplitExecutor(HBaseRegionLayoutDiff diff, Configuration config) {
+    this.diff = diff;
+    this.config = config;
+    this.throttle = new HBaseRolloutThrottle(config);
+    this.timeoutMs = config.getLong(TIMEOUT_KEY, DEFAULT_TIMEOUT_MS);
+  }
+
+  /**
+   * How the splits are throttled, and how long they've spent throttled so far
+   */
+  public HBaseRolloutThrottle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Where to report progress and timings (standard out, by default)
+   */
+  public void setOutput(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Do the splits; throws a ScootException describing any that failed
+   */
+  public void apply() {
+    if (diff.getMissingCount() == 0) {
+      out.println("No regions to split.");
+      return;
+    }
+    long start = System.currentTimeMillis();
+    List<String> errors = new ArrayList<String>();
+    int attempts = 0;
+    int splits = 0;
+    try {
+      HBaseAdmin admin = new HBaseAdmin(config);
+      try {
+        for (TableLayoutChange change : diff.getTableChanges()) {
+          for (byte[] key : change.missing) {
+            if (attempts++ > 0) throttle.pause();
+            throttle.awaitRegionsInTransition(admin);
+            long splitStart = System.currentTimeMillis();
+            String error = split(admin, change.tableName, key);
+            long elapsed = System.currentTimeMillis() - splitStart;
+            if (error == null) {
+              splits++;
+              out.println("Split table '" + change.tableName + "' at " + Bytes.toStringBinary(key) + " in " + elapsed + " ms");
+            } else {
+              out.println("Split table '" + change.tableName + "' at " + Bytes.toStringBinary(key) + " FAILED after " + elapsed + " ms");
+              errors.add(error);
+            }
+          }
+        }
+      } finally {
+        admin.close();
+      }
+    } catch (IOException e) {
+      throw new ScootException("Error splitting regions: " + e.getMessage(), e);
+    }
+    if (throttle.isThrottling()) out.println(throttle.getReport());
+    out.println("Made " + splits + " split(s)" + (errors.isEmpty() ? "" : ", and " + errors.size() + " failed,") 
+        + " in " + (System.currentTimeMillis() - start) + " ms.");
+    if (!errors.isEmpty()) {
+      StringBuilder message = new StringBuilder("There were " + errors.size() + " error(s) splitting regions:");
+      for (String error : errors) {
+        message.append("\n  ").append(error);
+      }
+      throw new ScootException(message.toString());
+    }
+  }
+
+  /**
+   * Split the table at the key, and wait for a region to start there
+   * @return what went wrong, or null if it worked
+   */
+  private String split(HBaseAdmin admin, String tableName, byte[] key) throws IOException {
+    byte[] table = Bytes.toBytes(tableName);
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    String lastFailure = null;
+    while (!isRegionStart(admin, table, key)) {
+      if (System.currentTimeMillis() > deadline) {
+        return "Table '" + tableName + "' was not split at " + Bytes.toStringBinary(key) + " within " + timeoutMs + " ms" 
+            + (lastFailure == null ? "." : "; the last request failed with: " + lastFailure);
+      }
+      try {
+        admin.split(table, key);
+        lastFailure = null;
+      } catch (IOException e) {
+        // most likely the region is still busy with its last split; ask again
+        lastFailure = e.getMessage();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while splitting table " + tableName);
+      }
+      sleep(throttle.getPollMs());
+    }
+    return null;
+  }
+
+  private static boolean isRegionStart(HBaseAdmin admin, byte[] table, byte[] key) throws IOException {
+    for (HRegionInfo region : admin.getTableRegions(table)) {
+      if (Bytes.equals(region.getStartKey(), key)) return true;
+    }
+    return false;
+  }
+
+  private static void sleep(long ms) throws IOException {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a split.");
+    }
+  }
+
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.executor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.salesforce.scoot.HBaseRolloutThrottle;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.HBaseSchemaChangeCost;
+import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.HBaseSchemaDiff.PropertyChange;
+import com.salesforce.scoot.HBaseSchemaValues;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+import com.salesforce.scoot.split.HBaseSplitKeys;
+
+/**
+ * Applies the changes in a schema diff to a cluster directly, through HBaseAdmin, rather than scripting them
+ * for the hbase shell. It does what the script HBaseRubySchemaPatchScripter writes would do, in the same three
+ * steps:
+ * 
+ *   pre-validation  - every table to be created must be absent, and every table to be altered or dropped must 
+ *                     be present; altered tables must match the diff's "from" definition (dropped tables only 
+ *                     warn if they don't). If there are any errors, nothing is changed.
+ *   modification    - the tables are created, altered (the same way the script would alter them, including online
+ *                     if hbase.online.schema.update.enable is set) and dropped. After the first failure, no more 
+ *                     are started; the ones under way are finished.
+ *   post-validation - every created or altered table must match its "to" definition, and dropped tables must be gone.
+ * 
+ * Each step works on several tables at once, each thread with its own HBaseAdmin; scoot.apply.threads in the
+ * configuration sets how many (default 8). Each modification's time is reported as it finishes. Modifications 
+ * are also throttled as the configuration says (see HBaseRolloutThrottle), and the time spent throttled is reported.
+ */
+public class HBaseSchemaPatchExecutor {
+
+  public static final String THREADS_KEY = "scoot.apply.threads";
+
+  /** How long to wait between checks on the regions still to be reopened by an online change */
+  private static final long REOPEN_POLL_MS = 1000;
+
+  private final List<HBaseSchemaChange> changes = new ArrayList<HBaseSchemaChange>();
+  private final Configuration config;
+  private final boolean onlineSchemaUpdates;
+  private int threads;
+  private final HBaseRolloutThrottle throttle;
+  private PrintStream out = System.out;
+  private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+  /**
+   * Apply the changes in the given diff to the cluster the configuration points to
+   */
+  public HBaseSchemaPatchExecutor(HBaseSchemaDiff diff, Configuration config) {
+    for (HBaseSchemaChange c : diff.getTableChanges()) {
+      if (c.type != ChangeType.IGNORE) changes.add(c);
+    }
+    this.config = config;
+    this.onlineSchemaUpdates = config.getBoolean(HBaseRubySchemaPatchScripter.ONLINE_SCHEMA_UPDATE_KEY, false);
+    this.threads = Math.max(1, config.getInt(THREADS_KEY, 8));
+    this.throttle = new HBaseRolloutThrottle(config);
+  }
+
+  /**
+   * How many tables to work on at once (overriding scoot.apply.threads)
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * How the modifications are throttled, and how long they've spent throttled so far
+   */
+  public HBaseRolloutThrottle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Where to report progress and timings (standard out, by default)
+   */
+  public void setOutput(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * How long each table's modification took, in milliseconds, by table name (in the order of the diff). Only
+   * the modifications that finished, successfully or not, are here.
+   */
+  public Map<String, Long> getTimings() {
+    return timings;
+  }
+
+  /**
+   * Validate, modify and validate again; throws a ScootException describing any errors
+   */
+  public void apply() {
+    if (changes.isEmpty()) {
+      out.println("No changes to apply.");
+      return;
+    }
+    long start = System.currentTimeMillis();
+
+    StepResult pre = run(preValidation, false);
+    for (String warning : pre.getMessages(true)) {
+      out.println("Warning: " + warning);
+    }
+    pre.throwIfFailed("pre-validation");
+    out.println("Pre-validations successful" + (pre.warningCount > 0 ? " with " + pre.warningCount + " warning(s)." : "."));
+
+    StepResult modified = run(modification, true);
+    if (throttle.isThrottling()) out.println(throttle.getReport());
+    modified.throwIfFailed("modification");
+    out.println("Table creations & modifications successful.");
+
+    run(postValidation, false).throwIfFailed("post-validation");
+    out.println("Post-validation successful.");
+
+    long longest = -1;
+    String longestTable = null;
+    for (Entry<String, Long> timing : timings.entrySet()) {
+      if (timing.getValue() > longest) {
+        longest = timing.getValue();
+        longestTable = timing.getKey();
+      }
+    }
+    out.println("Applied " + changes.size() + " change(s) in " + (System.currentTimeMillis() - start) 
+        + " ms, " + threads + " at a time; the longest was table '" + longestTable + "', at " + longest + " ms.");
+  }
+
+  /**
+   * One step of applying the changes, done to a single table. Errors and warnings are added to the lists; 
+   * anything thrown is an error too.
+   */
+  private interface Step {
+    void run(HBaseAdmin admin, HBaseSchemaChange c, List<String> errors, List<String> warnings) throws IOException;
+  }
+
+  /**
+   * What came of running a step on every table; messages are kept per table, so they're in the diff's order
+   */
+  private class StepResult {
+    final List<List<String>> errors = new ArrayList<List<String>>();
+    final List<List<String>> warnings = new ArrayList<List<String>>();
+    int errorCount = 0;
+    int warningCount = 0;
+    int notStarted = 0;
+
+    List<String> getMessages(boolean warning) {
+      List<String> messages = new ArrayList<String>();
+      for (List<String> m : warning ? warnings : errors) {
+        messages.addAll(m);
+      }
+      return messages;
+    }
+
+    void throwIfFailed(String stepName) {
+      if (errorCount == 0) return;
+      StringBuilder message = new StringBuilder("There were " + errorCount + " error(s) during " + stepName + ":");
+      for (String error : getMessages(false)) {
+        message.append("\n  Error: ").append(error);
+      }
+      if (notStarted > 0) {
+        message.append("\n  " + notStarted + " table(s) were not changed, because of the error(s).");
+      }
+      throw new ScootException(message.toString());
+    }
+  }
+
+  /**
+   * Run a step on every table, on up to "threads" threads, each pulling the next table to do until there are 
+   * none left. Modifications stop once there's been an error, are throttled, and are timed.
+   */
+  private StepResult run(final Step step, final boolean modifying) {
+    final int count = changes.size();
+    final StepResult result = new StepResult();
+    final long[] elapsed = new long[count];
+    for (int x = 0; x < count; x++) {
+      result.errors.add(new ArrayList<String>());
+      result.warnings.add(new ArrayList<String>());
+      elapsed[x] = -1;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicBoolean failed = new AtomicBoolean();
+    int workers = Math.min(threads, count);
+    ExecutorService executor = Executors.newFixedThreadPool(workers, 
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("scoot-apply-%d").build());
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int w = 0; w < workers; w++) {
+        futures.add(executor.submit(new Runnable() {
+          public void run() {
+            HBaseAdmin admin;
+            try {
+              admin = new HBaseAdmin(config);
+            } catch (IOException e) {
+              throw new ScootException("Unable to connect to the cluster: " + e.getMessage(), e);
+            }
+            try {
+              boolean first = true;
+              for (int x = next.getAndIncrement(); x < count && !(modifying && failed.get()); x = next.getAndIncrement()) {
+                HBaseSchemaChange c = changes.get(x);
+                long start = System.currentTimeMillis();
+                try {
+                  if (modifying) {
+                    if (!first) throttle.pause();
+                    throttle.awaitRegionsInTransition(admin);
+                    start = System.currentTimeMillis();
+                  }
+                  step.run(admin, c, result.errors.get(x), result.warnings.get(x));
+                } catch (Exception e) {
+                  result.errors.get(x).add("Table '" + c.tableName + "': " + e);
+                }
+                first = false;
+                elapsed[x] = System.currentTimeMillis() - start;
+                if (!result.errors.get(x).isEmpty()) failed.set(true);
+                if (modifying) {
+                  out.println(describe(c) + " table '" + c.tableName + "' " + (result.errors.get(x).isEmpty() ? "in " : "FAILED after ") + elapsed[x] + " ms");
+                }
+              }
+            } finally {
+              try {
+                admin.close();
+              } catch (IOException e) {
+                // it's done with anyway
+              }
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScootException("Interrupted while applying schema changes.");
+    } catch (ExecutionException e) {
+      throw (RuntimeException)e.getCause(); // the workers only throw unchecked exceptions
+    } finally {
+      executor.shutdownNow();
+    }
+    for (int x = 0; x < count; x++) {
+      result.errorCount += result.errors.get(x).size();
+      result.warningCount += result.warnings.get(x).size();
+      if (elapsed[x] < 0) {
+        result.notStarted++;
+      } else if (modifying) {
+        timings.put(changes.get(x).tableName, elapsed[x]);
+      }
+    }
+    return result;
+  }
+
+  private static String describe(HBaseSchemaChange c) {
+    switch (c.type) {
+      case CREATE: return "Created";
+      case DROP: return "Dropped";
+      default: return "Modified";
+    }
+  }
+
+  private final Step preValidation = new Step() {
+    public void run(HBaseAdmin admin, HBaseSchemaChange c, List<String> errors, List<String> warnings) throws IOException {
+      boolean exists = admin.tableExists(c.tableName);
+      switch (c.type) {
+        case CREATE:
+          if (exists) errors.add("Table '" + c.tableName + "' should not already exist, but it does.");
+          break;
+        case ALTER:
+          if (!exists) errors.add("Table '" + c.tableName + "' should exist, but it does not.");
+          else compare(errors, c.oldTable, admin.getTableDescriptor(Bytes.toBytes(c.tableName)), "alter"); // alters will error out if something doesn't match
+          break;
+        case DROP:
+          if (!exists) errors.add("Table '" + c.tableName + "' should exist, but it does not.");
+          else compare(warnings, c.oldTable, admin.getTableDescriptor(Bytes.toBytes(c.tableName)), "drop"); // drops will only warn if something doesn't match
+          break;
+      }
+    }
+  };
+
+  private final Step modification = new Step() {
+    public void run(HBaseAdmin admin, HBaseSchemaChange c, List<String> errors, List<String> warnings) throws IOException {
+      switch (c.type) {
+        case CREATE:
+          create(admin, c.newTable);
+          break;
+        case ALTER:
+          alter(admin, c, onlineSchemaUpdates && c.getCost() != HBaseSchemaChangeCost.DISABLE_REQUIRED);
+          break;
+        case DROP:
+          if (admin.tableExists(c.tableName)) {
+            if (admin.isTableEnabled(c.tableName)) admin.disableTable(c.tableName);
+            admin.deleteTable(c.tableName);
+          }
+          break;
+      }
+    }
+  };
+
+  private final Step postValidation = new Step() {
+    public void run(HBaseAdmin admin, HBaseSchemaChange c, List<String> errors, List<String> warnings) throws IOException {
+      boolean exists = admin.tableExists(c.tableName);
+      switch (c.type) {
+        case CREATE:
+        case ALTER:
+          if (!exists) errors.add("Table '" + c.tableName + "' should exist, but it does not.");
+          else compare(errors, c.newTable, admin.getTableDescriptor(Bytes.toBytes(c.tableName)), c.type == ChangeType.CREATE ? "create" : "alter");
+          break;
+        case DROP:
+          if (exists) errors.add("Table '" + c.tableName + "' should not exist, but it does.");
+          break;
+      }
+    }
+  };
+
+  /**
+   * Check that every value of the expected table, and of each of its column families, is the same on the cluster
+   * (apart from those that aren't stored there)
+   */
+  private static void compare(List<String> messages, HTableDescriptor table, HTableDescriptor actual, String operationName) {
+    HTableDescriptor expected = HBaseSchemaValues.forCluster(table);
+    compare(messages, expected.getNameAsString(), HTableDescriptor.class, expected.getValues(), actual.getValues(), operationName);
+    for (HColumnDescriptor family : expected.getColumnFamilies()) {
+      HColumnDescriptor actualFamily = actual.getFamily(family.getName());
+      if (actualFamily == null) {
+        messages.add("Table '" + expected.getNameAsString() + "', which is targeted for " + operationName + ", should have had column family '" + family.getNameAsString() + "', but it did not.");
+      } else {
+        compare(messages, family.getNameAsString(), HColumnDescriptor.class, family.getValues(), actualFamily.getValues(), operationName);
+      }
+    }
+  }
+
+  /**
+   * Compare values the way the diff does (see HBaseSchemaAttribute.isEquivalent), so a difference it left out of an 
+   * alter as equivalent doesn't fail validation afterwards
+   */
+  private static void compare(List<String> messages, String objectName, Class<?> objectType, Map<ImmutableBytesWritable, ImmutableBytesWritable> expected, 
+      Map<ImmutableBytesWritable, ImmutableBytesWritable> actual, String operationName) {
+    Map<String, String> actualValues = new LinkedHashMap<String, String>();
+    for (Entry<String, String> value : HBaseSchemaValues.toSortedStrings(actual)) {
+      actualValues.put(value.getKey(), value.getValue());
+    }
+    for (Entry<String, String> value : HBaseSchemaValues.toSortedStrings(expected)) {
+      String actualValue = actualValues.get(value.getKey());
+      if (!HBaseSchemaAttribute.isEquivalent(value.getKey(), objectType, value.getValue(), actualValue)) {
+        messages.add("Object '" + objectName + "', which is targeted for " + operationName + ", should have had a value of \"" 
+            + value.getValue() + "\" for " + value.getKey() + ", but it was \"" + (actualValue == null ? "" : actualValue) + "\" instead.");
+      }
+    }
+  }
+
+  private static void create(HBaseAdmin admin, HTableDescriptor newTable) throws IOException {
+    byte[][] splitKeys = HBaseSplitKeys.getSplitKeys(newTable);
+    if (splitKeys != null) {
+      admin.createTable(HBaseSchemaValues.forCluster(newTable), splitKeys);
+    } else {
+      admin.createTable(HBaseSchemaValues.forCluster(newTable));
+    }
+  }
+
+  /**
+   * Alter a table the way the script would: see HBaseRubySchemaPatchScripter.scriptTableAlter. A column family that
+   * was already there is modified from its definition on the cluster, changing only the values that really changed,
+   * so the ones the diff suppressed as equivalent are left the way they're written there.
+   */
+  private static void alter(HBaseAdmin admin, HBaseSchemaChange c, boolean online) throws IOException {
+    byte[] tableName = Bytes.toBytes(c.tableName);
+    List<PropertyChange> tableValueChanges = c.getTableValueChanges();
+    int operations = c.getChangedFamilies().size() + (tableValueChanges.isEmpty() ? 0 : 1);
+    HTableDescriptor newTable = HBaseSchemaValues.forCluster(c.newTable);
+    if (!online) {
+      admin.disableTable(tableName);
+    }
+    if (online && operations > 1) {
+      HTableDescriptor table = admin.getTableDescriptor(tableName);
+      setTableValues(table, tableValueChanges);
+      for (String family : c.getChangedFamilies()) {
+        HColumnDescriptor newFamily = newTable.getFamily(Bytes.toBytes(family));
+        if (newFamily == null) {
+          table.removeFamily(Bytes.toBytes(family));
+        } else if (!c.oldTable.hasFamily(newFamily.getName())) {
+          table.addFamily(new HColumnDescriptor(newFamily));
+        } else {
+          setFamilyValues(table.getFamily(newFamily.getName()), c.getFamilyValueChanges(family));
+        }
+      }
+      admin.modifyTable(tableName, table);
+      waitForReopen(admin, tableName);
+    } else {
+      HTableDescriptor current = admin.getTableDescriptor(tableName);
+      for (String family : c.getChangedFamilies()) {
+        HColumnDescriptor newFamily = newTable.getFamily(Bytes.toBytes(family));
+        if (newFamily == null) {
+          admin.deleteColumn(c.tableName, family);
+        } else if (!c.oldTable.hasFamily(newFamily.getName())) {
+          admin.addColumn(c.tableName, new HColumnDescriptor(newFamily));
+        } else {
+          HColumnDescriptor modified = new HColumnDescriptor(current.getFamily(newFamily.getName()));
+          setFamilyValues(modified, c.getFamilyValueChanges(family));
+          admin.modifyColumn(c.tableName, modified);
+        }
+        if (online) waitForReopen(admin, tableName);
+      }
+      // after the families, so the descriptor this modifies has them in it
+      if (!tableValueChanges.isEmpty()) {
+        HTableDescriptor table = admin.getTableDescriptor(tableName);
+        setTableValues(table, tableValueChanges);
+        admin.modifyTable(tableName, table);
+        if (online) waitForReopen(admin, tableName);
+      }
+    }
+    if (!online) {
+      admin.enableTable(tableName);
+    }
+  }
+
+  private static void setTableValues(HTableDescriptor table, List<PropertyChange> tableValueChanges) {
+    for (PropertyChange p : tableValueChanges) {
+      if (p.newValue == null) {
+        table.remove(Bytes.toBytes(p.key));
+      } else {
+        table.setValue(p.key, p.newValue);
+      }
+    }
+  }
+
+  private static void setFamilyValues(HColumnDescriptor family, List<PropertyChange> familyValueChanges) {
+    for (PropertyChange p : familyValueChanges) {
+      if (p.newValue == null) {
+        family.remove(Bytes.toBytes(p.key));
+      } else {
+        family.setValue(p.key, p.newValue);
+      }
+    }
+  }
+
+  /**
+   * Online changes return before the regions have all been reopened; wait until they have
+   */
+  private static void waitForReopen(HBaseAdmin admin, byte[] tableName) throws IOException {
+    for (Pair<Integer, Integer> status = admin.getAlterStatus(tableName); status.getFirst() > 0; status = admin.getAlterStatus(tableName)) {
+      try {
+        Thread.sleep(REOPEN_POLL_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the regions of " + Bytes.toString(tableName) + " to be reopened.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * Writes an XML element (and everything under it) as a single compact string: no declaration, no 
+ * indentation, and no whitespace-only text between tags. This is the format scoot stores as a table's
+ * full schema, so the output is kept byte-for-byte the same as what the JDK's identity Transformer 
+ * produces for the element, after stripping whitespace between tags; that means attributes are written
+ * in sorted order (namespace declarations first) and characters are escaped the same way it does.
+ * 
+ * It can be driven either from a DOM node (see serialize) or directly from parse events, by calling
+ * the startElement / text / ... / endElement methods in document order and then calling toString.
+ * Instances aren't thread safe.
+ */
+public class CompactXMLSerializer {
+
+  /** The same whitespace-between-tags pattern scoot has always applied to the serialized output. */
+  private static final Pattern WHITESPACE_BETWEEN_TAGS = Pattern.compile(">[\\t\\s\\n\\r]+<");
+
+  private final StringBuilder out = new StringBuilder();
+  private final StringBuilder pendingText = new StringBuilder();
+  private boolean startTagOpen = false;
+
+  /**
+   * Serialize a DOM element in one pass
+   */
+  public static String serialize(Node element) {
+    CompactXMLSerializer serializer = new CompactXMLSerializer();
+    serializer.write(element);
+    return serializer.toString();
+  }
+
+  private void write(Node node) {
+    switch (node.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        NamedNodeMap attributes = node.getAttributes();
+        String[][] a = new String[attributes.getLength()][];
+        for (int x = 0; x < a.length; x++) {
+          a[x] = new String[] { attributes.item(x).getNodeName(), attributes.item(x).getNodeValue() };
+        }
+        startElement(node.getNodeName(), a);
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+          write(child);
+        }
+        endElement(node.getNodeName());
+        break;
+      case Node.TEXT_NODE:
+        text(node.getNodeValue());
+        break;
+      case Node.CDATA_SECTION_NODE:
+        cdata(node.getNodeValue());
+        break;
+      case Node.COMMENT_NODE:
+        comment(node.getNodeValue());
+        break;
+      case Node.PROCESSING_INSTRUCTION_NODE:
+        processingInstruction(((ProcessingInstruction)node).getTarget(), ((ProcessingInstruction)node).getData());
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Start an element; attributes are given as {name, value} pairs, in any order
+   */
+  public void startElement(String name, String[][] attributes) {
+    beforeContent();
+    out.append('<').append(name);
+    String[][] sorted = attributes.clone();
+    Arrays.sort(sorted, ATTRIBUTE_ORDER);
+    for (String[] attribute : sorted) {
+      out.append(' ').append(attribute[0]).append("=\"");
+      escapeAttribute(attribute[1]);
+      out.append('"');
+    }
+    startTagOpen = true;
+  }
+
+  public void endElement(String name) {
+    flushText();
+    if (startTagOpen) {
+      out.append("/>");
+      startTagOpen = false;
+    } else {
+      out.append("</").append(name).append('>');
+    }
+  }
+
+  /**
+   * Character data; adjacent calls are treated as a single text node
+   */
+  public void text(String text) {
+    pendingText.append(text);
+  }
+
+  public void cdata(String text) {
+    beforeContent();
+    out.append("<![CDATA[").append(collapse(text)).append("]]>");
+  }
+
+  public void comment(String text) {
+    beforeContent();
+    out.append("<!--").append(collapse(text)).append("-->");
+  }
+
+  public void processingInstruction(String target, String data) {
+    beforeContent();
+    out.append("<?").append(target);
+    if (data != null && data.length() > 0) {
+      out.append(' ').append(collapse(data));
+    }
+    out.append("?>");
+  }
+
+  @Override
+  public String toString() {
+    flushText();
+    return out.toString();
+  }
+
+  private void beforeContent() {
+    flushText();
+    closeStartTag();
+  }
+
+  private void closeStartTag() {
+    if (startTagOpen) {
+      out.append('>');
+      startTagOpen = false;
+    }
+  }
+
+  /**
+   * Write out buffered character data. Any text node always sits between two tags, so a text node
+   * that's nothing but (unescaped) whitespace is exactly what the whitespace-between-tags rule removes.
+   */
+  private void flushText() {
+    if (pendingText.length() == 0) return;
+    closeStartTag();
+    if (!isCollapsibleWhitespace(pendingText)) {
+      escapeText(pendingText);
+    }
+    pendingText.setLength(0);
+  }
+
+  private static boolean isCollapsibleWhitespace(CharSequence text) {
+    for (int x = 0; x < text.length(); x++) {
+      char c = text.charAt(x);
+      if (c != ' ' && c != '\t' && c != '\n') return false;
+    }
+    return true;
+  }
+
+  /**
+   * Comments, CDATA sections and processing instructions are written raw, so the whitespace rule can 
+   * also match inside them; this is rare enough that the regex is fine here.
+   */
+  private static String collapse(String raw) {
+    return (raw.indexOf('>') >= 0 && raw.indexOf('<') >= 0) ? WHITESPACE_BETWEEN_TAGS.matcher(raw).replaceAll("><") : raw;
+  }
+
+  private void escapeAttribute(String value) {
+    for (int x = 0; x < value.length(); x++) {
+      char c = value.charAt(x);
+      switch (c) {
+        case '&': out.append("&amp;"); break;
+        case '<': out.append("&lt;"); break;
+        case '>': out.append("&gt;"); break;
+        case '"': out.append("&quot;"); break;
+        default:
+          if (c < 0x20) {
+            out.append("&#").append((int)c).append(';');
+          } else {
+            x = appendChar(value, x, c);
+          }
+      }
+    }
+  }
+
+  private void escapeText(CharSequence text) {
+    for (int x = 0; x < text.length(); x++) {
+      char c = text.charAt(x);
+      switch (c) {
+        case '&': out.append("&amp;"); break;
+        case '<': out.append("&lt;"); break;
+        case '>': out.append("&gt;"); break;
+        case '\t':
+        case '\n': out.append(c); break;
+        default:
+          if (c < 0x20 || (c >= 0x7F && c <= 0x9F)) {
+            out.append("&#").append((int)c).append(';');
+          } else {
+            x = appendChar(text, x, c);
+          }
+      }
+    }
+  }
+
+  /**
+   * Append a character as-is, except for surrogate pairs, which are written as a character reference.
+   * @return the index of the last char consumed
+   */
+  private int appendChar(CharSequence s, int x, char c) {
+    if (Character.isHighSurrogate(c) && x + 1 < s.length() && Character.isLowSurrogate(s.charAt(x + 1))) {
+      out.append("&#").append(Character.toCodePoint(c, s.charAt(x + 1))).append(';');
+      return x + 1;
+    }
+    out.append(c);
+    return x;
+  }
+
+  /**
+   * Namespace declarations first, then everything else; each group sorted by name
+   */
+  private static final Comparator<String[]> ATTRIBUTE_ORDER = new Comparator<String[]>() {
+    public int compare(String[] a, String[] b) {
+      boolean aIsNamespace = isNamespaceDeclaration(a[0]);
+      boolean bIsNamespace = isNamespaceDeclaration(b[0]);
+      if (aIsNamespace != bIsNamespace) return aIsNamespace ? -1 : 1;
+      return a[0].compareTo(b[0]);
+    }
+  };
+
+  private static boolean isNamespaceDeclaration(String attributeName) {
+    return attributeName.equals("xmlns") || attributeName.startsWith("xmlns:");
+  }
+
+}
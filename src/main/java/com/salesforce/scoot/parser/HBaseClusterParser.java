@@ -26,11 +26,11 @@
 package com.salesforce.scoot.parser;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
 
 import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseRegionLayout;
 import com.salesforce.scoot.HBaseSchema;
 import com.salesforce.scoot.ScootException;
 
@@ -40,30 +40,30 @@ import com.salesforce.scoot.ScootException;
  */
 public class HBaseClusterParser extends HBaseSchemaParser {
 
-  private Configuration config;
+  private String zookeeperQuorum;
 
   public void setResourceToParse(String zookeeperQuorum){
-    this.config = createConfig(zookeeperQuorum);
+    this.zookeeperQuorum = zookeeperQuorum;
   }
 
 
-  private static Configuration createConfig(String zookeeperQuorum) {
-    Configuration configuration = HBaseConfiguration.create();
+  private Configuration createConfig() {
+    Configuration configuration = new Configuration(getConfiguration());
     configuration.set("hbase.zookeeper.quorum", zookeeperQuorum);
     return configuration;
   }
 
   /**
    * Connect to the cluster supplied in the constructor and extract a representation
-   * of its current schema
+   * of its current schema. Only the descriptors of tables that match the table filter 
+   * are fetched; see HBaseClusterSchemaFetcher for how (and how to tune it).
    */
   @Override
   public HBaseSchema parse() {
-    Preconditions.checkNotNull(config, "Configuration with zookeeper quorum must be set before parsing.");
+    Preconditions.checkNotNull(zookeeperQuorum, "Configuration with zookeeper quorum must be set before parsing.");
     HBaseSchema s = new HBaseSchema();
     try {
-      HBaseAdmin admin = new HBaseAdmin(config);
-      for (HTableDescriptor t : admin.listTables()){
+      for (HTableDescriptor t : new HBaseClusterSchemaFetcher(createConfig(), tableFilter).fetch()){
         s.addTable(t);
       }
     } catch (Exception x) {
@@ -72,4 +72,29 @@ public class HBaseClusterParser extends HBaseSchemaParser {
     return s;
   }
 
+  /**
+   * Get the region boundaries of the cluster's tables that match the table filter
+   */
+  public HBaseRegionLayout getRegionLayout() {
+    Preconditions.checkNotNull(zookeeperQuorum, "Configuration with zookeeper quorum must be set before getting the region layout.");
+    return HBaseRegionLayout.fromCluster(createConfig(), tableFilter);
+  }
+
+  /**
+   * Get the ID of the cluster (which is stable for the life of the cluster, unlike its quorum)
+   */
+  public String getClusterId() {
+    Preconditions.checkNotNull(zookeeperQuorum, "Configuration with zookeeper quorum must be set before getting the cluster ID.");
+    try {
+      HBaseAdmin admin = new HBaseAdmin(createConfig());
+      try {
+        return admin.getClusterStatus().getClusterId();
+      } finally {
+        admin.close();
+      }
+    } catch (Exception x) {
+      throw new ScootException("Unable to connect and get the HBase cluster ID: " + x.getMessage(), x);
+    }
+  }
+
 }
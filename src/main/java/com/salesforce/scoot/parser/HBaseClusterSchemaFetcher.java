@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.MetaScanner;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.salesforce.scoot.HBaseTableFilter;
+
+/**
+ * Fetches table descriptors from a live cluster. Table names are listed first (from the catalog table, so
+ * the master isn't involved), and then the descriptors of the tables that match the filter are requested 
+ * from the master in batches, several at a time. Every call has a timeout, counted from when it starts running
+ * (not from when it was queued), and a call that fails or times out is retried after a backoff that doubles 
+ * each time; if it still fails, the fetch fails. The whole fetch of the descriptors has a timeout too, so calls
+ * stuck behind ones that never return can't wait forever.
+ * 
+ * Tuning comes from the configuration:
+ *   scoot.fetch.threads      - how many calls can be outstanding at once (default 8)
+ *   scoot.fetch.batch.size   - how many descriptors to request per call (default 100)
+ *   scoot.fetch.timeout.ms   - how long to wait for a single call (default 60000)
+ *   scoot.fetch.total.timeout.ms - how long to wait for all of the descriptors (default 1800000)
+ *   scoot.fetch.retries      - how many times to retry a call that failed or timed out (default 3)
+ *   scoot.fetch.backoff.ms   - how long to wait before the first retry (default 1000)
+ */
+public class HBaseClusterSchemaFetcher {
+
+  public static final String THREADS_KEY = "scoot.fetch.threads";
+  public static final String BATCH_SIZE_KEY = "scoot.fetch.batch.size";
+  public static final String TIMEOUT_KEY = "scoot.fetch.timeout.ms";
+  public static final String TOTAL_TIMEOUT_KEY = "scoot.fetch.total.timeout.ms";
+  public static final String RETRIES_KEY = "scoot.fetch.retries";
+  public static final String BACKOFF_KEY = "scoot.fetch.backoff.ms";
+
+  private final Configuration config;
+  private final HBaseTableFilter tableFilter;
+  private final int threads;
+  private final int batchSize;
+  private final long timeoutMs;
+  private final long totalTimeoutMs;
+  private final int retries;
+  private final long backoffMs;
+
+  public HBaseClusterSchemaFetcher(Configuration config, HBaseTableFilter tableFilter) {
+    this.config = config;
+    this.tableFilter = tableFilter;
+    this.threads = Math.max(1, config.getInt(THREADS_KEY, 8));
+    this.batchSize = Math.max(1, config.getInt(BATCH_SIZE_KEY, 100));
+    this.timeoutMs = config.getLong(TIMEOUT_KEY, 60000);
+    this.totalTimeoutMs = config.getLong(TOTAL_TIMEOUT_KEY, 1800000);
+    this.retries = Math.max(0, config.getInt(RETRIES_KEY, 3));
+    this.backoffMs = config.getLong(BACKOFF_KEY, 1000);
+  }
+
+  /**
+   * Fetch the descriptors of all matching tables, sorted by table name
+   */
+  public List<HTableDescriptor> fetch() throws IOException {
+    // daemon threads, so that a call that never returns can't keep the process alive
+    ExecutorService executor = Executors.newFixedThreadPool(threads, 
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("scoot-fetch-%d").build());
+    HBaseAdmin admin = null;
+    try {
+      List<String> names = call(executor, "list table names", new Callable<List<String>>() {
+        public List<String> call() throws IOException {
+          return getMatchingTableNames();
+        }
+      });
+      if (names.isEmpty()) {
+        return new ArrayList<HTableDescriptor>();
+      }
+      admin = new HBaseAdmin(config);
+      return fetchDescriptors(executor, admin, names);
+    } finally {
+      executor.shutdownNow();
+      if (admin != null) admin.close();
+    }
+  }
+
+  /**
+   * Get the sorted names of the tables on the cluster that match the table filter
+   */
+  private List<String> getMatchingTableNames() throws IOException {
+    SortedSet<String> names = new TreeSet<String>();
+    for (HRegionInfo region : MetaScanner.listAllRegions(config, true)) {
+      if (tableFilter.matches(region.getTableNameAsString())) names.add(region.getTableNameAsString());
+    }
+    return new ArrayList<String>(names);
+  }
+
+  /**
+   * Request the descriptors for all of the named tables, a batch per call, keeping up to "threads" calls in flight
+   */
+  private List<HTableDescriptor> fetchDescriptors(ExecutorService executor, final HBaseAdmin admin, List<String> names) throws IOException {
+    List<Callable<HTableDescriptor[]>> calls = new ArrayList<Callable<HTableDescriptor[]>>();
+    for (final List<String> batch : Lists.partition(names, batchSize)) {
+      calls.add(new Callable<HTableDescriptor[]>() {
+        public HTableDescriptor[] call() throws IOException {
+          return admin.getTableDescriptors(batch);
+        }
+      });
+    }
+    long deadline = System.currentTimeMillis() + totalTimeoutMs;
+    List<TimedCall<HTableDescriptor[]>> submitted = new ArrayList<TimedCall<HTableDescriptor[]>>();
+    for (Callable<HTableDescriptor[]> call : calls) {
+      submitted.add(new TimedCall<HTableDescriptor[]>(executor, call));
+    }
+    // collect in order; the timeout of each call counts from when it started running, not from when we got to it
+    List<HTableDescriptor> result = new ArrayList<HTableDescriptor>(names.size());
+    for (int x = 0; x < calls.size(); x++) {
+      for (int attempt = 0; ; attempt++) {
+        try {
+          result.addAll(Arrays.asList(submitted.get(x).get(deadline)));
+          break;
+        } catch (InterruptedException e) {
+          throw interrupted();
+        } catch (Exception e) {
+          submitted.get(x).cancel();
+          String what = "fetch table descriptors (batch " + (x + 1) + " of " + calls.size() + ")";
+          if (attempt >= retries || System.currentTimeMillis() >= deadline) throw failure(what, attempt, e);
+          backoff(what, attempt);
+          submitted.set(x, new TimedCall<HTableDescriptor[]>(executor, calls.get(x)));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A call submitted to the executor, which notes when it actually starts running; until then, it's waiting
+   * for a thread, which doesn't count against its timeout
+   */
+  private class TimedCall<T> implements Callable<T> {
+    private final Callable<T> callable;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startedAt;
+    private final Future<T> future;
+
+    TimedCall(ExecutorService executor, Callable<T> callable) {
+      this.callable = callable;
+      this.future = executor.submit(this);
+    }
+
+    public T call() throws Exception {
+      startedAt = System.currentTimeMillis();
+      started.countDown();
+      return callable.call();
+    }
+
+    /**
+     * Wait for the result: for as long as the fetch has left while the call is queued, and then for the 
+     * call's own timeout (or what's left of the fetch's, if that's sooner) once it's running
+     */
+    T get(long deadline) throws InterruptedException, ExecutionException, TimeoutException {
+      if (!started.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+        throw new TimeoutException("still waiting to start after " + totalTimeoutMs + " ms (" + TOTAL_TIMEOUT_KEY + ")");
+      }
+      long end = Math.min(startedAt + timeoutMs, deadline);
+      try {
+        return future.get(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new TimeoutException(end == deadline ? "timed out after " + totalTimeoutMs + " ms (" + TOTAL_TIMEOUT_KEY + ")" 
+            : "timed out after " + timeoutMs + " ms");
+      }
+    }
+
+    void cancel() {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Make a single call with the timeout, retrying as configured
+   */
+  private <T> T call(ExecutorService executor, String what, Callable<T> callable) throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      Future<T> future = executor.submit(callable);
+      try {
+        return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        throw interrupted();
+      } catch (Exception e) {
+        future.cancel(true);
+        if (attempt >= retries) throw failure(what, attempt, e);
+        backoff(what, attempt);
+      }
+    }
+  }
+
+  private void backoff(String what, int attempt) throws IOException {
+    try {
+      Thread.sleep(backoffMs << attempt);
+    } catch (InterruptedException e) {
+      throw interrupted();
+    }
+  }
+
+  private IOException interrupted() {
+    Thread.currentThread().interrupt();
+    return new IOException("Interrupted while fetching the cluster schema.");
+  }
+
+  private IOException failure(String what, int attempt, Exception e) {
+    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+    String reason = e instanceof TimeoutException 
+        ? (e.getMessage() != null ? e.getMessage() : "timed out after " + timeoutMs + " ms") : String.valueOf(cause.getMessage());
+    IOException failure = new IOException("Unable to " + what + " after " + (attempt + 1) + " attempt(s): " + reason);
+    failure.initCause(cause);
+    return failure;
+  }
+
+}
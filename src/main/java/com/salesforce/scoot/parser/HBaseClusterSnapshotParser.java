@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.salesforce.scoot.HBaseRegionLayout;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseTableFilter;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Loads a snapshot of a cluster's schema (see the "snapshot" command), so that diffs against the cluster
+ * can be run repeatedly without going to ZooKeeper or the master each time. A snapshot is a compiled 
+ * schema file that also records which cluster it came from, and when; so this parser can read any
+ * compiled schema file.
+ * 
+ * If scoot.snapshot.max.age.ms is set in the configuration, a snapshot older than that isn't used: the 
+ * schema is fetched live from the cluster the snapshot was taken of instead (as long as that is still the
+ * same cluster, according to its ID).
+ * 
+ * A snapshot also records the region boundaries of the tables (see HBaseRegionLayout), for comparing region 
+ * layouts; snapshots taken before that was recorded can't be used for that.
+ * 
+ * Note that a snapshot only holds the tables that matched the table filter when it was taken.
+ */
+public class HBaseClusterSnapshotParser extends HBaseCompiledSchemaParser {
+
+  public static final String MAX_AGE_KEY = "scoot.snapshot.max.age.ms";
+
+  static final String SOURCE_PROPERTY = "source";
+  static final String SNAPSHOT_TIME_PROPERTY = "snapshotAt";
+  static final String CLUSTER_ID_PROPERTY = "clusterId";
+  static final String TABLE_FILTER_PROPERTY = "tableFilter";
+  static final String REGION_LAYOUT_PROPERTY = "regionLayout";
+  static final String REGIONS_PROPERTY_PREFIX = "regions.";
+
+  private boolean stale;
+
+  /**
+   * Fetch the schema of the given cluster, and write it to the file as a snapshot
+   */
+  public static void writeSnapshot(String zookeeperQuorum, Configuration configuration, HBaseTableFilter tableFilter, File file) {
+    HBaseClusterParser parser = new HBaseClusterParser();
+    parser.setConfiguration(configuration);
+    parser.setTableFilter(tableFilter);
+    parser.setResourceToParse(zookeeperQuorum);
+    // note the time before fetching, so the snapshot never looks newer than it is
+    long snapshotTime = System.currentTimeMillis();
+    HBaseSchema schema = parser.parse();
+    HBaseRegionLayout layout = parser.getRegionLayout();
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put(SOURCE_PROPERTY, zookeeperQuorum);
+    properties.put(SNAPSHOT_TIME_PROPERTY, String.valueOf(snapshotTime));
+    properties.put(CLUSTER_ID_PROPERTY, parser.getClusterId());
+    properties.put(TABLE_FILTER_PROPERTY, String.valueOf(tableFilter));
+    properties.put(REGION_LAYOUT_PROPERTY, "true");
+    layout.toProperties(properties, REGIONS_PROPERTY_PREFIX);
+    HBaseCompiledSchemaWriter.write(schema, properties, file);
+  }
+
+  @Override
+  public HBaseSchema parse() {
+    HBaseSchema snapshot = super.parse();
+    long maxAgeMs = getConfiguration().getLong(MAX_AGE_KEY, -1);
+    String snapshotTime = getProperties().get(SNAPSHOT_TIME_PROPERTY);
+    if (maxAgeMs < 0 || snapshotTime == null || System.currentTimeMillis() - Long.parseLong(snapshotTime) <= maxAgeMs) {
+      stale = false;
+      return snapshot;
+    }
+
+    // too old; go to the cluster instead
+    stale = true;
+    return getLiveParser().parse();
+  }
+
+  /**
+   * Whether a snapshot can be used depends on the time as well as on its contents, and if it can't, the schema
+   * comes from the cluster; so the result can't be cached by the file's contents
+   */
+  @Override
+  public boolean isCacheable() {
+    return false;
+  }
+
+  /**
+   * Get a parser for the cluster the snapshot was taken of, checking it's still the same cluster
+   */
+  protected HBaseClusterParser getLiveParser() {
+    HBaseClusterParser live = new HBaseClusterParser();
+    live.setConfiguration(getConfiguration());
+    live.setTableFilter(tableFilter);
+    live.setResourceToParse(getProperties().get(SOURCE_PROPERTY));
+    String clusterId = live.getClusterId();
+    if (!clusterId.equals(getProperties().get(CLUSTER_ID_PROPERTY))) {
+      throw new ScootException("Snapshot is out of date, but can't be refreshed: it was taken of cluster " 
+          + getProperties().get(CLUSTER_ID_PROPERTY) + ", but " + getProperties().get(SOURCE_PROPERTY) + " is now cluster " + clusterId);
+    }
+    return live;
+  }
+
+  /**
+   * Get the region boundaries the snapshot recorded, or the cluster's current ones if the last parse found the 
+   * snapshot too old to use. Only call this after parsing.
+   */
+  public HBaseRegionLayout getRegionLayout() {
+    if (stale) {
+      return getLiveParser().getRegionLayout();
+    }
+    if (!hasRegionLayout()) {
+      throw new ScootException("This snapshot doesn't record the region layout of its tables; take it again to compare region layouts");
+    }
+    HBaseRegionLayout layout = HBaseRegionLayout.fromProperties(getProperties(), REGIONS_PROPERTY_PREFIX);
+    // the snapshot has all the tables it was taken with, which might be more than this filter matches
+    HBaseRegionLayout filtered = new HBaseRegionLayout();
+    for (String tableName : layout.getTableNames()) {
+      if (tableFilter.matches(tableName)) filtered.addTable(tableName, layout.getBoundaries(tableName));
+    }
+    return filtered;
+  }
+
+  /**
+   * Is there a region layout to get: does the snapshot record one (or was it too old to use, so the cluster's is
+   * used)? Only call this after parsing.
+   */
+  public boolean hasRegionLayout() {
+    return stale || "true".equals(getProperties().get(REGION_LAYOUT_PROPERTY));
+  }
+
+  /**
+   * Was the snapshot too old to use, so that the last parse fetched the schema from the cluster instead?
+   */
+  public boolean isStale() {
+    return stale;
+  }
+
+}
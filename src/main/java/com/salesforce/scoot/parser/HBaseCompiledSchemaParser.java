@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Loads a schema from scoot's compiled binary format (see HBaseCompiledSchemaWriter, and the "compile" 
+ * command). The file is memory mapped, and tables are only decoded into HTableDescriptors when they're 
+ * first asked for, so loading is just a matter of reading the header. Values were already parsed, 
+ * validated and defaulted when the schema was compiled, so none of that is repeated here.
+ */
+public class HBaseCompiledSchemaParser extends HBaseSchemaParser {
+
+  public static final String FILE_EXTENSION = ".scootc";
+
+  private File schemaFile;
+  private Map<String, String> properties;
+
+  public void setResourceToParse(String schemaFileName){
+    this.schemaFile = new File(schemaFileName);
+  }
+
+  @Override
+  public HBaseSchema parse() {
+    Preconditions.checkNotNull(schemaFile, "Schema file reference must be set before parsing.");
+    try {
+      RandomAccessFile file = new RandomAccessFile(schemaFile.getAbsoluteFile(), "r");
+      try {
+        // the mapping stays valid after the file is closed
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        CompiledTables tables = new CompiledTables(buffer);
+        properties = tables.properties;
+        return new HBaseSchema(tables);
+      } finally {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new ScootException("Unable to read compiled schema file " + schemaFile + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Get the properties stored with the schema when it was written (available after parsing)
+   */
+  public Map<String, String> getProperties() {
+    Preconditions.checkNotNull(properties, "Schema must be parsed before reading its properties.");
+    return properties;
+  }
+
+  /**
+   * A read-only list of the tables in a compiled schema, which decodes each one on first access
+   */
+  private static class CompiledTables extends AbstractList<HTableDescriptor> {
+
+    private final MappedByteBuffer buffer;
+    private final int poolOffsetsStart;
+    private final int poolDataStart;
+    private final int directoryStart;
+    private final HTableDescriptor[] decoded;
+    private final byte[][] pool;
+    final Map<String, String> properties = new HashMap<String, String>();
+
+    CompiledTables(MappedByteBuffer buffer) throws IOException {
+      this.buffer = buffer;
+      if (buffer.limit() < 8 || buffer.getInt(0) != HBaseCompiledSchemaWriter.MAGIC) {
+        throw new IOException("Not a compiled scoot schema file.");
+      }
+      if (buffer.getInt(4) != HBaseCompiledSchemaWriter.FORMAT_VERSION) {
+        throw new IOException("Unsupported compiled schema version " + buffer.getInt(4) + "; recompile it with this version of scoot.");
+      }
+      int propertyCount = buffer.getInt(8);
+      int propertiesStart = 12;
+      int poolStart = propertiesStart + propertyCount * 8;
+      int poolSize = buffer.getInt(poolStart);
+      pool = new byte[poolSize][];
+      poolOffsetsStart = poolStart + 4;
+      poolDataStart = poolOffsetsStart + (poolSize + 1) * 4;
+      directoryStart = poolDataStart + buffer.getInt(poolOffsetsStart + poolSize * 4);
+      decoded = new HTableDescriptor[buffer.getInt(directoryStart)];
+      for (int x = 0; x < propertyCount; x++) {
+        properties.put(Bytes.toString(poolBytes(buffer.getInt(propertiesStart + x * 8))), Bytes.toString(poolBytes(buffer.getInt(propertiesStart + x * 8 + 4))));
+      }
+    }
+
+    @Override
+    public int size() {
+      return decoded.length;
+    }
+
+    @Override
+    public synchronized HTableDescriptor get(int index) {
+      if (decoded[index] == null) {
+        decoded[index] = decodeTable(index);
+      }
+      return decoded[index];
+    }
+
+    private HTableDescriptor decodeTable(int index) {
+      int entry = directoryStart + 4 + index * 8;
+      HTableDescriptor t = new HTableDescriptor(poolBytes(buffer.getInt(entry)));
+      int position = buffer.getInt(entry + 4);
+      // the constructor sets a few values of its own; only keep the ones that were compiled
+      Map<ImmutableBytesWritable, ImmutableBytesWritable> values = new HashMap<ImmutableBytesWritable, ImmutableBytesWritable>();
+      position = readValues(position, values);
+      for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(t.getValues().keySet())) {
+        if (!values.containsKey(key)) t.remove(key.get());
+      }
+      for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+        t.setValue(e.getKey().get(), e.getValue().get());
+      }
+      int familyCount = buffer.getInt(position);
+      position += 4;
+      for (int f = 0; f < familyCount; f++) {
+        HColumnDescriptor cf = new HColumnDescriptor(poolBytes(buffer.getInt(position)));
+        values.clear();
+        position = readValues(position + 4, values);
+        for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(cf.getValues().keySet())) {
+          if (!values.containsKey(key)) cf.remove(key.get());
+        }
+        for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+          cf.setValue(e.getKey().get(), e.getValue().get());
+        }
+        t.addFamily(cf);
+      }
+      return t;
+    }
+
+    /**
+     * Read a count followed by (key id, value id) pairs into the map, returning the position after them
+     */
+    private int readValues(int position, Map<ImmutableBytesWritable, ImmutableBytesWritable> values) {
+      int count = buffer.getInt(position);
+      position += 4;
+      for (int x = 0; x < count; x++, position += 8) {
+        values.put(new ImmutableBytesWritable(poolBytes(buffer.getInt(position))), new ImmutableBytesWritable(poolBytes(buffer.getInt(position + 4))));
+      }
+      return position;
+    }
+
+    /**
+     * Get an entry from the pool; each one is only copied out of the file once, and then shared
+     */
+    private byte[] poolBytes(int id) {
+      if (pool[id] == null) {
+        int start = buffer.getInt(poolOffsetsStart + id * 4);
+        int end = buffer.getInt(poolOffsetsStart + (id + 1) * 4);
+        byte[] result = new byte[end - start];
+        ByteBuffer data = buffer.duplicate();
+        data.position(poolDataStart + start);
+        data.get(result);
+        pool[id] = result;
+      }
+      return pool[id];
+    }
+  }
+
+}
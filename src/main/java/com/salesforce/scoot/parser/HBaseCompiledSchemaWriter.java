@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Writes a schema in scoot's compiled binary format, which HBaseCompiledSchemaParser can load without 
+ * any xml parsing or attribute validation. The file holds (all ints are 4 byte big-endian):
+ * 
+ *   header      MAGIC, FORMAT_VERSION
+ *   properties  count, then (key id, value id) pairs: free-form information about where the schema came from
+ *   pool        count, then count + 1 offsets (relative to the start of the pool data), then the pool data: 
+ *               every distinct byte string used in the schema (table and family names, attribute keys and values)
+ *   directory   count, then (name id, absolute offset) for each table, sorted by table name
+ *   tables      for each table: value count, (key id, value id) pairs, family count, and for each family
+ *               its name id, value count, and (key id, value id) pairs
+ * 
+ * Ids are indexes into the pool; since keys (and most values) repeat across tables, each is stored once.
+ */
+public class HBaseCompiledSchemaWriter {
+
+  static final int MAGIC = 0x53434D50; // "SCMP"
+  static final int FORMAT_VERSION = 1;
+
+  private final Map<ImmutableBytesWritable, Integer> poolIds = new HashMap<ImmutableBytesWritable, Integer>();
+  private final List<byte[]> pool = new ArrayList<byte[]>();
+
+  /**
+   * Write the schema to the given file, along with any properties describing it
+   */
+  public static void write(HBaseSchema schema, Map<String, String> properties, File file) {
+    try {
+      new HBaseCompiledSchemaWriter().writeFile(schema, properties, file);
+    } catch (IOException e) {
+      throw new ScootException("Unable to write compiled schema file " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  private void writeFile(HBaseSchema schema, Map<String, String> properties, File file) throws IOException {
+    List<HTableDescriptor> tables = new ArrayList<HTableDescriptor>(schema.getTablesByName().values());
+    Collections.sort(tables, new Comparator<HTableDescriptor>() {
+      public int compare(HTableDescriptor a, HTableDescriptor b) {
+        return Bytes.compareTo(a.getName(), b.getName());
+      }
+    });
+
+    // encode the table records first, so that the pool is complete before anything is written
+    List<int[]> propertyIds = new ArrayList<int[]>();
+    for (Entry<String, String> p : properties.entrySet()) {
+      propertyIds.add(new int[] { id(Bytes.toBytes(p.getKey())), id(Bytes.toBytes(p.getValue())) });
+    }
+    int[] nameIds = new int[tables.size()];
+    List<List<Integer>> records = new ArrayList<List<Integer>>();
+    for (int x = 0; x < tables.size(); x++) {
+      HTableDescriptor t = tables.get(x);
+      nameIds[x] = id(t.getName());
+      List<Integer> record = new ArrayList<Integer>();
+      addValues(record, t.getValues());
+      record.add(t.getFamilies().size());
+      for (HColumnDescriptor cf : t.getFamilies()) {
+        record.add(id(cf.getName()));
+        addValues(record, cf.getValues());
+      }
+      records.add(record);
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(propertyIds.size());
+      for (int[] p : propertyIds) {
+        out.writeInt(p[0]);
+        out.writeInt(p[1]);
+      }
+
+      out.writeInt(pool.size());
+      int offset = 0;
+      for (byte[] b : pool) {
+        out.writeInt(offset);
+        offset += b.length;
+      }
+      out.writeInt(offset);
+      for (byte[] b : pool) {
+        out.write(b);
+      }
+
+      // the directory's offsets are absolute; the table records start right after it
+      int position = out.size() + 4 + tables.size() * 8;
+      out.writeInt(tables.size());
+      for (int x = 0; x < tables.size(); x++) {
+        out.writeInt(nameIds[x]);
+        out.writeInt(position);
+        position += records.get(x).size() * 4;
+      }
+      for (List<Integer> record : records) {
+        for (int i : record) {
+          out.writeInt(i);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void addValues(List<Integer> record, Map<ImmutableBytesWritable, ImmutableBytesWritable> values) {
+    record.add(values.size());
+    for (Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+      record.add(id(e.getKey().get()));
+      record.add(id(e.getValue().get()));
+    }
+  }
+
+  /**
+   * Get the pool id of the given bytes, adding them to the pool if they aren't there yet
+   */
+  private int id(byte[] bytes) {
+    ImmutableBytesWritable key = new ImmutableBytesWritable(bytes);
+    Integer id = poolIds.get(key);
+    if (id == null) {
+      id = pool.size();
+      pool.add(bytes);
+      poolIds.put(key, id);
+    }
+    return id;
+  }
+
+}
@@ -25,11 +25,14 @@
  */
 package com.salesforce.scoot.parser;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 
 import com.salesforce.scoot.HBaseSchema;
 import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.HBaseTableFilter;
 import com.salesforce.scoot.ScootException;
 
 /**
@@ -43,13 +46,48 @@ import com.salesforce.scoot.ScootException;
  */
 public abstract class HBaseSchemaParser {
   
+  protected HBaseTableFilter tableFilter = HBaseTableFilter.ALL;
+  private Configuration configuration;
+
   public abstract void setResourceToParse(String resourceName);
 
+  /**
+   * Limit the tables this parser needs to return. Parsers for which reading a table is expensive (like
+   * the cluster parser) only read the matching ones; others may return everything, since the diff 
+   * applies the same filter.
+   */
+  public void setTableFilter(HBaseTableFilter tableFilter) {
+    this.tableFilter = tableFilter == null ? HBaseTableFilter.ALL : tableFilter;
+  }
+
+  /**
+   * Supply the configuration to use for anything this parser connects to or tunes itself with (if not
+   * supplied, the default HBase configuration is used)
+   */
+  public void setConfiguration(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  protected Configuration getConfiguration() {
+    if (configuration == null) {
+      configuration = HBaseConfiguration.create();
+    }
+    return configuration;
+  }
+
   /**
    * Parses the schema from the representation defined by the subclass, and returns a schema object
    */
   public abstract HBaseSchema parse();
 
+  /**
+   * Does the schema this parser returns depend only on the contents of the file it reads, so that it can be
+   * cached by those contents (see HBaseSchemaParseCache)? Parsers that may go elsewhere for it don't.
+   */
+  public boolean isCacheable() {
+    return true;
+  }
+
 
   /** 
    * Interrogate the table object and give any un-set attributes their default values explicitly. 
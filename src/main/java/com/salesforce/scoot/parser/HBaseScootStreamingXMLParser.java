@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Parse the schema from a "scoot" style XML file, using a StAX reader instead of a full DOM. Each 
+ * <table> element is read into its own small DOM fragment (and serialized for the table's full schema
+ * in the same pass), converted to an HTableDescriptor as soon as its closing tag is seen, and then 
+ * discarded; so memory use depends on the size of the largest table definition, not on the size of 
+ * the file.
+ * 
+ * The resulting schema is identical to what HBaseScootXMLParser produces for the same file.
+ */
+public class HBaseScootStreamingXMLParser extends HBaseScootXMLParser {
+
+  private static final String REPORT_CDATA_PROPERTY = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  /**
+   * Extract an object representation of the schema from an xml file, one table at a time
+   */
+  @Override
+  protected HBaseSchema parseSchemaInputStream(InputStream inputStream) {
+    
+    HBaseSchema s = new HBaseSchema();
+    
+    try {
+      DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+      // the JDK's reader folds CDATA into plain character events unless asked not to
+      if (factory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+        factory.setProperty(REPORT_CDATA_PROPERTY, Boolean.TRUE);
+      }
+      XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT && TABLE_ELEMENT.equals(getQualifiedName(reader))) {
+            Document doc = builder.newDocument();
+            CompactXMLSerializer fullXML = new CompactXMLSerializer();
+            Element table = readElement(reader, doc, fullXML);
+            doc.appendChild(table);
+            s.addTable(getTable(table, fullXML.toString()));
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (Exception x) {
+      throw new ScootException("Unable to parse schema file: " + x.getMessage(), x);
+    }
+    
+    return s;
+  }
+
+  /**
+   * Read the element the reader is positioned on (and everything under it) into a DOM element, 
+   * feeding the same events to the serializer. On return, the reader is positioned on the element's 
+   * END_ELEMENT event.
+   */
+  private Element readElement(XMLStreamReader reader, Document doc, CompactXMLSerializer serializer) throws Exception {
+    Element root = createElement(reader, doc, serializer);
+    Node current = root;
+    while (current != null) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          current = current.appendChild(createElement(reader, doc, serializer));
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          serializer.endElement(current.getNodeName());
+          current = (current == root) ? null : current.getParentNode();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          // keep adjacent character data in a single text node, the way a DOM parser would
+          Node last = current.getLastChild();
+          if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+            ((Text)last).appendData(reader.getText());
+          } else {
+            current.appendChild(doc.createTextNode(reader.getText()));
+          }
+          serializer.text(reader.getText());
+          break;
+        case XMLStreamConstants.CDATA:
+          current.appendChild(doc.createCDATASection(reader.getText()));
+          serializer.cdata(reader.getText());
+          break;
+        case XMLStreamConstants.COMMENT:
+          current.appendChild(doc.createComment(reader.getText()));
+          serializer.comment(reader.getText());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          current.appendChild(doc.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+          serializer.processingInstruction(reader.getPITarget(), reader.getPIData());
+          break;
+        default:
+          break;
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Create a DOM element (with its attributes) from the START_ELEMENT event the reader is positioned on
+   */
+  private Element createElement(XMLStreamReader reader, Document doc, CompactXMLSerializer serializer) {
+    Element e = doc.createElement(getQualifiedName(reader));
+    // namespace declarations aren't attributes to StAX, but they are to a (non namespace-aware) DOM parser
+    int namespaceCount = reader.getNamespaceCount();
+    String[][] attributes = new String[namespaceCount + reader.getAttributeCount()][];
+    for (int x = 0; x < namespaceCount; x++) {
+      String prefix = reader.getNamespacePrefix(x);
+      attributes[x] = new String[] { (prefix == null || prefix.length() == 0) ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(x) };
+    }
+    for (int x = 0; x < reader.getAttributeCount(); x++) {
+      String prefix = reader.getAttributePrefix(x);
+      String name = (prefix == null || prefix.length() == 0) ? reader.getAttributeLocalName(x) : prefix + ":" + reader.getAttributeLocalName(x);
+      attributes[namespaceCount + x] = new String[] { name, reader.getAttributeValue(x) };
+    }
+    for (String[] attribute : attributes) {
+      e.setAttribute(attribute[0], attribute[1]);
+    }
+    serializer.startElement(e.getNodeName(), attributes);
+    return e;
+  }
+
+  /**
+   * Get the element name as it appears in the file (i.e. with its prefix, if any)
+   */
+  private static String getQualifiedName(XMLStreamReader reader) {
+    String prefix = reader.getPrefix();
+    return (prefix == null || prefix.length() == 0) ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+  }
+
+}
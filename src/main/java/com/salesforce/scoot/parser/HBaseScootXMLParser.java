@@ -28,7 +28,7 @@ package com.salesforce.scoot.parser;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -36,11 +36,6 @@ import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
@@ -74,6 +69,13 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     propertyNames.put("memStoreFlushSizeMB", HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE.name());
     propertyNames.put("owner", HBaseSchemaAttribute.OWNER.name());
     propertyNames.put("numRegionsToPreSplitOnCreation", HBaseSchemaAttribute.NUMREGIONS.name());
+    propertyNames.put("splitAlgorithm", HBaseSchemaAttribute.SPLITALGO.name());
+    propertyNames.put("splitFirstRow", HBaseSchemaAttribute.SPLITFIRSTROW.name());
+    propertyNames.put("splitLastRow", HBaseSchemaAttribute.SPLITLASTROW.name());
+    propertyNames.put("splitSampleFile", HBaseSchemaAttribute.SPLITSAMPLES.name());
+    propertyNames.put("saltBuckets", HBaseSchemaAttribute.SALTBUCKETS.name());
+    propertyNames.put("splitKeys", HBaseSchemaAttribute.SPLITKEYS.name());
+    propertyNames.put("saltPrefixBytes", HBaseSchemaAttribute.SALTWIDTH.name());
     // column family
     propertyNames.put("blockCache", HBaseSchemaAttribute.BLOCKCACHE.name());
     propertyNames.put("blockSizeKB", HBaseSchemaAttribute.BLOCKSIZE.name());
@@ -84,6 +86,8 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     propertyNames.put("maxVersions", HBaseSchemaAttribute.VERSIONS.name());
     propertyNames.put("replicationScope", HBaseSchemaAttribute.REPLICATION_SCOPE.name());
     propertyNames.put("timeToLiveMS", HBaseSchemaAttribute.TTL.name());
+    propertyNames.put("accessPattern", HBaseSchemaAttribute.ACCESS_PATTERN.name());
+    propertyNames.put("expectedSizeGB", HBaseSchemaAttribute.EXPECTED_SIZE_GB.name());
   }
   /**
    * Scoot's xml format uses more human-readable representations for big numbers, in MB or KB
@@ -101,7 +105,7 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     multiplier.put("blockSizeKB", KILOBYTE_TO_BYTE_CONVERSION);
   }
   
-  private static final String TABLE_ELEMENT = "table";
+  static final String TABLE_ELEMENT = "table";
   private static final String TABLE_NAME_ATTRIBUTE = "name";
   private static final String COLUMN_FAMILIES_ELEMENT = "columnFamilies";
   private static final String FULL_SCHEMA_PROPERTY = "fullSchema";
@@ -131,7 +135,7 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
   /**
    * Extract an object representation of the schema from an xml file
    */
-  private HBaseSchema parseSchemaInputStream(FileInputStream inputStream) {
+  protected HBaseSchema parseSchemaInputStream(InputStream inputStream) {
     
     HBaseSchema s = new HBaseSchema();
     
@@ -155,7 +159,15 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
   /**
    * Convert a <table> node from the xml into an HTableDescriptor (with its column families)
    */
-  private HTableDescriptor getTable(Node tableNode) {
+  protected HTableDescriptor getTable(Node tableNode) {
+    return getTable(tableNode, getFullXML(tableNode));
+  }
+
+  /**
+   * Convert a <table> node from the xml into an HTableDescriptor, for callers that have already
+   * serialized the node (e.g. while reading it)
+   */
+  protected HTableDescriptor getTable(Node tableNode, String fullXML) {
     NamedNodeMap tableAttributes = tableNode.getAttributes();
     String tableName = tableAttributes.getNamedItem(TABLE_NAME_ATTRIBUTE).getNodeValue();
     HTableDescriptor tableDescriptor = new HTableDescriptor(tableName);
@@ -167,6 +179,7 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     }
 
     applyMissingTableDefaults(tableDescriptor);
+    resolveSampleFile(tableDescriptor);
 
     // parse the column families
     NodeList tableChildren = tableNode.getChildNodes();
@@ -180,27 +193,30 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     }
     
     // push this entire subtree of the xml file into the table metadata as the table's schema
-    tableDescriptor.setValue(FULL_SCHEMA_PROPERTY, getFullXML(tableNode));
+    tableDescriptor.setValue(FULL_SCHEMA_PROPERTY, fullXML);
 
     validateTableDefinition(tableDescriptor);
 
     return tableDescriptor;
   }
 
+  /**
+   * A table's sampled keys file is named relative to the schema file, not to wherever scoot is run from; so make 
+   * a relative name absolute, while we know where the schema file is
+   */
+  private void resolveSampleFile(HTableDescriptor tableDescriptor) {
+    String samples = tableDescriptor.getValue(HBaseSchemaAttribute.SPLITSAMPLES.name);
+    if (samples != null && schemaFile != null && !new File(samples).isAbsolute()) {
+      File directory = schemaFile.getAbsoluteFile().getParentFile();
+      tableDescriptor.setValue(HBaseSchemaAttribute.SPLITSAMPLES.name, new File(directory, samples).getPath());
+    }
+  }
+
   /**
    * Return a string of the full XML node, including all children, without linebreaks or indentation
    */
   private String getFullXML(Node tableNode) {
-    try {
-      StringWriter writer = new StringWriter();
-      Transformer t = TransformerFactory.newInstance().newTransformer();
-      t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-      t.setOutputProperty(OutputKeys.INDENT, "no");
-      t.transform(new DOMSource(tableNode), new StreamResult(writer));
-      return writer.toString().replaceAll(">[\\t\\s\\n\\r]+<", "><"); // remove whitespace and linebreaks between tags
-    } catch (Exception e) {
-      throw new ScootException("Error while serializing table xml.", e);
-    }
+    return CompactXMLSerializer.serialize(tableNode);
   }
 
   /**
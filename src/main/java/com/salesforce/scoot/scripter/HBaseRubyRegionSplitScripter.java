@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.scripter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.HBaseRegionLayoutDiff;
+import com.salesforce.scoot.HBaseRegionLayoutDiff.TableLayoutChange;
+import com.salesforce.scoot.HBaseRolloutThrottle;
+import com.salesforce.scoot.executor.HBaseRegionSplitExecutor;
+
+/**
+ * Using a region layout diff, output a ruby script that splits the cluster's regions to add the boundaries 
+ * it's missing, the same way HBaseRegionSplitExecutor does: one split at a time, each throttled (see 
+ * setThrottle), asked for again until a region starts at its key or the split times out. Splits that time 
+ * out are reported at the end, and the rest are still done. Extra boundaries are only listed in the summary,
+ * since HBase can't merge regions online.
+ */
+public class HBaseRubyRegionSplitScripter {
+
+  private final HBaseRegionLayoutDiff diff;
+  private HBaseRolloutThrottle throttle;
+  private long timeoutMs = HBaseRegionSplitExecutor.DEFAULT_TIMEOUT_MS;
+  private StringBuilder script;
+
+  public HBaseRubyRegionSplitScripter(HBaseRegionLayoutDiff diff) {
+    this.diff = diff;
+  }
+
+  /**
+   * Throttle the splits with the given limits (only the limits are used, not the counts); its poll interval 
+   * is also how often the script checks on a split
+   */
+  public void setThrottle(HBaseRolloutThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  /**
+   * How long to keep asking for a split before giving up on it
+   */
+  public void setTimeoutMs(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  public String generateScript() {
+    script = new StringBuilder();
+    scriptHeaders();
+    scriptSplits();
+    scriptFooters();
+    String result = script.toString();
+    script = null;
+    return result;
+  }
+
+  /**
+   * Write the script to the given file, replacing whatever's there (see ScriptFile.write)
+   */
+  public void writeScript(File destination) {
+    final String text = generateScript();
+    ScriptFile.write(destination, new ScriptFile.Contents() {
+      public void writeTo(Writer out, FileChannel outChannel) throws IOException {
+        out.write(text);
+      }
+    });
+  }
+
+  /**
+   * Shorthand
+   */
+  private void s(String toScript) {
+    script.append(toScript).append('\n');
+  }
+
+  private void scriptHeaders() {
+    s("###############################################################################");
+    s("# HBase Region Split Script");
+    s("#");
+    s("# Summary:");
+    s("#");
+    int size = diff.getMissingCount();
+    s("#  * Add " + size + " region boundar" + (size != 1 ? "ies" : "y") + (size > 0 ? ":" : "."));
+    for (TableLayoutChange change : diff.getTableChanges()) {
+      if (!change.missing.isEmpty()) {
+        s("#      " + change.tableName + ": " + change.missing.size() + " split(s), from " + change.fromCount 
+            + " region(s) to " + (change.fromCount + change.missing.size()));
+      }
+    }
+    size = 0;
+    for (TableLayoutChange change : diff.getTableChanges()) {
+      size += change.extra.size();
+    }
+    if (size > 0) {
+      s("#");
+      s("#  * Leave " + size + " extra region boundar" + (size != 1 ? "ies" : "y") + " in place (regions can't be merged online):");
+      for (TableLayoutChange change : diff.getTableChanges()) {
+        for (byte[] key : change.extra) {
+          s("#      " + change.tableName + ": " + Bytes.toStringBinary(key));
+        }
+      }
+    }
+    s("#");
+    size = diff.getMatchingTableCount();
+    s("#  * " + size + " table" + (size != 1 ? "s" : "") + " already match" + (size != 1 ? "" : "es") + ".");
+    if (!diff.getTablesOnlyInTo().isEmpty()) {
+      s("#");
+      s("#  * Not on the cluster, so not split: " + diff.getTablesOnlyInTo());
+    }
+    s("###############################################################################");
+    s("");
+    s("###############################################################################");
+    s("# Initialization");
+    s("###############################################################################");
+    s("include Java");
+    s("import org.apache.hadoop.hbase.HBaseConfiguration");
+    s("import org.apache.hadoop.hbase.client.HBaseAdmin");
+    s("import org.apache.hadoop.hbase.util.Bytes");
+    s("");
+    s("conf = HBaseConfiguration.new");
+    s("admin = HBaseAdmin.new(conf)");
+    s("errors = Array.new");
+    s("");
+    s("###############################################################################");
+    s("# Utility methods");
+    s("###############################################################################");
+    s("");
+    s("def scoot_region_starts_at(admin, tablename, key)");
+    s("    admin.getTableRegions(Bytes.toBytes(tablename)).any? { |region| Bytes.equals(region.getStartKey(), key) }");
+    s("end");
+    s("");
+    s("# A region that was split recently can't be split again until its daughters no longer refer to its files,");
+    s("# so the split is asked for until it happens, or times out. Returns an error, or nil if it worked.");
+    s("def scoot_split(admin, tablename, key)");
+    s("    started = Time.now");
+    s("    failure = nil");
+    s("    while (!scoot_region_starts_at(admin, tablename, key))");
+    s("        if (Time.now - started > " + timeoutMs / 1000.0 + ")");
+    s("            return \"Table '#{tablename}' was not split at #{Bytes.toStringBinary(key)} within " + timeoutMs + " ms#{failure ? '; the last request failed with: ' + failure : '.'}\\n\"");
+    s("        end");
+    s("        begin");
+    s("            admin.split(Bytes.toBytes(tablename), key)");
+    s("            failure = nil");
+    s("        rescue Exception, java.lang.Throwable => e");
+    s("            failure = e.to_s");
+    s("        end");
+    s("        sleep " + getPollMs() / 1000.0);
+    s("    end");
+    s("    return nil");
+    s("end");
+    s("");
+    for (String line : ThrottleScript.methods(throttle)) s(line);
+  }
+
+  private long getPollMs() {
+    return throttle == null ? HBaseRolloutThrottle.DEFAULT_POLL_MS : throttle.getPollMs();
+  }
+
+  private void scriptSplits() {
+    s("###############################################################################");
+    s("# Splits");
+    s("#");
+    s("# This step actually splits the regions on the cluster, one at a time.");
+    if (throttle != null && throttle.isThrottling()) {
+      s("#");
+      if (throttle.isLimitingRegionsInTransition()) {
+        s("# Each split waits until there are no more than " + throttle.getMaxRegionsInTransition() + " regions in");
+        s("# transition on the cluster before it starts.");
+      }
+      if (throttle.getPauseMs() > 0) {
+        s("# Splits are " + throttle.getPauseMs() + " ms apart.");
+      }
+    }
+    s("###############################################################################");
+    s("");
+    int splits = 0;
+    for (TableLayoutChange change : diff.getTableChanges()) {
+      if (change.missing.isEmpty()) continue;
+      s("# Split table: " + change.tableName);
+      s("tablename = \"" + ScriptFile.escapeRubyString(change.tableName) + "\"");
+      for (byte[] key : change.missing) {
+        for (String line : ThrottleScript.beforeOperation(throttle, splits++ == 0)) s(line);
+        s("started = Time.now");
+        s("error = scoot_split(admin, tablename, Bytes.toBytesBinary(\"" + ScriptFile.escapeRubyKey(key) + "\"))");
+        s("puts \"Split table '#{tablename}' at " + ScriptFile.escapeRubyKey(key) 
+            + " #{error ? 'FAILED after' : 'in'} #{'%.1f' % (Time.now - started)} s\"");
+        s("errors << error if error");
+      }
+      s("");
+    }
+    for (String line : ThrottleScript.report(throttle)) s(line);
+    s("");
+    s("# If any splits failed, report them and exit the script.");
+    s("if (errors.length > 0)");
+    s("    puts \"There were #{errors.length} error(s) during splitting:\"");
+    s("    print \"#{errors.collect{|msg| \"Error: \" + msg}}\"");
+    s("    raise");
+    s("    exit");
+    s("end");
+    s("puts \"Splits successful.\"");
+    s("");
+  }
+
+  private void scriptFooters() {
+    s("puts \"Script complete. Share and enjoy.\"");
+    s("exit");
+  }
+
+}
@@ -25,97 +25,308 @@
  */
 package com.salesforce.scoot.scripter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseRolloutThrottle;
 import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.HBaseSchemaChangeCost;
 import com.salesforce.scoot.HBaseSchemaDiff;
 import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
 import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChangeVisitor;
 import com.salesforce.scoot.HBaseSchemaDiff.PropertyChange;
+import com.salesforce.scoot.HBaseSchemaValues;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.split.HBaseSplitKeys;
 
 /**
  * Using a schema diff object, output a ruby script that verifies the existing schema state,
  * and then patches the cluster to install the new schema state, and then validates that
  * it worked correctly.
+ * 
+ * The scripter is also a visitor, so it can be handed to a diff and script the changes as they're found
+ * (each section of the script is written as it goes, and put together at the end), without the diff 
+ * having to keep them. The sections can be kept in temp files instead of memory (see setSectionDirectory), 
+ * and the script written straight to a file, so a big script doesn't have to fit in memory.
+ * 
+ * Altered tables are modified the cheapest way their changes allow (see HBaseSchemaChangeCost): if online 
+ * schema updates are enabled on the cluster, tables whose changes don't require disabling them are modified 
+ * while enabled, with their regions reopened one at a time. Otherwise, they're disabled while they're modified.
+ * The summary says which applies to each table.
+ * 
+ * The modifications can be split into lanes (see setLanes), which the script runs concurrently, each in its own
+ * thread. Every table is in exactly one lane, so the lanes don't touch the same tables; validation is still done
+ * once, for all of them, before and after.
+ * 
+ * Each table operation can also be throttled (see setThrottle): the script waits for the regions in transition
+ * on the cluster to come down to a limit before starting it, and pauses between operations in the same lane.
  */
-public class HBaseRubySchemaPatchScripter {
+public class HBaseRubySchemaPatchScripter implements HBaseSchemaChangeVisitor {
   
+  /** The cluster setting that allows tables to be modified while they're enabled */
+  public static final String ONLINE_SCHEMA_UPDATE_KEY = "hbase.online.schema.update.enable";
+
   private final HBaseSchemaDiff diff;
-  private final StringBuilder script = new StringBuilder();
+  private boolean diffScripted = false;
+  private File sectionDirectory;
+  private Appendable script;
+  private Writer output;
+  private FileChannel outputChannel;
+  private ScriptSection createdSummary;
+  private ScriptSection alteredSummary;
+  private ScriptSection droppedSummary;
+  private ScriptSection ignoredSummary;
+  private ScriptSection suppressedSummary;
+  private int suppressedCount = 0;
+  private ScriptSection preValidations;
+  private ScriptSection[] lanes;
+  private int laneCount = 1;
+  private int changedTables = 0;
+  private int[] laneOperations;
+  private HBaseRolloutThrottle throttle;
+  private ScriptSection postValidations;
+  private final int[] counts = new int[ChangeType.values().length];
+  private boolean listingIgnoredTables = true;
+  private boolean onlineSchemaUpdates = false;
 
+  /**
+   * Script the changes in the given diff
+   */
   public HBaseRubySchemaPatchScripter(HBaseSchemaDiff diff) {
     this.diff = diff;
   }
 
+  /**
+   * Script whatever changes this is handed as a visitor
+   */
+  public HBaseRubySchemaPatchScripter() {
+    this(null);
+  }
+
+  /**
+   * Whether to list the names of unchanged tables in the summary at the top of the script, or just count them
+   */
+  public void setListingIgnoredTables(boolean listingIgnoredTables) {
+    this.listingIgnoredTables = listingIgnoredTables;
+  }
+
+  /**
+   * Whether online schema updates are enabled on the cluster the script will run against (see ONLINE_SCHEMA_UPDATE_KEY)
+   */
+  public void setOnlineSchemaUpdates(boolean onlineSchemaUpdates) {
+    this.onlineSchemaUpdates = onlineSchemaUpdates;
+  }
+
+  /**
+   * Split the modifications into this many lanes, which the script runs in parallel threads, each with its own
+   * connection; tables are dealt out to them in turn. A lane stops at its first error, and the errors from all of 
+   * them are reported once they've finished. This has to be set before any changes are scripted.
+   */
+  public void setLanes(int laneCount) {
+    Preconditions.checkArgument(laneCount > 0, "There must be at least one lane, not %s.", laneCount);
+    this.laneCount = laneCount;
+  }
+
+  /**
+   * Throttle the script's table operations with the given limits (only the limits are used, not the counts)
+   */
+  public void setThrottle(HBaseRolloutThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  private boolean isThrottling() {
+    return throttle != null && throttle.isThrottling();
+  }
+
+  /**
+   * Keep the sections of the script in temp files in this directory until they're put together, rather than in
+   * memory. This has to be set before any changes are scripted. 
+   */
+  public void setSectionDirectory(File sectionDirectory) {
+    this.sectionDirectory = sectionDirectory;
+  }
+
   public String generateScript() {
-    scriptHeaders();
-    scriptPreValidations();
-    scriptChanges();
-    scriptPostValidations();
-    scriptFooters();
-    return getScript();
+    StringWriter out = new StringWriter();
+    writeScript(out, null);
+    return out.toString();
   }
 
   /**
-   * Get the script that has been generated by running generateScript
+   * Write the script to the given file, replacing whatever's there (see ScriptFile.write)
    */
-  private String getScript() {
-    return this.script.toString();
+  public void writeScript(File destination) {
+    ScriptFile.write(destination, new ScriptFile.Contents() {
+      public void writeTo(Writer out, FileChannel outChannel) {
+        writeScript(out, outChannel);
+      }
+    });
+  }
+
+  /**
+   * Put the script together, writing it to the output
+   * @param outChannel the channel of the file the output goes to, if it does; sections can be copied straight into it
+   */
+  private void writeScript(Writer out, FileChannel outChannel) {
+    if (diff != null && !diffScripted) {
+      for (HBaseSchemaChange c : diff.getTableChanges()) {
+        visit(c);
+      }
+      // the diff may have only counted the unchanged tables
+      counts[ChangeType.IGNORE.ordinal()] = diff.getChangeCount(ChangeType.IGNORE);
+      diffScripted = true;
+    }
+    createSections();
+    output = out;
+    outputChannel = outChannel;
+    script = out;
+    try {
+      scriptHeaders();
+      scriptPreValidations();
+      scriptChanges();
+      scriptPostValidations();
+      scriptFooters();
+      out.flush();
+    } catch (IOException e) {
+      throw new ScootException("Unable to write script: " + e.getMessage(), e);
+    } finally {
+      output = null;
+      outputChannel = null;
+      discard();
+    }
+  }
+
+  /**
+   * Let go of whatever has been scripted, deleting the temp files its sections are kept in. Writing the script
+   * does this; call it if the script might not get written (say, the diff feeding it fails), so they aren't left
+   * next to the output.
+   */
+  public void discard() {
+    for (ScriptSection section : getSections()) {
+      if (section != null) section.delete();
+    }
+  }
+
+  private void createSections() {
+    if (createdSummary != null) return;
+    try {
+      createdSummary = createSection();
+      alteredSummary = createSection();
+      droppedSummary = createSection();
+      ignoredSummary = createSection();
+      suppressedSummary = createSection();
+      preValidations = createSection();
+      lanes = new ScriptSection[laneCount];
+      laneOperations = new int[laneCount];
+      for (int i = 0; i < laneCount; i++) {
+        lanes[i] = createSection();
+      }
+      postValidations = createSection();
+    } catch (IOException e) {
+      discard();
+      throw new ScootException("Unable to create temp files for the script in " + sectionDirectory + ": " + e.getMessage(), e);
+    }
+  }
+
+  private ScriptSection createSection() throws IOException {
+    return sectionDirectory == null ? new ScriptSection() : new ScriptSection(sectionDirectory);
+  }
+
+  private List<ScriptSection> getSections() {
+    List<ScriptSection> sections = new ArrayList<ScriptSection>(Arrays.asList(createdSummary, alteredSummary, 
+        droppedSummary, ignoredSummary, suppressedSummary, preValidations, postValidations));
+    if (lanes != null) sections.addAll(Arrays.asList(lanes));
+    return sections;
+  }
+
+  /**
+   * Script one change, adding to each section of the script it shows up in
+   */
+  public void visit(HBaseSchemaChange c) {
+    createSections();
+    counts[c.type.ordinal()]++;
+    scriptSummary(c);
+    script = preValidations;
+    scriptPreValidation(c);
+    if (c.type != ChangeType.IGNORE) {
+      int lane = changedTables++ % laneCount;
+      script = lanes[lane];
+      scriptThrottle(laneOperations[lane]++ == 0);
+      scriptChange(c);
+    }
+    script = postValidations;
+    scriptPostValidation(c);
   }
 
   /**
    * Shorthand
    */
   private void s(String toScript){
-    script.append(toScript + "\n");
+    try {
+      script.append(toScript).append('\n');
+    } catch (IOException e) {
+      throw new ScootException("Unable to write script: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Copy a finished section into the output
+   */
+  private void s(ScriptSection section){
+    try {
+      section.writeTo(output, outputChannel);
+    } catch (IOException e) {
+      throw new ScootException("Unable to write script: " + e.getMessage(), e);
+    }
   }
   
   private void scriptHeaders() {
     
-    Map<ChangeType, List<HBaseSchemaChange>> m = diff.getTableChangesByType();
     s("###############################################################################");
     s("# HBase Schema Update Script");
     s("#");
     s("# Summary:");
     s("#");
-    int size = m.get(ChangeType.CREATE).size();
+    int size = counts[ChangeType.CREATE.ordinal()];
     s("#  * Create " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.CREATE)){
-      s("#       " + c.tableName);
-    }
+    s(createdSummary);
     s("#");
-    size = m.get(ChangeType.ALTER).size();
+    size = counts[ChangeType.ALTER.ordinal()];
     s("#  * Alter " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.ALTER)){
-      s("#       " + c.tableName);
-      // write the properties out in sorted order
-      List<String> lp = new ArrayList<String>();
-      for (PropertyChange pc : c.propertyChanges) lp.add("property change: " + pc.toString());
-      Collections.sort(lp);
-      for (String pc : lp) s("#       " + pc);
-    }
+    s(alteredSummary);
     s("#");
-    size = m.get(ChangeType.DROP).size();
+    size = counts[ChangeType.DROP.ordinal()];
     s("#  * Drop " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.DROP)){
-      s("#       " + c.tableName);
-    }
+    s(droppedSummary);
     s("#");
-    size = m.get(ChangeType.IGNORE).size();
-    s("#  * Ignore " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.IGNORE)){
-      s("#       " + c.tableName);
+    size = counts[ChangeType.IGNORE.ordinal()];
+    if (listingIgnoredTables && !ignoredSummary.isEmpty() || size == 0) {
+      s("#  * Ignore " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
+      s(ignoredSummary);
+    } else {
+      s("#  * Ignore " + size + " unchanged table" + (size !=1 ? "s" : "") + " (not listed).");
+    }
+    if (suppressedCount > 0) {
+      s("#");
+      s("#  * Disregard " + suppressedCount + " difference" + (suppressedCount !=1 ? "s" : "") + " between equivalent values:");
+      s(suppressedSummary);
     }
     s("###############################################################################");
     s("");
@@ -141,14 +352,108 @@ public class HBaseRubySchemaPatchScripter {
     s("# Utility methods"); 
     s("###############################################################################");
     s("");
-    s("def compare(errs, obj, action, attr, val)");
-    s("    if (obj.getValue(attr).to_s != val)");
+    s("# HBase treats some differently written values the same way (like compression \"none\" and \"NONE\"), and a missing");
+    s("# value the same as its default; the kind and default of the attributes it defines make these compare as equal.");
+    s("def scoot_normalize(val, kind)");
+    s("    s = val.to_s.strip");
+    s("    case kind");
+    s("    when :number then (s =~ /\\A[+-]?\\d+\\z/) ? s.to_i.to_s : val.to_s");
+    s("    when :boolean then (s =~ /\\A(true|false)\\z/i) ? s.downcase : val.to_s");
+    s("    when :enum then s.upcase");
+    s("    else val.to_s");
+    s("    end");
+    s("end");
+    s("");
+    s("def compare(errs, obj, action, attr, val, kind = nil, default = nil)");
+    s("    actual = obj.getValue(attr)");
+    s("    actual = default if actual.nil?");
+    s("    if (scoot_normalize(actual, kind) != scoot_normalize(val, kind))");
     s("        errs << \"Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \\\"#{val}\\\" for #{attr}, but it was \\\"#{obj.getValue(attr)}\\\" instead.\\n\"");
     s("    end");
     s("end");
     s("");
+    if (isThrottling()) scriptThrottleMethods();
+  }
+
+  /**
+   * The methods that throttle table operations, adding up the time they spend at it (across all the lanes)
+   */
+  private void scriptThrottleMethods() {
+    for (String line : ThrottleScript.methods(throttle)) s(line);
+  }
+
+  /**
+   * Hold up the next table operation as the throttle says
+   * @param first is it the first operation in its lane (which doesn't pause)
+   */
+  private void scriptThrottle(boolean first) {
+    for (String line : ThrottleScript.beforeOperation(throttle, first)) s(line);
+  }
+
+  private void scriptThrottleReport() {
+    for (String line : ThrottleScript.report(throttle)) s(line);
   }
   
+  /**
+   * Add a change to the summary at the top of the script
+   */
+  private void scriptSummary(HBaseSchemaChange c) {
+    script = suppressedSummary;
+    for (PropertyChange pc : c.suppressedChanges) {
+      s("#       " + pc.toString());
+      suppressedCount++;
+    }
+    switch (c.type) {
+      case CREATE:
+        script = createdSummary;
+        s("#       " + c.tableName);
+        break;
+      case ALTER:
+        script = alteredSummary;
+        s("#       " + c.tableName);
+        // write the properties out in sorted order
+        List<String> lp = new ArrayList<String>();
+        for (PropertyChange pc : c.propertyChanges) lp.add("property change: " + pc.toString());
+        Collections.sort(lp);
+        for (String pc : lp) s("#       " + pc);
+        s("#       expected unavailability: " + getExpectedUnavailability(c));
+        break;
+      case DROP:
+        script = droppedSummary;
+        s("#       " + c.tableName);
+        break;
+      case IGNORE:
+        if (listingIgnoredTables) {
+          script = ignoredSummary;
+          s("#       " + c.tableName);
+        }
+        break;
+    }
+  }
+
+  /**
+   * Should this altered table be modified while it's enabled?
+   */
+  private boolean isModifiedOnline(HBaseSchemaChange c) {
+    return onlineSchemaUpdates && c.getCost() != HBaseSchemaChangeCost.DISABLE_REQUIRED;
+  }
+
+  /**
+   * Describe how much of an altered table will be unavailable while it's modified, and why
+   */
+  private String getExpectedUnavailability(HBaseSchemaChange c) {
+    switch (c.getCost()) {
+      case METADATA_ONLY:
+        return isModifiedOnline(c) ? "none (metadata only; regions reopen one at a time)" 
+            : "whole table, while disabled for modification (metadata only; could be modified online if " + ONLINE_SCHEMA_UPDATE_KEY + " were enabled)";
+      case ONLINE_MODIFY:
+        return isModifiedOnline(c) ? "one region at a time, while each reopens" 
+            : "whole table, while disabled for modification (could be modified online if " + ONLINE_SCHEMA_UPDATE_KEY + " were enabled)";
+      default:
+        return "whole table, while disabled for modification (required)";
+    }
+  }
+
   private void scriptPreValidations() {
 
     s("###############################################################################");
@@ -159,24 +464,7 @@ public class HBaseRubySchemaPatchScripter {
     s("# script fail; it will emit errors and exit if it encounters any problems that");
     s("# will make the script fail."); 
     s("###############################################################################");
-
-    for (HBaseSchemaChange c : diff.getTableChanges()){
-      switch (c.type) {
-        case CREATE:
-          scriptVerifyTableAbsent(c.tableName, "create", true);
-          break;
-        case ALTER:
-          scriptVerifyTablePresent(c.tableName, "alter", true);
-          scriptVerifyTableMatches(c.oldTable, "alter", true); // alters will error out if something doesn't match
-          break;
-        case DROP:
-          scriptVerifyTablePresent(c.tableName, "drop", true);
-          scriptVerifyTableMatches(c.oldTable, "drop", false);  // drops will only warn if something doesn't match
-          break;
-        case IGNORE:
-          break;
-      }
-    }
+    s(preValidations);
     s("");
     s("# If any pre-validations had errors, report them and exit the script.");
     s("if (preErrors.length > 0)");
@@ -194,8 +482,28 @@ public class HBaseRubySchemaPatchScripter {
     s("");
   }
   
-  private void scriptVerifyTableAbsent(String tableName, String operationName, boolean shouldThrowError) {
-    String errorCollectionName = shouldThrowError ? "preErrors" : "preWarnings";
+  private void scriptPreValidation(HBaseSchemaChange c) {
+    switch (c.type) {
+      case CREATE:
+        scriptVerifyTableAbsent(c.tableName, "create", "preErrors");
+        break;
+      case ALTER:
+        scriptVerifyTablePresent(c.tableName, "alter", "preErrors");
+        scriptVerifyTableMatches(c.oldTable, "alter", "preErrors"); // alters will error out if something doesn't match
+        break;
+      case DROP:
+        scriptVerifyTablePresent(c.tableName, "drop", "preErrors");
+        scriptVerifyTableMatches(c.oldTable, "drop", "preWarnings");  // drops will only warn if something doesn't match
+        break;
+      case IGNORE:
+        break;
+    }
+  }
+  
+  /**
+   * @param errorCollectionName the array in the script that a failed check adds its message to
+   */
+  private void scriptVerifyTableAbsent(String tableName, String operationName, String errorCollectionName) {
     s("# Table '" + tableName + "' should not exist");
     s("tablename = \"" + tableName + "\"");
     s("if admin.tableExists(tablename)");
@@ -204,8 +512,7 @@ public class HBaseRubySchemaPatchScripter {
     s("");
   }
 
-  private void scriptVerifyTablePresent(String tableName, String operationName, boolean shouldThrowError) {
-    String errorCollectionName = shouldThrowError ? "preErrors" : "preWarnings";
+  private void scriptVerifyTablePresent(String tableName, String operationName, String errorCollectionName) {
     s("# Table '" + tableName + "' should exist");
     s("tablename = \"" + tableName + "\"");
     s("if !admin.tableExists(tablename)");
@@ -214,22 +521,25 @@ public class HBaseRubySchemaPatchScripter {
     s("");
   }
 
-  private void scriptVerifyTableMatches(HTableDescriptor oldTable, String operationName, boolean shouldThrowError) {
-    String errorCollectionName = shouldThrowError ? "preErrors" : "preWarnings";
-    s("# Table '" + oldTable.getNameAsString() + "' will " + (shouldThrowError ? "error" : "warn") + " if it doesn't match the expected definition.");
+  private void scriptVerifyTableMatches(HTableDescriptor oldTable, String operationName, String errorCollectionName) {
+    HTableDescriptor expected = HBaseSchemaValues.forCluster(oldTable); // values that aren't stored there can't be checked
+    boolean shouldThrowError = !errorCollectionName.equals("preWarnings");
+    s("# Table '" + expected.getNameAsString() + "' will " + (shouldThrowError ? "error" : "warn") + " if it doesn't match the expected definition.");
     s("if admin.tableExists(tablename)");
     s("    table = admin.getTableDescriptor(tablename.bytes.to_a)");
-    for (Entry<String,String> p : getSortedStringEntries(oldTable.getValues())){
-      s("    compare(" + errorCollectionName + ", table, \"" + operationName + "\", \"" + p.getKey() + "\", \"" + escapeDoubleQuotes(p.getValue()) + "\")");
+    for (Entry<String,String> p : getSortedStringEntries(expected.getValues())){
+      s("    compare(" + errorCollectionName + ", table, \"" + operationName + "\", \"" + p.getKey() + "\", \"" + escapeDoubleQuotes(p.getValue()) + "\""
+          + scriptEquivalence(p.getKey(), HTableDescriptor.class) + ")");
     }
     // now descend into child objects
-    for (HColumnDescriptor c : oldTable.getColumnFamilies()){
+    for (HColumnDescriptor c : expected.getColumnFamilies()){
       s("    # Column family: " + c.getNameAsString());
       s("    cfname = \"" + c.getNameAsString() + "\"");
       s("    cf = table.getFamily(cfname.bytes.to_a)");
 
       for (Entry<String,String> p : getSortedStringEntries(c.getValues())){
-        s("    compare(" + errorCollectionName + ", cf, \"" + operationName + "\", \"" + p.getKey() + "\", \"" + escapeDoubleQuotes(p.getValue()) + "\")");
+        s("    compare(" + errorCollectionName + ", cf, \"" + operationName + "\", \"" + p.getKey() + "\", \"" + escapeDoubleQuotes(p.getValue()) + "\""
+            + scriptEquivalence(p.getKey(), HColumnDescriptor.class) + ")");
       }
     }    
     s("end");
@@ -238,14 +548,24 @@ public class HBaseRubySchemaPatchScripter {
   }
 
   /**
-   * Get a sorted map of the given ImmutableBytesWritable map as strings
+   * The extra arguments to compare() that make it check a value the way HBaseSchemaAttribute.isEquivalent does (so 
+   * a change the diff suppressed as equivalent doesn't fail validation): the kind of value, and the default that 
+   * stands in for a missing one. Empty for values that have to match exactly.
    */
-  private Set<Entry<String,String>> getSortedStringEntries(Map<ImmutableBytesWritable, ImmutableBytesWritable> m) {
-    Map<String,String> result = new TreeMap<String,String>();
-    for (Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : m.entrySet()){
-      result.put(Bytes.toString(e.getKey().get()), Bytes.toString(e.getValue().get()));
-    }
-    return result.entrySet();
+  private String scriptEquivalence(String key, Class<?> objectType) {
+    HBaseSchemaAttribute a = HBaseSchemaAttribute.getFromKey(key, objectType);
+    if (a == null) return "";
+    String kind = a.type.equals(Integer.class) || a.type.equals(Long.class) ? ":number" 
+        : a.type.equals(Boolean.class) ? ":boolean" : a.type.isEnum() ? ":enum" : "nil";
+    if (kind.equals("nil") && a.defaultValue == null) return "";
+    return ", " + kind + ", " + (a.defaultValue == null ? "nil" : "\"" + escapeDoubleQuotes(a.defaultValue) + "\"");
+  }
+
+  /**
+   * Get the values of the given map as strings, sorted by key
+   */
+  private List<Entry<String,String>> getSortedStringEntries(Map<ImmutableBytesWritable, ImmutableBytesWritable> m) {
+    return HBaseSchemaValues.toSortedStrings(m);
   }
 
   /**
@@ -261,38 +581,98 @@ public class HBaseRubySchemaPatchScripter {
     s("# Modifications");
     s("#");
     s("# This step actually modifies the schema on the cluster.");
+    int usedLanes = Math.min(laneCount, changedTables);
+    if (usedLanes > 1) {
+      s("#");
+      s("# The tables are changed in " + usedLanes + " lanes, which run at the same time, each in");
+      s("# its own thread with its own connection. A lane stops at its first error; the");
+      s("# errors from every lane are reported once they've all finished.");
+    }
+    if (isThrottling()) {
+      s("#");
+      if (throttle.isLimitingRegionsInTransition()) {
+        s("# Each table operation waits until there are no more than " + throttle.getMaxRegionsInTransition() + " regions in");
+        s("# transition on the cluster before it starts.");
+      }
+      if (throttle.getPauseMs() > 0) {
+        s("# Operations " + (usedLanes > 1 ? "in the same lane " : "") + "are " + throttle.getPauseMs() + " ms apart.");
+      }
+    }
     s("###############################################################################");
     s("");
-    
-    for (HBaseSchemaChange c : diff.getTableChanges()){
-      switch (c.type) {
-        case CREATE:
-          scriptTableAdd(c.newTable);
-          break;
-      case DROP:
-          scriptTableDrop(c.oldTable);
-          break;
-      case ALTER:
-          scriptTableAlter(c.newTable);
-          break;
-      case IGNORE:
-          // Nothing to do!
-          break;
-      }
+    if (usedLanes > 1) {
+      scriptLanes(usedLanes);
+    } else {
+      s(lanes[0]);
+      scriptThrottleReport();
     }
     s("puts \"Table creations & modifications successful.\"");
     s("");
  }
+
+  /**
+   * Each lane is a method (so the variables it sets are its own, not shared with the other lanes), returning its
+   * errors; the script runs them all in threads, waits for them, and stops if any of them failed.
+   */
+  private void scriptLanes(int usedLanes) {
+    for (int i = 1; i <= usedLanes; i++) {
+      s("# Lane " + i + " of " + usedLanes);
+      s("def scoot_lane_" + i + "(conf)");
+      s("admin = HBaseAdmin.new(conf)");
+      s("begin");
+      s("");
+      s(lanes[i - 1]);
+      s("rescue Exception, java.lang.Throwable => e");
+      s("    return [\"Lane " + i + " stopped at table '#{tablename}': #{e}; the lane's remaining tables were not changed.\\n\"]");
+      s("end");
+      s("return []");
+      s("end");
+      s("");
+    }
+    s("laneThreads = Array.new");
+    for (int i = 1; i <= usedLanes; i++) {
+      s("laneThreads << Thread.new { scoot_lane_" + i + "(conf) }");
+    }
+    s("laneErrors = laneThreads.collect { |lane| lane.value }.flatten");
+    scriptThrottleReport();
+    s("");
+    s("# If any lane had errors, report them and exit the script.");
+    s("if (laneErrors.length > 0)");
+    s("    puts \"There were #{laneErrors.length} error(s) during modification:\"");
+    s("    print \"#{laneErrors.collect{|msg| \"Error: \" + msg}}\"");
+    s("    raise");
+    s("    exit");
+    s("end");
+    s("");
+  }
+  
+  private void scriptChange(HBaseSchemaChange c) {
+    switch (c.type) {
+      case CREATE:
+        scriptTableAdd(c.newTable);
+        break;
+      case DROP:
+        scriptTableDrop(c.oldTable);
+        break;
+      case ALTER:
+        scriptTableAlter(c, isModifiedOnline(c));
+        break;
+      case IGNORE:
+        // Nothing to do!
+        break;
+    }
+  }
   
   private void scriptTableAdd(HTableDescriptor newTable) {
     s("# Create Table: " + newTable.getNameAsString());
     s("tablename = \"" + newTable.getNameAsString() + "\"");
     s("table = HTableDescriptor.new(tablename)");
     s("#set table properties");
-    for (Entry<String,String> entry : getSortedStringEntries(newTable.getValues())){
+    HTableDescriptor storedTable = HBaseSchemaValues.forCluster(newTable);
+    for (Entry<String,String> entry : getSortedStringEntries(storedTable.getValues())){
       s("table.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
     }
-    for (HColumnDescriptor cf : newTable.getColumnFamilies()){
+    for (HColumnDescriptor cf : storedTable.getColumnFamilies()){
       s("cf = HColumnDescriptor.new(\"" + cf.getNameAsString() + "\")");
       for (Entry<String,String> entry : getSortedStringEntries(cf.getValues())){
         s("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
@@ -301,11 +681,16 @@ public class HBaseRubySchemaPatchScripter {
     }
     s("puts \"Creating table '#{tablename}' ... \"");
     
-    // If we need to pre-split, that's a special method call
-    if (newTable.getValue(HBaseSchemaAttribute.NUMREGIONS.name()) != null){
-    	s("admin.createTable(table, Bytes.toBytes(\"\\x00\"), Bytes.toBytes(\"\\xFF\"), " + newTable.getValue(HBaseSchemaAttribute.NUMREGIONS.name()) + ")");
+    // If we need to pre-split, that's a special method call, with the keys worked out here (see HBaseSplitKeys)
+    byte[][] splitKeys = HBaseSplitKeys.getSplitKeys(newTable);
+    if (splitKeys != null){
+      s("splits = Java::byte[][" + splitKeys.length + "].new");
+      for (int i = 0; i < splitKeys.length; i++) {
+        s("splits[" + i + "] = Bytes.toBytesBinary(\"" + ScriptFile.escapeRubyKey(splitKeys[i]) + "\")");
+      }
+      s("admin.createTable(table, splits)");
     } else {
-    	s("admin.createTable(table)");
+      s("admin.createTable(table)");
     }
     s("puts \"Created table '#{tablename}'\"");
     s("");
@@ -327,30 +712,125 @@ public class HBaseRubySchemaPatchScripter {
     s("");
   }
 
-  private void scriptTableAlter(HTableDescriptor newTable) {
-    s("# Modify table: " + newTable.getNameAsString());
-    s("tablename = \"" + newTable.getNameAsString() + "\"");
-    s("table = admin.getTableDescriptor(tablename.bytes.to_a)");
-    for (Entry<String,String> entry : getSortedStringEntries(newTable.getValues())){
-      s("table.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+  /**
+   * Modify only what changed: each column family in the property changes is added, modified (its definition on the
+   * cluster, with just the values that really changed; the ones suppressed as equivalent stay as they are) or deleted, and then the table's own values are updated, if any of them changed. Online, every 
+   * one of those calls reopens all of the table's regions; so if there's more than one, they're all made to the 
+   * table's descriptor instead, and applied with a single modifyTable.
+   */
+  private void scriptTableAlter(HBaseSchemaChange c, boolean online) {
+    Set<String> changedFamilies = c.getChangedFamilies();
+    List<PropertyChange> tableValueChanges = c.getTableValueChanges();
+    int operations = changedFamilies.size() + (tableValueChanges.isEmpty() ? 0 : 1);
+    HTableDescriptor newTable = HBaseSchemaValues.forCluster(c.newTable);
+
+    s("# Modify table: " + c.tableName);
+    s("tablename = \"" + c.tableName + "\"");
+    if (!online) {
+      s("puts \"Disabling table '#{tablename}' prior to modification ...\"");
+      s("admin.disableTable(tablename)");
     }
-    for (HColumnDescriptor cf : newTable.getColumnFamilies()){
-      s("cf = HColumnDescriptor.new(\"" + cf.getNameAsString() + "\")");
-      for (Entry<String,String> entry : getSortedStringEntries(cf.getValues())){
-        s("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+    if (online && operations > 1) {
+      s("table = admin.getTableDescriptor(tablename.bytes.to_a)");
+      scriptTableValueChanges(tableValueChanges);
+      for (String family : changedFamilies) {
+        HColumnDescriptor newFamily = newTable.getFamily(Bytes.toBytes(family));
+        if (newFamily == null) {
+          s("table.removeFamily(Bytes.toBytes(\"" + family + "\"))");
+        } else if (!c.oldTable.hasFamily(newFamily.getName())) {
+          scriptColumnFamily(newFamily);
+          s("table.addFamily(cf)");
+        } else {
+          s("cf = table.getFamily(Bytes.toBytes(\"" + family + "\"))");
+          scriptFamilyValueChanges(c.getFamilyValueChanges(family));
+        }
       }
-      s("table.addFamily(cf)");
+      s("puts \"Modifying table '#{tablename}' online ...\"");
+      s("admin.modifyTable(tablename.bytes.to_a, table)");
+      scriptWaitForReopen();
+    } else {
+      for (String family : changedFamilies) {
+        HColumnDescriptor newFamily = newTable.getFamily(Bytes.toBytes(family));
+        if (newFamily == null) {
+          s("puts \"Deleting column family '" + family + "' of table '#{tablename}' ...\"");
+          s("admin.deleteColumn(tablename, \"" + family + "\")");
+        } else if (!c.oldTable.hasFamily(newFamily.getName())) {
+          scriptColumnFamily(newFamily);
+          s("puts \"Adding column family '" + family + "' to table '#{tablename}' ...\"");
+          s("admin.addColumn(tablename, cf)");
+        } else {
+          s("cf = HColumnDescriptor.new(admin.getTableDescriptor(tablename.bytes.to_a).getFamily(Bytes.toBytes(\"" + family + "\")))");
+          scriptFamilyValueChanges(c.getFamilyValueChanges(family));
+          s("puts \"Modifying column family '" + family + "' of table '#{tablename}' ...\"");
+          s("admin.modifyColumn(tablename, cf)");
+        }
+        if (online) scriptWaitForReopen();
+      }
+      // after the families, so the descriptor this modifies has them in it
+      if (!tableValueChanges.isEmpty()) {
+        s("table = admin.getTableDescriptor(tablename.bytes.to_a)");
+        scriptTableValueChanges(tableValueChanges);
+        s("puts \"Modifying table '#{tablename}'" + (online ? " online" : "") + " ...\"");
+        s("admin.modifyTable(tablename.bytes.to_a, table)");
+        if (online) scriptWaitForReopen();
+      }
+    }
+    if (!online) {
+      s("puts \"Enabling table '#{tablename}' after modification ...\"");
+      s("admin.enableTable(tablename)");
     }
-    s("puts \"Disabling table '#{tablename}' prior to modification ...\"");
-    s("admin.disableTable(tablename)");
-    s("puts \"Modifying table '#{tablename}' ...\"");
-    s("admin.modifyTable(tablename.bytes.to_a, table)");
-    s("puts \"Enabling table '#{tablename}' after modification ...\"");
-    s("admin.enableTable(tablename)");
     s("puts \"Modified table '#{tablename}\"");
     s("");
   }
 
+  /**
+   * Set (or remove) the table values that changed, on the descriptor in "table"
+   */
+  private void scriptTableValueChanges(List<PropertyChange> tableValueChanges) {
+    for (PropertyChange p : tableValueChanges) {
+      if (p.newValue == null) {
+        s("table.remove(Bytes.toBytes(\"" + p.key + "\"))");
+      } else {
+        s("table.setValue(\"" + p.key + "\", \"" + escapeDoubleQuotes(p.newValue) + "\")");
+      }
+    }
+  }
+
+  /**
+   * Set (or remove) the values of a column family that changed, on the descriptor in "cf"
+   */
+  private void scriptFamilyValueChanges(List<PropertyChange> familyValueChanges) {
+    for (PropertyChange p : familyValueChanges) {
+      if (p.newValue == null) {
+        s("cf.remove(Bytes.toBytes(\"" + p.key + "\"))");
+      } else {
+        s("cf.setValue(\"" + p.key + "\", \"" + escapeDoubleQuotes(p.newValue) + "\")");
+      }
+    }
+  }
+
+  /**
+   * Define the whole (new) column family in "cf"
+   */
+  private void scriptColumnFamily(HColumnDescriptor family) {
+    s("cf = HColumnDescriptor.new(\"" + family.getNameAsString() + "\")");
+    for (Entry<String,String> entry : getSortedStringEntries(family.getValues())){
+      s("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+    }
+  }
+
+  /**
+   * Online changes return before the regions have all been reopened; wait until they have
+   */
+  private void scriptWaitForReopen() {
+    s("status = admin.getAlterStatus(tablename.bytes.to_a)");
+    s("while (status.getFirst() > 0)");
+    s("    puts \"#{status.getFirst()} of #{status.getSecond()} regions of '#{tablename}' still to be reopened ...\"");
+    s("    sleep 1");
+    s("    status = admin.getAlterStatus(tablename.bytes.to_a)");
+    s("end");
+  }
+
   private void scriptPostValidations() {
     
     s("###############################################################################");
@@ -359,27 +839,36 @@ public class HBaseRubySchemaPatchScripter {
     s("# This step ensures that changes were successful, and that the resulting schema");
     s("# on the cluster matches what you want to be there.");
     s("###############################################################################");
+    s(postValidations);
+    s("");
+    s("# If any post-validations had errors, report them and fail the script.");
+    s("if (postErrors.length > 0)");
+    s("    puts \"There were #{postErrors.length} error(s) during table post-validation:\"");
+    s("    print \"#{postErrors.collect{|msg| \"Error: \" + msg}}\"");
+    s("    raise");
+    s("    exit");
+    s("else");
+    s("    puts \"Post-validation successful.\"");
+    s("end");
+    s("");
+  }
 
-    for (HBaseSchemaChange c : diff.getTableChanges()){
-      switch (c.type) {
+  private void scriptPostValidation(HBaseSchemaChange c) {
+    switch (c.type) {
       case CREATE:
-        scriptVerifyTablePresent(c.tableName, "create", true);
-        scriptVerifyTableMatches(c.newTable, "create", true);  
+        scriptVerifyTablePresent(c.tableName, "create", "postErrors");
+        scriptVerifyTableMatches(c.newTable, "create", "postErrors");  
         break;
       case ALTER:
-        scriptVerifyTablePresent(c.tableName, "alter", true);
-        scriptVerifyTableMatches(c.newTable, "alter", true); 
+        scriptVerifyTablePresent(c.tableName, "alter", "postErrors");
+        scriptVerifyTableMatches(c.newTable, "alter", "postErrors"); 
         break;
       case DROP:
-        scriptVerifyTableAbsent(c.tableName, "drop", true);
+        scriptVerifyTableAbsent(c.tableName, "drop", "postErrors");
         break;
       case IGNORE:
         break;
     }
-
-    }
-    s("puts \"Post-validation successful.\"");
-    s("");
   }
 
   private void scriptFooters() {
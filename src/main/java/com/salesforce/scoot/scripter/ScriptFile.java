@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.scripter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.split.HBaseSplitKeys;
+
+/**
+ * What the scripters share about writing a script out: replacing the output file with it in one go, and putting 
+ * values into its ruby strings.
+ */
+class ScriptFile {
+
+  private ScriptFile() {
+  }
+
+  /**
+   * Writes a script's text
+   */
+  interface Contents {
+    /**
+     * @param outChannel the channel of the file the output goes to; a file can be copied straight into it
+     */
+    void writeTo(Writer out, FileChannel outChannel) throws IOException;
+  }
+
+  /**
+   * Write a script to the given file, replacing whatever's there: it's written to a temp file in the same 
+   * directory (so it's on the same filesystem), which is then renamed.
+   */
+  static void write(File destination, Contents contents) {
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("scoot_output_file_", ".tmp", destination.getAbsoluteFile().getParentFile());
+      FileOutputStream stream = new FileOutputStream(tmp);
+      try {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, ScriptSection.ENCODING));
+        contents.writeTo(out, stream.getChannel());
+        out.close();
+      } finally {
+        stream.close();
+      }
+      // some platforms won't rename over an existing file
+      if (!tmp.renameTo(destination) && !(destination.delete() && tmp.renameTo(destination))) {
+        throw new ScootException("Could not move temporary file " + tmp.getAbsolutePath() + " to " + destination);
+      }
+    } catch (IOException e) {
+      throw new ScootException("Error writing output script file: " + e.getMessage(), e);
+    } finally {
+      if (tmp != null) tmp.delete();
+    }
+  }
+
+  /**
+   * Escape a string to go in double quotes in ruby, as it is: backslashes, quotes, and the # that starts interpolation
+   */
+  static String escapeRubyString(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("#", "\\#");
+  }
+
+  /**
+   * Write a row key to go in double quotes in ruby, for Bytes.toBytesBinary to turn back into the key
+   */
+  static String escapeRubyKey(byte[] key) {
+    return escapeRubyString(HBaseSplitKeys.toString(new byte[][] { key }));
+  }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.scripter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One section of a script that's being generated, kept until the sections are put together in order: either
+ * in memory, or in a temp file (so the memory it takes to generate a script doesn't depend on how big it is).
+ * Scripts are always written as UTF-8.
+ */
+class ScriptSection implements Appendable {
+
+  static final String ENCODING = "UTF-8";
+
+  private final StringBuilder text;
+  private final File file;
+  private final Writer writer;
+  private boolean empty = true;
+
+  /**
+   * A section kept in memory
+   */
+  ScriptSection() {
+    this.text = new StringBuilder();
+    this.file = null;
+    this.writer = null;
+  }
+
+  /**
+   * A section kept in a temp file in the given directory
+   */
+  ScriptSection(File directory) throws IOException {
+    this.text = null;
+    this.file = File.createTempFile("scoot_section_", ".tmp", directory);
+    this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+  }
+
+  public Appendable append(CharSequence csq) throws IOException {
+    empty &= csq.length() == 0;
+    return text != null ? text.append(csq) : writer.append(csq);
+  }
+
+  public Appendable append(CharSequence csq, int start, int end) throws IOException {
+    empty &= start == end;
+    return text != null ? text.append(csq, start, end) : writer.append(csq, start, end);
+  }
+
+  public Appendable append(char c) throws IOException {
+    empty = false;
+    return text != null ? text.append(c) : writer.append(c);
+  }
+
+  boolean isEmpty() {
+    return empty;
+  }
+
+  /**
+   * Copy the section to the output. If the output is a file (whose channel is given), a section that's in a 
+   * file is copied by the channels, without going through this JVM's memory.
+   */
+  void writeTo(Writer out, FileChannel outChannel) throws IOException {
+    if (text != null) {
+      out.append(text);
+      return;
+    }
+    writer.flush();
+    if (outChannel != null) {
+      out.flush();
+      FileInputStream in = new FileInputStream(file);
+      try {
+        FileChannel inChannel = in.getChannel();
+        long size = inChannel.size();
+        for (long position = 0; position < size; ) {
+          position += inChannel.transferTo(position, size - position, outChannel);
+        }
+      } finally {
+        in.close();
+      }
+    } else {
+      Reader in = new InputStreamReader(new FileInputStream(file), ENCODING);
+      try {
+        char[] buffer = new char[64 * 1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Let go of the section, deleting its temp file (if it has one)
+   */
+  void delete() {
+    if (file != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        // it's being thrown away anyway
+      }
+      file.delete();
+    }
+  }
+
+}
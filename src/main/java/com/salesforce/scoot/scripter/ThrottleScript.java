@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.scripter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.salesforce.scoot.HBaseRolloutThrottle;
+
+/**
+ * The lines of ruby that throttle a script's operations as an HBaseRolloutThrottle says (only its limits are 
+ * used, not its counts), for the scripters to share. They add up the time spent throttled across all the threads
+ * in the script; nothing is scripted if the throttle doesn't hold anything up.
+ */
+class ThrottleScript {
+
+  private ThrottleScript() {
+  }
+
+  /**
+   * The methods the throttled operations call, which go near the top of the script
+   */
+  static List<String> methods(HBaseRolloutThrottle throttle) {
+    List<String> lines = new ArrayList<String>();
+    if (throttle == null || !throttle.isThrottling()) return lines;
+    lines.add("require 'thread'");
+    lines.add("$throttleLock = Mutex.new");
+    lines.add("$waitedSeconds = 0.0");
+    lines.add("$pausedSeconds = 0.0");
+    lines.add("");
+    if (throttle.isLimitingRegionsInTransition()) {
+      lines.add("def scoot_await_regions_in_transition(admin)");
+      lines.add("    started = Time.now");
+      lines.add("    while (admin.getClusterStatus().getRegionsInTransition().size() > " + throttle.getMaxRegionsInTransition() + ")");
+      lines.add("        sleep " + throttle.getPollMs() / 1000.0);
+      lines.add("    end");
+      lines.add("    waited = Time.now - started");
+      lines.add("    $throttleLock.synchronize { $waitedSeconds += waited }");
+      lines.add("end");
+      lines.add("");
+    }
+    if (throttle.getPauseMs() > 0) {
+      lines.add("def scoot_pause()");
+      lines.add("    started = Time.now");
+      lines.add("    sleep " + throttle.getPauseMs() / 1000.0);
+      lines.add("    paused = Time.now - started");
+      lines.add("    $throttleLock.synchronize { $pausedSeconds += paused }");
+      lines.add("end");
+      lines.add("");
+    }
+    return lines;
+  }
+
+  /**
+   * Hold up the next operation as the throttle says
+   * @param first is it the first operation in its thread (which doesn't pause)
+   */
+  static List<String> beforeOperation(HBaseRolloutThrottle throttle, boolean first) {
+    List<String> lines = new ArrayList<String>();
+    if (throttle == null || !throttle.isThrottling()) return lines;
+    if (!first && throttle.getPauseMs() > 0) lines.add("scoot_pause()");
+    if (throttle.isLimitingRegionsInTransition()) lines.add("scoot_await_regions_in_transition(admin)");
+    return lines;
+  }
+
+  /**
+   * Report how long the script spent throttled
+   */
+  static List<String> report(HBaseRolloutThrottle throttle) {
+    List<String> lines = new ArrayList<String>();
+    if (throttle == null || !throttle.isThrottling()) return lines;
+    lines.add("puts \"Throttled for #{'%.1f' % ($waitedSeconds + $pausedSeconds)} s in all: #{'%.1f' % $waitedSeconds} s waiting for regions in transition, #{'%.1f' % $pausedSeconds} s pausing between operations.\"");
+    return lines;
+  }
+
+}
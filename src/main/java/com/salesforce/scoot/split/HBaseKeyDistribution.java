@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.split;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.ScootException;
+
+/**
+ * How row keys are spread out, as measured from real data, so a table can be pre-split where the data actually 
+ * is rather than evenly over the key space. It's loaded from a file with a line per key, in Bytes.toStringBinary
+ * notation (so binary keys are written with \xNN escapes), which is either:
+ *   a sample of row keys  - just the key on each line; each counts once (and they needn't be sorted or unique), or
+ *   a histogram           - the key, a tab, and the amount of data (rows, bytes, ...) from that key up to the next
+ *                           key in the file.
+ * The two can be mixed. Blank lines and lines starting with # are skipped.
+ */
+public class HBaseKeyDistribution {
+
+  private final byte[][] keys;
+  /** weights[i] is the amount of data from keys[i] up to keys[i + 1] */
+  private final long[] weights;
+  private final long totalWeight;
+
+  private HBaseKeyDistribution(TreeMap<byte[], Long> weightsByKey) {
+    keys = new byte[weightsByKey.size()][];
+    weights = new long[weightsByKey.size()];
+    long total = 0;
+    int i = 0;
+    for (Entry<byte[], Long> e : weightsByKey.entrySet()) {
+      keys[i] = e.getKey();
+      weights[i++] = e.getValue();
+      total += e.getValue();
+    }
+    totalWeight = total;
+  }
+
+  /**
+   * Load the distribution in the given file, keeping only the keys from firstRow (inclusive) up to lastRow 
+   * (exclusive), if they're not null
+   */
+  public static HBaseKeyDistribution load(File file, byte[] firstRow, byte[] lastRow) {
+    TreeMap<byte[], Long> weightsByKey = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+    int lineNumber = 0;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          lineNumber++;
+          if (line.length() == 0 || line.startsWith("#")) continue;
+          int tab = line.lastIndexOf('\t');
+          long weight = 1;
+          if (tab >= 0) {
+            weight = Long.parseLong(line.substring(tab + 1).trim());
+            if (weight < 0) throw new NumberFormatException("negative weight " + weight);
+            line = line.substring(0, tab);
+          }
+          byte[] key = Bytes.toBytesBinary(line);
+          if (firstRow != null && Bytes.compareTo(key, firstRow) < 0) continue;
+          if (lastRow != null && Bytes.compareTo(key, lastRow) >= 0) continue;
+          Long existing = weightsByKey.get(key);
+          weightsByKey.put(key, existing == null ? weight : existing + weight);
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new ScootException("Unable to read key distribution from " + file + ": " + e.getMessage(), e);
+    } catch (NumberFormatException e) {
+      throw new ScootException("Invalid key distribution in " + file + ", line " + lineNumber + ": " + e.getMessage(), e);
+    }
+    return new HBaseKeyDistribution(weightsByKey);
+  }
+
+  /**
+   * How many distinct keys there are
+   */
+  public int getKeyCount() {
+    return keys.length;
+  }
+
+  public long getTotalWeight() {
+    return totalWeight;
+  }
+
+  /**
+   * Get the keys that split the data into the given number of regions as evenly as the distribution allows: the
+   * i-th split is the first key with at least i/regions of the data before it. Regions can only start at keys in
+   * the distribution, so if it doesn't have enough of them (or a few keys hold most of the data) there are fewer 
+   * splits; there are never two on the same key.
+   */
+  public byte[][] getSplitKeys(int regions) {
+    List<byte[]> splits = new ArrayList<byte[]>();
+    long before = 0; // the weight before keys[k]
+    int k = 0;
+    for (int i = 1; i < regions; i++) {
+      // the weight that should be before the i-th split; rounded up, so every region gets its share
+      long target = (totalWeight * i + regions - 1) / regions;
+      while (k < keys.length && before < target) {
+        before += weights[k++];
+      }
+      if (k >= keys.length) break;
+      // the first region starts at the beginning of the key space, not at the first key
+      if (k > 0 && (splits.isEmpty() || splits.get(splits.size() - 1) != keys[k])) {
+        splits.add(keys[k]);
+      }
+    }
+    return splits.toArray(new byte[splits.size()][]);
+  }
+
+}
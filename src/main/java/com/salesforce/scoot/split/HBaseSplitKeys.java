@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.split;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.RegionSplitter.HexStringSplit;
+import org.apache.hadoop.hbase.util.RegionSplitter.SplitAlgorithm;
+import org.apache.hadoop.hbase.util.RegionSplitter.UniformSplit;
+
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Works out the keys a new table is pre-split on, from its values:
+ *   NUMREGIONS    - how many regions to create it with
+ *   SPLITALGO     - how to divide up the key space between them: HexStringSplit (for row keys that start with 
+ *                   hex digits, like hashes or UUIDs), UniformSplit (for row keys whose bytes are evenly spread; 
+ *                   the default), or the full class name of any other RegionSplitter.SplitAlgorithm
+ *   SPLITFIRSTROW - the start of the key space to divide up, in the algorithm's own notation (hex digits for 
+ *                   HexStringSplit, Bytes.toStringBinary escapes for UniformSplit); the algorithm's default if missing
+ *   SPLITLASTROW  - likewise, the end of the key space
+ *   SPLITSAMPLES  - instead of an algorithm, the path of a file of sampled row keys or a key histogram (see 
+ *                   HBaseKeyDistribution), to split where the data is; only the keys from SPLITFIRSTROW up to 
+ *                   SPLITLASTROW (in Bytes.toStringBinary notation) are used, if they're given. In scoot XML, a 
+ *                   relative path is relative to the schema file.
+ *   SALTBUCKETS   - for tables whose row keys start with a salt (or hash bucket) prefix: how many buckets there
+ *                   are. The table is split at the start of each bucket, and NUMREGIONS (if given) has to be a
+ *                   multiple of it: each bucket is split into NUMREGIONS / SALTBUCKETS regions, on the keys the
+ *                   algorithm gives for the rest of the row key, after the prefix.
+ *   SALTWIDTH     - how many bytes the salt prefix is (1 to 4; 1 if missing). Bucket b's rows start with b, as a 
+ *                   big-endian number that wide.
+ *   SPLITKEYS     - or, instead of any of those, the split keys themselves, in Bytes.toStringBinary notation, 
+ *                   separated by commas (with any commas in the keys written as \x2C); see toString
+ * The algorithms are the same ones HBase's RegionSplitter and shell use, so the keys are the same as theirs.
+ * None of these values are stored on the cluster (see HBaseSchemaAttribute.storedOnCluster).
+ */
+public class HBaseSplitKeys {
+
+  private static final Map<String, Class<? extends SplitAlgorithm>> builtInAlgorithms = new HashMap<String, Class<? extends SplitAlgorithm>>();
+  static {
+    builtInAlgorithms.put("HexStringSplit", HexStringSplit.class);
+    builtInAlgorithms.put("UniformSplit", UniformSplit.class);
+  }
+  public static final String DEFAULT_ALGORITHM = "UniformSplit";
+
+  /**
+   * Get the named split algorithm: one of the built in ones, or the full name of a class with a no-arg constructor
+   */
+  public static SplitAlgorithm getAlgorithm(String name) {
+    Class<?> algorithmClass = builtInAlgorithms.get(name);
+    try {
+      if (algorithmClass == null) {
+        algorithmClass = Class.forName(name);
+      }
+      if (!SplitAlgorithm.class.isAssignableFrom(algorithmClass)) {
+        throw new ScootException("Split algorithm " + name + " doesn't implement " + SplitAlgorithm.class.getName());
+      }
+      return (SplitAlgorithm)algorithmClass.newInstance();
+    } catch (ClassNotFoundException e) {
+      throw new ScootException("Unknown split algorithm " + name + "; use one of " + builtInAlgorithms.keySet() + ", or the name of a class that implements " + SplitAlgorithm.class.getName(), e);
+    } catch (InstantiationException e) {
+      throw new ScootException("Unable to create split algorithm " + name + ": " + e.getMessage(), e);
+    } catch (IllegalAccessException e) {
+      throw new ScootException("Unable to create split algorithm " + name + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Get the keys the table should be pre-split on when it's created, or null if it isn't pre-split (because it 
+   * doesn't say how many regions to create, or there's only one)
+   */
+  public static byte[][] getSplitKeys(HTableDescriptor table) {
+    if (table.getValue(HBaseSchemaAttribute.SPLITKEYS.name()) != null) {
+      return getDeclaredSplitKeys(table);
+    }
+    if (table.getValue(HBaseSchemaAttribute.SALTBUCKETS.name()) != null) {
+      return getSaltedSplitKeys(table);
+    }
+    int regions = getPositiveInt(table, HBaseSchemaAttribute.NUMREGIONS, 1, "number of regions");
+    if (regions == 1) return null;
+    String samples = table.getValue(HBaseSchemaAttribute.SPLITSAMPLES.name());
+    if (samples != null) {
+      return getSampledSplitKeys(table, regions, samples);
+    }
+    String algorithmName = table.getValue(HBaseSchemaAttribute.SPLITALGO.name());
+    try {
+      return getSplitKeys(getAlgorithm(algorithmName == null ? DEFAULT_ALGORITHM : algorithmName), regions,
+          table.getValue(HBaseSchemaAttribute.SPLITFIRSTROW.name()), table.getValue(HBaseSchemaAttribute.SPLITLASTROW.name()));
+    } catch (ScootException e) {
+      throw new ScootException("Unable to pre-split table " + table.getNameAsString() + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Get the split keys the table lists
+   */
+  private static byte[][] getDeclaredSplitKeys(HTableDescriptor table) {
+    for (HBaseSchemaAttribute other : new HBaseSchemaAttribute[] {HBaseSchemaAttribute.SPLITALGO, HBaseSchemaAttribute.SPLITSAMPLES, HBaseSchemaAttribute.SALTBUCKETS}) {
+      if (table.getValue(other.name()) != null) {
+        throw new ScootException("Table " + table.getNameAsString() + " lists its split keys, so it can't have " + other.name() + " as well");
+      }
+    }
+    byte[][] keys = fromString(table.getValue(HBaseSchemaAttribute.SPLITKEYS.name()));
+    int regions = getPositiveInt(table, HBaseSchemaAttribute.NUMREGIONS, keys.length + 1, "number of regions");
+    if (regions != keys.length + 1) {
+      throw new ScootException("Table " + table.getNameAsString() + " has " + regions + " regions, but lists " + keys.length + " split keys");
+    }
+    for (int i = 1; i < keys.length; i++) {
+      if (Bytes.compareTo(keys[i - 1], keys[i]) >= 0) {
+        throw new ScootException("The split keys of table " + table.getNameAsString() + " aren't in ascending order: " 
+            + Bytes.toStringBinary(keys[i - 1]) + " comes before " + Bytes.toStringBinary(keys[i]));
+      }
+    }
+    return keys.length == 0 ? null : keys;
+  }
+
+  /**
+   * Write split keys the way SPLITKEYS lists them. Bytes.toStringBinary leaves a backslash as it is, which 
+   * Bytes.toBytesBinary would read as the start of an escape, so it's escaped here (as is a comma, which separates keys).
+   */
+  public static String toString(byte[][] keys) {
+    StringBuilder sb = new StringBuilder();
+    for (byte[] key : keys) {
+      if (sb.length() > 0) sb.append(',');
+      for (int i = 0; i < key.length; i++) {
+        sb.append(key[i] == '\\' ? "\\x5C" : key[i] == ',' ? "\\x2C" : Bytes.toStringBinary(key, i, 1));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Read split keys listed the way SPLITKEYS lists them
+   */
+  public static byte[][] fromString(String keys) {
+    if (keys.trim().length() == 0) return new byte[0][];
+    String[] listed = keys.split(",");
+    byte[][] result = new byte[listed.length][];
+    for (int i = 0; i < listed.length; i++) {
+      if (listed[i].length() == 0) throw new ScootException("Empty split key in " + keys);
+      result[i] = Bytes.toBytesBinary(listed[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Get a value of the table that has to be a positive number, or the default if it's missing
+   */
+  private static int getPositiveInt(HTableDescriptor table, HBaseSchemaAttribute attribute, int defaultValue, String description) {
+    String value = table.getValue(attribute.name());
+    if (value == null) return defaultValue;
+    int i;
+    try {
+      i = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new ScootException("Invalid " + description + " for table " + table.getNameAsString() + ": " + value, e);
+    }
+    if (i < 1) {
+      throw new ScootException("Invalid " + description + " for table " + table.getNameAsString() + ": " + value);
+    }
+    return i;
+  }
+
+  /**
+   * Split a salted table at the start of every bucket, and within each bucket, as its algorithm says
+   */
+  private static byte[][] getSaltedSplitKeys(HTableDescriptor table) {
+    int buckets = getPositiveInt(table, HBaseSchemaAttribute.SALTBUCKETS, 1, "number of salt buckets");
+    int width = getPositiveInt(table, HBaseSchemaAttribute.SALTWIDTH, 1, "salt width");
+    if (width > 4 || (width < 4 && buckets > 1 << (8 * width))) {
+      throw new ScootException("Invalid salt for table " + table.getNameAsString() + ": " + buckets + " buckets don't fit in " + width + " byte(s)");
+    }
+    int regions = getPositiveInt(table, HBaseSchemaAttribute.NUMREGIONS, buckets, "number of regions");
+    if (regions % buckets != 0) {
+      throw new ScootException("Unable to pre-split table " + table.getNameAsString() + ": its " + regions 
+          + " regions can't be divided evenly between its " + buckets + " salt buckets");
+    }
+    if (table.getValue(HBaseSchemaAttribute.SPLITSAMPLES.name()) != null) {
+      throw new ScootException("Table " + table.getNameAsString() + " can be pre-split by salt bucket or from sampled keys, but not both");
+    }
+    if (regions == 1) return null;
+    byte[][] withinBucket = new byte[0][];
+    if (regions > buckets) {
+      String algorithmName = table.getValue(HBaseSchemaAttribute.SPLITALGO.name());
+      try {
+        withinBucket = getSplitKeys(getAlgorithm(algorithmName == null ? DEFAULT_ALGORITHM : algorithmName), regions / buckets,
+            table.getValue(HBaseSchemaAttribute.SPLITFIRSTROW.name()), table.getValue(HBaseSchemaAttribute.SPLITLASTROW.name()));
+      } catch (ScootException e) {
+        throw new ScootException("Unable to pre-split table " + table.getNameAsString() + ": " + e.getMessage(), e);
+      }
+    }
+    byte[][] keys = new byte[regions - 1][];
+    int k = 0;
+    for (int b = 0; b < buckets; b++) {
+      byte[] prefix = Bytes.tail(Bytes.toBytes(b), width);
+      // the first bucket starts at the start of the table
+      if (b > 0) keys[k++] = prefix;
+      for (byte[] key : withinBucket) {
+        keys[k++] = Bytes.add(prefix, key);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Split the table where its sampled keys say the data is
+   */
+  private static byte[][] getSampledSplitKeys(HTableDescriptor table, int regions, String samples) {
+    String algorithmName = table.getValue(HBaseSchemaAttribute.SPLITALGO.name());
+    if (algorithmName != null) {
+      throw new ScootException("Table " + table.getNameAsString() + " can be pre-split with a split algorithm (" + algorithmName 
+          + ") or from sampled keys (" + samples + "), but not both");
+    }
+    String firstRow = table.getValue(HBaseSchemaAttribute.SPLITFIRSTROW.name());
+    String lastRow = table.getValue(HBaseSchemaAttribute.SPLITLASTROW.name());
+    HBaseKeyDistribution distribution = HBaseKeyDistribution.load(new File(samples), 
+        firstRow == null ? null : Bytes.toBytesBinary(firstRow), lastRow == null ? null : Bytes.toBytesBinary(lastRow));
+    byte[][] keys = distribution.getSplitKeys(regions);
+    if (keys.length < regions - 1) {
+      throw new ScootException("Unable to pre-split table " + table.getNameAsString() + " into " + regions + " regions from the " 
+          + distribution.getKeyCount() + " distinct key(s) in " + samples + ": they only have room for " + (keys.length + 1)
+          + " (use more samples, or fewer regions)");
+    }
+    return keys;
+  }
+
+  /**
+   * Split the key space from firstRow to lastRow (or the algorithm's defaults, if they're null) into the given 
+   * number of regions, returning the keys between them
+   */
+  public static byte[][] getSplitKeys(SplitAlgorithm algorithm, int regions, String firstRow, String lastRow) {
+    byte[][] keys;
+    try {
+      if (firstRow != null) algorithm.setFirstRow(firstRow);
+      if (lastRow != null) algorithm.setLastRow(lastRow);
+      keys = algorithm.split(regions);
+    } catch (RuntimeException e) {
+      // the algorithms check their own arguments (e.g. that the first row is before the last)
+      throw new ScootException("Unable to split into " + regions + " regions with " + algorithm + ": " + e.getMessage(), e);
+    }
+    for (int i = 1; i < keys.length; i++) {
+      if (Bytes.compareTo(keys[i - 1], keys[i]) >= 0) {
+        throw new ScootException("Split keys from " + algorithm + " aren't in ascending order: " 
+            + Bytes.toStringBinary(keys[i - 1]) + " comes before " + Bytes.toStringBinary(keys[i]));
+      }
+    }
+    return keys;
+  }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.salesforce.scoot.parser.HBaseClusterSchemaFetcher;
+import com.salesforce.scoot.parser.HBaseClusterSnapshotParser;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaParser;
+
+/**
+ * Tests fetching schema from a live cluster, using an in-process mini cluster.
+ */
+public class ClusterSchemaFetchTest {
+
+  private static final int TABLE_COUNT = 25;
+  private static HBaseTestingUtility util;
+
+  @BeforeClass
+  public static void startCluster() throws Exception {
+    util = new HBaseTestingUtility();
+    util.startMiniCluster();
+    createTables(util.getHBaseAdmin(), TABLE_COUNT);
+  }
+
+  @AfterClass
+  public static void stopCluster() throws Exception {
+    util.shutdownMiniCluster();
+  }
+
+  /**
+   * Create tables named fetchTable0000, fetchTable0001, etc.
+   */
+  static void createTables(HBaseAdmin admin, int tableCount) throws Exception {
+    for (int x = 0; x < tableCount; x++) {
+      HTableDescriptor t = new HTableDescriptor(String.format("fetchTable%04d", x));
+      t.addFamily(new HColumnDescriptor("cf"));
+      admin.createTable(t);
+    }
+  }
+
+  /**
+   * With small batches and few threads, every table still comes back exactly once, in name order
+   */
+  @Test
+  public void testFetchAllInBatches() throws Exception {
+    Configuration config = new Configuration(util.getConfiguration());
+    config.setInt(HBaseClusterSchemaFetcher.THREADS_KEY, 3);
+    config.setInt(HBaseClusterSchemaFetcher.BATCH_SIZE_KEY, 4);
+    List<HTableDescriptor> tables = new HBaseClusterSchemaFetcher(config, HBaseTableFilter.ALL).fetch();
+    assertEquals(TABLE_COUNT, tables.size());
+    for (int x = 0; x < TABLE_COUNT; x++) {
+      assertEquals(String.format("fetchTable%04d", x), tables.get(x).getNameAsString());
+    }
+  }
+
+  /**
+   * Only the tables that match the filter are fetched
+   */
+  @Test
+  public void testFetchFiltered() throws Exception {
+    HBaseTableFilter filter = new HBaseTableFilter(new String[] {"fetchTable000."}, new String[] {"fetchTable0003"});
+    List<HTableDescriptor> tables = new HBaseClusterSchemaFetcher(util.getConfiguration(), filter).fetch();
+    assertEquals(9, tables.size());
+    assertEquals("fetchTable0000", tables.get(0).getNameAsString());
+    assertEquals("fetchTable0004", tables.get(3).getNameAsString());
+    assertEquals(0, new HBaseClusterSchemaFetcher(util.getConfiguration(), new HBaseTableFilter(new String[] {"nothing"}, null)).fetch().size());
+  }
+
+  /**
+   * Calls that can't finish within the timeout fail (after the configured retries) rather than hanging
+   */
+  @Test
+  public void testFetchTimeout() throws Exception {
+    Configuration config = new Configuration(util.getConfiguration());
+    config.setLong(HBaseClusterSchemaFetcher.TIMEOUT_KEY, 0);
+    config.setInt(HBaseClusterSchemaFetcher.RETRIES_KEY, 1);
+    config.setLong(HBaseClusterSchemaFetcher.BACKOFF_KEY, 1);
+    try {
+      new HBaseClusterSchemaFetcher(config, HBaseTableFilter.ALL).fetch();
+      fail("Expected the fetch to time out");
+    } catch (IOException e) {
+      assertEquals("Unable to list table names after 2 attempt(s): timed out after 0 ms", e.getMessage());
+    }
+  }
+
+  /**
+   * The whole fetch of the descriptors is bounded too, whether the calls are queued or running
+   */
+  @Test
+  public void testFetchTotalTimeout() throws Exception {
+    Configuration config = new Configuration(util.getConfiguration());
+    config.setInt(HBaseClusterSchemaFetcher.THREADS_KEY, 1);
+    config.setInt(HBaseClusterSchemaFetcher.BATCH_SIZE_KEY, 1);
+    config.setLong(HBaseClusterSchemaFetcher.TOTAL_TIMEOUT_KEY, 0);
+    try {
+      new HBaseClusterSchemaFetcher(config, HBaseTableFilter.ALL).fetch();
+      fail("Expected the fetch to time out");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to fetch table descriptors (batch "));
+      assertTrue(e.getMessage(), e.getMessage().endsWith("after 0 ms (" + HBaseClusterSchemaFetcher.TOTAL_TIMEOUT_KEY + ")"));
+    }
+  }
+
+  /**
+   * A snapshot holds the cluster's tables and ID; once it's older than the max age, the cluster is read instead
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    File file = File.createTempFile("scoot_snapshot_test", HBaseCompiledSchemaParser.FILE_EXTENSION);
+    try {
+      Configuration config = util.getConfiguration();
+      HBaseTableFilter filter = new HBaseTableFilter(new String[] {"fetchTable.*", "snapshotTable"}, null);
+      HBaseClusterSnapshotParser.writeSnapshot(config.get("hbase.zookeeper.quorum"), config, filter, file);
+      HBaseClusterSnapshotParser parser = new HBaseClusterSnapshotParser();
+      parser.setConfiguration(config);
+      parser.setTableFilter(filter);
+      parser.setResourceToParse(file.getPath());
+      assertEquals(TABLE_COUNT, parser.parse().getTables().size());
+      assertEquals(util.getHBaseAdmin().getClusterStatus().getClusterId(), parser.getProperties().get("clusterId"));
+
+      // a change on the cluster shows up once the snapshot is stale
+      HTableDescriptor t = new HTableDescriptor("snapshotTable");
+      t.addFamily(new HColumnDescriptor("cf"));
+      util.getHBaseAdmin().createTable(t);
+      assertEquals(TABLE_COUNT, parser.parse().getTables().size());
+      assertFalse(parser.isStale());
+      Configuration staleConfig = new Configuration(config);
+      staleConfig.setLong(HBaseClusterSnapshotParser.MAX_AGE_KEY, 0);
+      Thread.sleep(10);
+      parser.setConfiguration(staleConfig);
+      assertEquals(TABLE_COUNT + 1, parser.parse().getTables().size());
+      assertTrue(parser.isStale());
+      util.getHBaseAdmin().disableTable("snapshotTable");
+      util.getHBaseAdmin().deleteTable("snapshotTable");
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.executor.HBaseSchemaPatchExecutor;
+import com.salesforce.scoot.parser.HBaseClusterParser;
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+
+/**
+ * Tests applying schema changes directly to a cluster, using an in-process mini cluster.
+ */
+public class SchemaPatchExecutorTest {
+
+  private static HBaseTestingUtility util;
+
+  @BeforeClass
+  public static void startCluster() throws Exception {
+    util = new HBaseTestingUtility();
+    util.getConfiguration().setBoolean(HBaseRubySchemaPatchScripter.ONLINE_SCHEMA_UPDATE_KEY, true);
+    util.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void stopCluster() throws Exception {
+    util.shutdownMiniCluster();
+  }
+
+  /**
+   * Get the schema of the tables on the cluster whose names start with the prefix
+   */
+  private static HBaseSchema fetch(String prefix) {
+    HBaseClusterParser parser = new HBaseClusterParser();
+    parser.setConfiguration(util.getConfiguration());
+    parser.setTableFilter(new HBaseTableFilter(new String[] {prefix + ".*"}, null));
+    parser.setResourceToParse(util.getConfiguration().get("hbase.zookeeper.quorum"));
+    return parser.parse();
+  }
+
+  private static HTableDescriptor table(String name, String... families) {
+    HTableDescriptor t = new HTableDescriptor(name);
+    for (String family : families) {
+      t.addFamily(new HColumnDescriptor(family));
+    }
+    return t;
+  }
+
+  /**
+   * Tables are created (pre-split, if asked), altered (both offline and online) and dropped, throttled, after 
+   * which the cluster matches the "to" schema
+   */
+  @Test
+  public void testApply() throws Exception {
+    HBaseAdmin admin = util.getHBaseAdmin();
+    admin.createTable(table("applyAlterOffline", "cf1", "cf2"));
+    admin.createTable(table("applyAlterOnline", "cf1"));
+    admin.createTable(table("applyDrop", "cf1"));
+    HBaseSchema from = fetch("apply");
+
+    HBaseSchema to = new HBaseSchema();
+    HTableDescriptor created = table("applyCreate", "cf1");
+    created.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "4");
+    to.addTable(created);
+    HTableDescriptor offline = new HTableDescriptor(from.getTablesByName().get("applyAlterOffline"));
+    offline.removeFamily(Bytes.toBytes("cf2")); // needs the table disabled
+    offline.getFamily(Bytes.toBytes("cf1")).setMaxVersions(7);
+    to.addTable(offline);
+    HTableDescriptor online = new HTableDescriptor(from.getTablesByName().get("applyAlterOnline"));
+    online.getFamily(Bytes.toBytes("cf1")).setMaxVersions(5);
+    online.addFamily(new HColumnDescriptor("cf2"));
+    online.setValue("custom", "value");
+    to.addTable(online);
+
+    Configuration config = new Configuration(util.getConfiguration());
+    config.setInt(HBaseSchemaPatchExecutor.THREADS_KEY, 2);
+    config.setInt(HBaseRolloutThrottle.MAX_REGIONS_IN_TRANSITION_KEY, 100);
+    config.setLong(HBaseRolloutThrottle.PAUSE_KEY, 10);
+    HBaseSchemaPatchExecutor executor = new HBaseSchemaPatchExecutor(new HBaseSchemaDiff(from, to), config);
+    executor.apply();
+
+    assertEquals(Arrays.asList("applyAlterOffline", "applyAlterOnline", "applyCreate", "applyDrop"), 
+        Arrays.asList(executor.getTimings().keySet().toArray()));
+    // 4 operations on 2 threads: each thread pauses between its operations
+    assertTrue(executor.getThrottle().getPausedMs() >= 20);
+    assertEquals(4, admin.getTableRegions(Bytes.toBytes("applyCreate")).size());
+    assertFalse(admin.tableExists("applyDrop"));
+    assertTrue(admin.isTableEnabled("applyAlterOffline"));
+    assertEquals(7, admin.getTableDescriptor(Bytes.toBytes("applyAlterOffline")).getFamily(Bytes.toBytes("cf1")).getMaxVersions());
+    assertEquals("value", admin.getTableDescriptor(Bytes.toBytes("applyAlterOnline")).getValue("custom"));
+    HBaseSchemaDiff after = new HBaseSchemaDiff(fetch("apply"), to);
+    assertEquals(3, after.getChangeCount(ChangeType.IGNORE));
+    assertEquals(3, after.getTableChanges().size());
+  }
+
+  /**
+   * A difference the diff suppresses as equivalent (compression "none" for the cluster's "NONE") isn't written by
+   * the alter, and doesn't fail post-validation either
+   */
+  @Test
+  public void testEquivalentValues() throws Exception {
+    util.getHBaseAdmin().createTable(table("equivalentAlter", "cf1"));
+    HBaseSchema from = fetch("equivalent");
+    HTableDescriptor t = new HTableDescriptor(from.getTablesByName().get("equivalentAlter"));
+    t.getFamily(Bytes.toBytes("cf1")).setValue(HColumnDescriptor.COMPRESSION, "none");
+    t.getFamily(Bytes.toBytes("cf1")).setMaxVersions(5);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(t);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    assertEquals("[equivalentAlter:cf1:COMPRESSION:NONE->none;]", 
+        diff.getTableChangesByType(ChangeType.ALTER).get(0).suppressedChanges.toString());
+
+    new HBaseSchemaPatchExecutor(diff, util.getConfiguration()).apply();
+
+    HColumnDescriptor cf = util.getHBaseAdmin().getTableDescriptor(Bytes.toBytes("equivalentAlter")).getFamily(Bytes.toBytes("cf1"));
+    assertEquals(5, cf.getMaxVersions());
+    assertEquals("NONE", cf.getValue(HColumnDescriptor.COMPRESSION));
+  }
+
+  /**
+   * If pre-validation fails, nothing is changed
+   */
+  @Test
+  public void testPreValidationFailure() throws Exception {
+    util.getHBaseAdmin().createTable(table("failExists", "cf1"));
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(table("failExists", "cf1"));
+    to.addTable(table("failNew", "cf1"));
+    try {
+      new HBaseSchemaPatchExecutor(new HBaseSchemaDiff(new HBaseSchema(), to), util.getConfiguration()).apply();
+      fail("Expected pre-validation to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Table 'failExists' should not already exist, but it does."));
+    }
+    assertFalse(util.getHBaseAdmin().tableExists("failNew"));
+  }
+
+}
@@ -0,0 +1,482 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.salesforce.scoot.parser.CompactXMLSerializer;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaParser;
+import com.salesforce.scoot.parser.HBaseClusterSchemaFetcher;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaWriter;
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+import com.salesforce.scoot.parser.HBaseScootStreamingXMLParser;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+
+/**
+ * Scale benchmarks for scoot. These aren't run as part of the unit tests (they take a while, and
+ * the numbers only mean something on a quiet machine); run them by hand with the test classpath:
+ * 
+ *   java -Xmx2g -cp {test classpath} com.salesforce.scoot.ScootBenchmark parse 10000 50000
+ * 
+ * Available benchmarks:
+ *   parse      - DOM vs. streaming scoot xml parsing: time and peak heap
+ *   serialize  - table full schema serialization: the original Transformer path vs. CompactXMLSerializer
+ *   compiled   - loading a compiled schema file vs. parsing the xml it was compiled from
+ *   diff       - diffing two schemas that differ in one table in every 2000 (so 10 of them at 20k tables): the
+ *                first diff, which computes the table fingerprints, and then repeated diffs of the same schemas,
+ *                on one thread and on as many threads as there are cores
+ *   compare    - diffing two schemas in which every table has one small change (so every table is compared in 
+ *                depth), and then scripting the diff: time and bytes allocated per table
+ *   script     - peak heap while scripting a diff in which every table has changed: generating the script as a 
+ *                string, vs. writing it to a file with its sections kept in temp files
+ *   retain     - heap held on to by a diff of two schemas that differ in one table in every 1000: keeping every 
+ *                change, keeping only counts of the unchanged tables, and scripting the changes as they're visited
+ *   fetch      - fetching schema from a mini cluster: a single listTables() call vs. HBaseClusterSchemaFetcher
+ *                (table counts should be increasing, since tables are added to the same cluster as it goes)
+ * 
+ * The first argument names the benchmark; the rest are the schema sizes (in tables) to run it at.
+ */
+public class ScootBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("usage: ScootBenchmark {benchmark} {table count} [{table count} ...]");
+      return;
+    }
+    try {
+      runBenchmarks(args);
+    } finally {
+      if (cluster != null) cluster.shutdownMiniCluster();
+    }
+  }
+
+  private static void runBenchmarks(String[] args) throws Exception {
+    for (int x = 1; x < args.length; x++) {
+      int tableCount = Integer.parseInt(args[x]);
+      if ("parse".equals(args[0])) {
+        benchmarkParse(tableCount);
+      } else if ("serialize".equals(args[0])) {
+        benchmarkSerialize(tableCount);
+      } else if ("compiled".equals(args[0])) {
+        benchmarkCompiled(tableCount);
+      } else if ("diff".equals(args[0])) {
+        benchmarkDiff(tableCount);
+      } else if ("compare".equals(args[0])) {
+        benchmarkCompare(tableCount);
+      } else if ("script".equals(args[0])) {
+        benchmarkScript(tableCount);
+      } else if ("retain".equals(args[0])) {
+        benchmarkRetain(tableCount);
+      } else if ("fetch".equals(args[0])) {
+        benchmarkFetch(tableCount);
+      } else {
+        throw new IllegalArgumentException("Unknown benchmark: " + args[0]);
+      }
+    }
+  }
+
+  /**
+   * Parse a generated scoot xml file with both the DOM and the streaming parser, reporting
+   * parse time and peak heap for each.
+   */
+  static void benchmarkParse(int tableCount) throws Exception {
+    File schemaFile = File.createTempFile("scoot_benchmark_", ".xml");
+    try {
+      writeGeneratedSchema(schemaFile, tableCount, 0);
+      System.out.println("Parsing " + tableCount + " tables (" + (schemaFile.length() / 1024) + " KB):");
+      // once each to warm up, then measure
+      for (int run = 0; run < 2; run++) {
+        measureParse(new HBaseScootXMLParser(), schemaFile, run > 0);
+        measureParse(new HBaseScootStreamingXMLParser(), schemaFile, run > 0);
+      }
+    } finally {
+      schemaFile.delete();
+    }
+  }
+
+  /**
+   * Load a compiled schema and parse the xml it was compiled from, reporting time and peak heap for each.
+   * Every table is looked up by name, so the compiled schema's lazy decoding is included in its time.
+   */
+  static void benchmarkCompiled(int tableCount) throws Exception {
+    File schemaFile = File.createTempFile("scoot_benchmark_", ".xml");
+    File compiledFile = File.createTempFile("scoot_benchmark_", HBaseCompiledSchemaParser.FILE_EXTENSION);
+    try {
+      writeGeneratedSchema(schemaFile, tableCount, 0);
+      HBaseScootStreamingXMLParser parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(schemaFile.getAbsolutePath());
+      HBaseCompiledSchemaWriter.write(parser.parse(), Collections.<String, String>emptyMap(), compiledFile);
+      System.out.println("Loading " + tableCount + " tables (" + (schemaFile.length() / 1024) + " KB xml, " 
+          + (compiledFile.length() / 1024) + " KB compiled):");
+      for (int run = 0; run < 2; run++) {
+        measureParse(new HBaseScootStreamingXMLParser(), schemaFile, run > 0);
+        measureParse(new HBaseCompiledSchemaParser(), compiledFile, run > 0);
+      }
+    } finally {
+      schemaFile.delete();
+      compiledFile.delete();
+    }
+  }
+
+  /**
+   * Diff two generated schemas that differ in a few tables, reporting the time and the changes found
+   */
+  static void benchmarkDiff(int tableCount) throws Exception {
+    File fromFile = File.createTempFile("scoot_benchmark_", ".xml");
+    File toFile = File.createTempFile("scoot_benchmark_", ".xml");
+    try {
+      writeGeneratedSchema(fromFile, tableCount, 0);
+      writeGeneratedSchema(toFile, tableCount, 2000);
+      int cores = Runtime.getRuntime().availableProcessors();
+      System.out.println("Diffing " + tableCount + " tables:");
+      for (int threads : cores > 1 ? new int[] {1, cores} : new int[] {1}) {
+        // fresh schemas each time, so the first diff has to compute the fingerprints
+        HBaseScootStreamingXMLParser parser = new HBaseScootStreamingXMLParser();
+        parser.setResourceToParse(fromFile.getAbsolutePath());
+        HBaseSchema from = parser.parse();
+        parser.setResourceToParse(toFile.getAbsolutePath());
+        HBaseSchema to = parser.parse();
+        // timings of a single diff are noisy (mostly GC), so report the best and the median of several
+        long[] elapsedMs = new long[12];
+        HBaseSchemaDiff diff = null;
+        for (int run = 0; run < elapsedMs.length; run++) {
+          long start = System.nanoTime();
+          diff = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, threads);
+          elapsedMs[run] = (System.nanoTime() - start) / 1000000;
+        }
+        long[] measured = Arrays.copyOfRange(elapsedMs, 2, elapsedMs.length);
+        Arrays.sort(measured);
+        String label = threads + " thread(s), ";
+        System.out.println(String.format("  %-32s %8d ms (%d altered, %d unchanged)", label + "first", elapsedMs[0], 
+            diff.getTableChangesByType(HBaseSchemaDiff.ChangeType.ALTER).size(), diff.getTableChangesByType(HBaseSchemaDiff.ChangeType.IGNORE).size()));
+        System.out.println(String.format("  %-32s %8d ms best, %d ms median", label + "repeated", measured[0], measured[measured.length / 2]));
+      }
+    } finally {
+      fromFile.delete();
+      toFile.delete();
+    }
+  }
+
+  /**
+   * Diff (on one thread) and script two schemas in which every table differs, reporting time and allocation
+   */
+  static void benchmarkCompare(int tableCount) throws Exception {
+    File fromFile = File.createTempFile("scoot_benchmark_", ".xml");
+    try {
+      writeGeneratedSchema(fromFile, tableCount, 0);
+      HBaseScootStreamingXMLParser parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(fromFile.getAbsolutePath());
+      HBaseSchema from = parser.parse();
+      // change one small value in every table, so what's measured is mostly the comparison, not the changes it finds
+      HBaseSchema to = new HBaseSchema();
+      for (HTableDescriptor t : from.getTables()) {
+        HTableDescriptor changed = new HTableDescriptor(t);
+        changed.getFamily(Bytes.toBytes("cf0")).setMaxVersions(4);
+        to.addTable(changed);
+      }
+      System.out.println("Comparing " + tableCount + " changed tables:");
+      for (int run = 0; run < 5; run++) {
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1);
+        long diffMs = (System.nanoTime() - start) / 1000000;
+        long diffAllocated = getAllocatedBytes() - allocated;
+        allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+        long scriptMs = (System.nanoTime() - start) / 1000000;
+        long scriptAllocated = getAllocatedBytes() - allocated;
+        if (run > 1) {
+          System.out.println(String.format("  %-32s %8d ms %8d bytes/table (%d altered)", "HBaseSchemaDiff", 
+              diffMs, diffAllocated / tableCount, diff.getTableChangesByType(HBaseSchemaDiff.ChangeType.ALTER).size()));
+          System.out.println(String.format("  %-32s %8d ms %8d bytes/table (%d KB script)", "HBaseRubySchemaPatchScripter", 
+              scriptMs, scriptAllocated / tableCount, script.length() / 1024));
+        }
+      }
+    } finally {
+      fromFile.delete();
+    }
+  }
+
+  /**
+   * Script a diff in which every table has changed, reporting the peak heap over and above the diff itself
+   */
+  static void benchmarkScript(int tableCount) throws Exception {
+    File fromFile = File.createTempFile("scoot_benchmark_", ".xml");
+    File toFile = File.createTempFile("scoot_benchmark_", ".xml");
+    File scriptFile = File.createTempFile("scoot_benchmark_", ".rb");
+    try {
+      writeGeneratedSchema(fromFile, tableCount, 0);
+      writeGeneratedSchema(toFile, tableCount, 1);
+      HBaseScootStreamingXMLParser parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(fromFile.getAbsolutePath());
+      HBaseSchema from = parser.parse();
+      parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(toFile.getAbsolutePath());
+      HBaseSchema to = parser.parse();
+      HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1);
+      System.out.println("Scripting " + tableCount + " changed tables:");
+      for (int run = 0; run < 3; run++) {
+        long before = getUsedHeap();
+        resetPeakHeap();
+        long start = System.currentTimeMillis();
+        String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+        long ms = System.currentTimeMillis() - start;
+        System.out.println(String.format("  %-32s %8d ms %8d MB peak heap (%d KB script)", "generateScript", 
+            ms, (getPeakHeap() - before) >> 20, script.length() >> 10));
+        script = null;
+
+        before = getUsedHeap();
+        resetPeakHeap();
+        start = System.currentTimeMillis();
+        HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff);
+        scripter.setSectionDirectory(scriptFile.getParentFile());
+        scripter.writeScript(scriptFile);
+        ms = System.currentTimeMillis() - start;
+        System.out.println(String.format("  %-32s %8d ms %8d MB peak heap (%d KB script)", "writeScript", 
+            ms, (getPeakHeap() - before) >> 20, scriptFile.length() >> 10));
+      }
+    } finally {
+      fromFile.delete();
+      toFile.delete();
+      scriptFile.delete();
+    }
+  }
+
+  /**
+   * Diff two schemas three ways, reporting the heap held by each result (measured after a full gc, while the
+   * result is still reachable) on top of the schemas themselves
+   */
+  static void benchmarkRetain(int tableCount) throws Exception {
+    File fromFile = File.createTempFile("scoot_benchmark_", ".xml");
+    File toFile = File.createTempFile("scoot_benchmark_", ".xml");
+    try {
+      writeGeneratedSchema(fromFile, tableCount, 0);
+      writeGeneratedSchema(toFile, tableCount, 1000);
+      HBaseScootStreamingXMLParser parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(fromFile.getAbsolutePath());
+      HBaseSchema from = parser.parse();
+      parser = new HBaseScootStreamingXMLParser();
+      parser.setResourceToParse(toFile.getAbsolutePath());
+      HBaseSchema to = parser.parse();
+      new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1); // compute the fingerprints, which the schemas keep
+      System.out.println("Diffing " + tableCount + " tables:");
+      for (int run = 0; run < 3; run++) {
+        long before = getUsedHeap();
+        long start = System.currentTimeMillis();
+        HBaseSchemaDiff kept = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1);
+        long ms = System.currentTimeMillis() - start;
+        System.out.println(String.format("  %-32s %8d ms %10d bytes held", "keeping all changes", ms, getUsedHeap() - before));
+        kept = null;
+
+        before = getUsedHeap();
+        start = System.currentTimeMillis();
+        HBaseSchemaDiff counted = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1, false);
+        ms = System.currentTimeMillis() - start;
+        System.out.println(String.format("  %-32s %8d ms %10d bytes held", "counting unchanged tables", ms, getUsedHeap() - before));
+        counted = null;
+
+        before = getUsedHeap();
+        start = System.currentTimeMillis();
+        HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter();
+        scripter.setListingIgnoredTables(false);
+        new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1, scripter);
+        ms = System.currentTimeMillis() - start;
+        System.out.println(String.format("  %-32s %8d ms %10d bytes held (by the scripter)", "visiting (scripting)", ms, getUsedHeap() - before));
+        scripter = null;
+      }
+    } finally {
+      fromFile.delete();
+      toFile.delete();
+    }
+  }
+
+  private static long getUsedHeap() {
+    System.gc();
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Bytes allocated so far by this thread
+   */
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static HBaseTestingUtility cluster;
+
+  /**
+   * Fetch the schema of a mini cluster with the given number of tables, both with the single listTables()
+   * call the cluster parser used to make and with the fetcher, reporting wall clock time for each.
+   */
+  static void benchmarkFetch(int tableCount) throws Exception {
+    if (cluster == null) {
+      cluster = new HBaseTestingUtility();
+      cluster.startMiniCluster();
+    }
+    HBaseAdmin admin = cluster.getHBaseAdmin();
+    int existing = admin.listTables().length;
+    System.out.println("Creating " + (tableCount - existing) + " tables...");
+    for (int t = existing; t < tableCount; t++) {
+      HTableDescriptor table = new HTableDescriptor("table" + t);
+      table.addFamily(new HColumnDescriptor("cf"));
+      admin.createTable(table);
+    }
+    System.out.println("Fetching " + tableCount + " tables:");
+    for (int run = 0; run < 2; run++) {
+      long start = System.nanoTime();
+      int listed = admin.listTables().length;
+      long listMs = (System.nanoTime() - start) / 1000000;
+      start = System.nanoTime();
+      int fetched = new HBaseClusterSchemaFetcher(cluster.getConfiguration(), HBaseTableFilter.ALL).fetch().size();
+      long fetchMs = (System.nanoTime() - start) / 1000000;
+      if (run > 0) {
+        System.out.println(String.format("  %-32s %8d ms (%d tables)", "HBaseAdmin.listTables()", listMs, listed));
+        System.out.println(String.format("  %-32s %8d ms (%d tables)", "HBaseClusterSchemaFetcher", fetchMs, fetched));
+      }
+    }
+  }
+
+  private static void measureParse(HBaseSchemaParser parser, File schemaFile, boolean report) {
+    resetPeakHeap();
+    long start = System.nanoTime();
+    parser.setResourceToParse(schemaFile.getAbsolutePath());
+    HBaseSchema schema = parser.parse();
+    int tables = schema.getTablesByName().size();
+    long elapsedMs = (System.nanoTime() - start) / 1000000;
+    if (report) {
+      System.out.println(String.format("  %-32s %8d ms %8d MB peak heap (%d tables)", 
+          parser.getClass().getSimpleName(), elapsedMs, getPeakHeap() / (1024 * 1024), tables));
+    }
+  }
+
+  /**
+   * Serialize every table of a generated schema both ways, checking that the output is identical
+   */
+  static void benchmarkSerialize(int tableCount) throws Exception {
+    File schemaFile = File.createTempFile("scoot_benchmark_", ".xml");
+    try {
+      writeGeneratedSchema(schemaFile, tableCount, 0);
+      FileInputStream fis = new FileInputStream(schemaFile);
+      NodeList tables;
+      try {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(fis);
+        tables = doc.getElementsByTagName("table");
+      } finally {
+        fis.close();
+      }
+      System.out.println("Serializing " + tableCount + " tables:");
+      for (int run = 0; run < 2; run++) {
+        long start = System.nanoTime();
+        String[] legacy = new String[tables.getLength()];
+        for (int x = 0; x < legacy.length; x++) {
+          legacy[x] = ScootTest.transformerFullXML(tables.item(x));
+        }
+        long legacyMs = (System.nanoTime() - start) / 1000000;
+        start = System.nanoTime();
+        String[] compact = new String[tables.getLength()];
+        for (int x = 0; x < compact.length; x++) {
+          compact[x] = CompactXMLSerializer.serialize(tables.item(x));
+        }
+        long compactMs = (System.nanoTime() - start) / 1000000;
+        for (int x = 0; x < legacy.length; x++) {
+          if (!legacy[x].equals(compact[x])) throw new IllegalStateException("Serialized output differs for table " + x);
+        }
+        if (run > 0) {
+          System.out.println(String.format("  %-32s %8d ms", "Transformer + regex", legacyMs));
+          System.out.println(String.format("  %-32s %8d ms", "CompactXMLSerializer", compactMs));
+        }
+      }
+    } finally {
+      schemaFile.delete();
+    }
+  }
+
+  /**
+   * Write a scoot xml file with the given number of tables, each with two column families. The 
+   * variant changes the max file size of every table whose index is a multiple of it (or none if it's 0),
+   * so two generated files can be made to differ in a known number of tables.
+   */
+  static void writeGeneratedSchema(File file, int tableCount, int variant) throws Exception {
+    Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<schema>\n");
+      for (int t = 0; t < tableCount; t++) {
+        int maxFileSizeMB = (variant > 0 && t % variant == 0) ? 512 : 256;
+        w.write("    <table name=\"table" + t + "\" maxFileSizeMB=\"" + maxFileSizeMB + "\" isReadOnly=\"false\" memStoreFlushSizeMB=\"64\" owner=\"scoot\">\n");
+        w.write("        <key>\n            <keyPart name=\"id\" type=\"String\" length=\"15\" inverted=\"false\" />\n        </key>\n");
+        w.write("        <columnFamilies>\n");
+        for (int f = 0; f < 2; f++) {
+          w.write("            <columnFamily name=\"cf" + f + "\" maxVersions=\"3\" blockSizeKB=\"64\" blockCache=\"true\" bloomFilter=\"ROW\" replicationScope=\"0\">\n");
+          w.write("                <column name=\"col" + f + "\" type=\"String\" />\n");
+          w.write("            </columnFamily>\n");
+        }
+        w.write("        </columnFamilies>\n    </table>\n");
+      }
+      w.write("</schema>\n");
+    } finally {
+      w.close();
+    }
+  }
+
+  private static void resetPeakHeap() {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+    }
+  }
+
+  private static long getPeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+}
@@ -26,18 +26,56 @@
 package com.salesforce.scoot;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.PrintStream;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.hfile.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.RegionSplitter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 import com.google.common.io.Resources;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChangeVisitor;
+import com.salesforce.scoot.advisor.HBaseCapacityModel;
+import com.salesforce.scoot.advisor.HBaseSchemaAdvisor;
+import com.salesforce.scoot.advisor.HBaseSchemaFinding;
+import com.salesforce.scoot.advisor.HBaseSchemaRule;
+import com.salesforce.scoot.advisor.HBaseSchemaRules;
+import com.salesforce.scoot.parser.HBaseClusterParser;
+import com.salesforce.scoot.parser.HBaseClusterSnapshotParser;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaParser;
+import com.salesforce.scoot.parser.HBaseCompiledSchemaWriter;
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+import com.salesforce.scoot.parser.HBaseScootStreamingXMLParser;
 import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.scripter.HBaseRubyRegionSplitScripter;
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+import com.salesforce.scoot.split.HBaseSplitKeys;
 
 /**
  * General tests for scoot functionality
@@ -56,17 +94,74 @@ public class ScootTest extends TestCase {
       System.setOut(ps);
       new Scoot(null).run();
       String output = Bytes.toString(baos.toByteArray());
-      assertEquals("usage: scoot\n" + 
+      assertEquals("usage: scoot\n" +
+        " -a,--apply <arg>          Apply the changes directly to this cluster (a\n" +
+        "                           zookeeper quorum), rather than writing a script\n" +
+        "                           for the hbase shell. It's validated before and\n" +
+        "                           after, as the script would be. Both are\n" +
+        "                           throttled as the scoot.throttle.* properties\n" +
+        "                           say (see HBaseRolloutThrottle).\n" +
+        " -c,--cache <arg>          Directory in which to cache parsed schema files\n" +
+        "                           between runs. Unchanged files are not\n" +
+        "                           re-parsed.\n" +
+        " -D <key=value>            Set a configuration property, overriding\n" +
+        "                           hbase-site.xml (e.g.\n" +
+        "                           scoot.snapshot.max.age.ms=3600000). May be\n" +
+        "                           given more than once.\n" +
         " -f,--from <arg>           The schema you want to start with.\n" +
         " -fp,--from-parser <arg>   The parser to use for the 'from' schema. If not\n" +
         "                           supplied, the tool will attempt to auto-detect\n" +
         "                           it.\n" +
         " -h,--help <arg>           Get help on using this utility.\n" +
+        " -i,--include <arg>        Only look at tables whose names match this\n" +
+        "                           regular expression. May be given more than\n" +
+        "                           once.\n" +
+        " -l,--lanes <arg>          Run the script's table modifications in this\n" +
+        "                           many parallel lanes (threads), each with its\n" +
+        "                           own connection. Defaults to 1 (one table at a\n" +
+        "                           time), or when applying, to\n" +
+        "                           scoot.apply.threads.\n" +
         " -o,--output <arg>         The name of the file to output.\n" +
         " -t,--to <arg>             The schema you want to end up with.\n" +
         " -tp,--to-parser <arg>     The parser to use for the 'to' schema. If not\n" +
         "                           supplied, the tool will attempt to auto-detect\n" +
-        "                           it.\n", 
+        "                           it.\n" +
+        " -u,--unlisted-unchanged   Count the tables that haven't changed in the\n" +
+        "                           script's summary, rather than listing them\n" +
+        "                           (saves memory and script size for very large\n" +
+        "                           schemas).\n" +
+        " -x,--exclude <arg>        Don't look at tables whose names match this\n" +
+        "                           regular expression, even if they're included.\n" +
+        "                           May be given more than once.\n" +
+        "commands:\n" +
+        "compile: Compile the 'from' schema into a binary file (.scootc) that loads\n" +
+        "without parsing, written to the output file.\n" +
+        "snapshot: Save the schema of the 'from' cluster (a zookeeper quorum) to\n" +
+        "the output file, along with the time and the cluster ID, so it can be\n" +
+        "diffed against offline. Snapshots use the compiled format; set\n" +
+        "scoot.snapshot.max.age.ms to go back to the cluster when one is older than\n" +
+        "that.\n" +
+        "regions: Compare the region boundaries of the 'from' cluster (or a\n" +
+        "snapshot of it) with the 'to' reference: another cluster, a snapshot, or a\n" +
+        "schema whose tables declare their splits (SPLITKEYS, or the pre-split\n" +
+        "attributes). The missing and extra boundaries are reported; with an output\n" +
+        "file, a script is written that splits regions to add the missing ones, or\n" +
+        "with --apply, the splits are done directly. Splits are throttled as the\n" +
+        "scoot.throttle.* properties say, and time out after\n" +
+        "scoot.split.timeout.ms.\n" +
+        "advise: Check the tables in the 'from' schema for settings that are likely\n" +
+        "to hurt performance, and report what's found, by severity; with an output\n" +
+        "file, the findings are also written to it as JSON. Set\n" +
+        "scoot.advise.fail.on to a severity to fail if anything that severe is\n" +
+        "found (see HBaseSchemaAdvisor for the rest of the settings).\n" +
+        "capacity: Project how much block cache and memstore the tables in the\n" +
+        "'from' schema ask of each region server, given a cluster profile\n" +
+        "(scoot.capacity.regionservers, scoot.capacity.heap.mb and the rest; see\n" +
+        "HBaseCapacityModel), and flag over-commitment. The region counts of the\n" +
+        "tables on the 'to' cluster (or snapshot), if it's given, are used. With an\n" +
+        "output file, the findings are written to it as JSON. When a profile is\n" +
+        "set, diffs project the 'to' schema too, and --apply stops if it would\n" +
+        "over-commit the servers.\n",
         output);
     } finally {
       System.setOut(originalStdOut);
@@ -111,4 +206,1275 @@ public class ScootTest extends TestCase {
 	assertEquals("1", columnFamily.getValue(HBaseSchemaAttribute.REPLICATION_SCOPE.name()));
 	
   }
+
+  /**
+   * The streaming parser should produce exactly the same tables as the DOM parser
+   */
+  public void testStreamingParse() throws Exception {
+    String[] files = { "ScootXMLParserTest.xml", "DiffScriptGenerationTestA.xml", "DiffScriptGenerationTestB.xml", 
+        "DiffScriptGenerationTestC.xml", "DiffScriptGenerationTestE.xml", "EmptySchema.xml", "FullSchemaSerializationTest.xml" };
+    for (String file : files) {
+      String fileName = Resources.getResource(file).getFile();
+      List<HTableDescriptor> expected = parse(new HBaseScootXMLParser(), fileName).getTables();
+      List<HTableDescriptor> actual = parse(new HBaseScootStreamingXMLParser(), fileName).getTables();
+      assertEquals(file, expected.size(), actual.size());
+      for (int x = 0; x < expected.size(); x++) {
+        assertEquals(file, expected.get(x), actual.get(x));
+        assertEquals(file, expected.get(x).getValue("fullSchema"), actual.get(x).getValue("fullSchema"));
+      }
+    }
+  }
+  
+  private static HBaseSchema parse(HBaseSchemaParser parser, String fileName) {
+    parser.setResourceToParse(fileName);
+    return parser.parse();
+  }
+
+  /**
+   * Both parsers should store exactly the same full schema string as the original Transformer-based 
+   * serialization did, even for awkward xml (comments, CDATA, escaping, whitespace-only elements, etc).
+   */
+  public void testFullSchemaSerialization() throws Exception {
+    String fileName = Resources.getResource("FullSchemaSerializationTest.xml").getFile();
+    FileInputStream fis = new FileInputStream(fileName);
+    String expected;
+    try {
+      Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(fis);
+      expected = transformerFullXML(doc.getElementsByTagName("table").item(0));
+    } finally {
+      fis.close();
+    }
+    assertEquals(expected, parse(new HBaseScootXMLParser(), fileName).getTables().get(0).getValue("fullSchema"));
+    assertEquals(expected, parse(new HBaseScootStreamingXMLParser(), fileName).getTables().get(0).getValue("fullSchema"));
+  }
+
+  /**
+   * The way table xml used to be serialized, kept here as the reference for the current serializer
+   */
+  static String transformerFullXML(Node tableNode) throws Exception {
+    StringWriter writer = new StringWriter();
+    Transformer t = TransformerFactory.newInstance().newTransformer();
+    t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    t.setOutputProperty(OutputKeys.INDENT, "no");
+    t.transform(new DOMSource(tableNode), new StreamResult(writer));
+    return writer.toString().replaceAll(">[\\t\\s\\n\\r]+<", "><");
+  }
+
+  /**
+   * Loading a directory of schema files should give the same tables as one file holding all of them
+   */
+  public void testMultiFileLoad() throws Exception {
+    Map<String, HTableDescriptor> expected = parse(new HBaseScootXMLParser(), "src/test/resources/DiffScriptGenerationTestB.xml").getTablesByName();
+    Map<String, HTableDescriptor> fromDirectory = new HBaseSchemaLoader(ScootTestUtils.SCOOT_FILE_PARSER).load("src/test/resources/MultiFileSchema").getTablesByName();
+    Map<String, HTableDescriptor> fromPattern = new HBaseSchemaLoader(ScootTestUtils.SCOOT_FILE_PARSER, 1).load("src/test/resources/MultiFileSchema/service*.xml").getTablesByName();
+    assertEquals(expected, fromDirectory);
+    assertEquals(expected, fromPattern);
+  }
+
+  /**
+   * Tables defined in more than one file are reported the same way as duplicates within a file
+   */
+  public void testMultiFileLoadDuplicates() throws Exception {
+    try {
+      new HBaseSchemaLoader(ScootTestUtils.SCOOT_FILE_PARSER).load("src/test/resources/DiffScriptGenerationTest?.xml");
+      fail("Expected duplicate tables to be detected");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Schema contains duplicate tables:"));
+    }
+  }
+
+  /**
+   * A second load of the same files should come entirely from the parse cache, and match the first
+   */
+  public void testParseCache() throws Exception {
+    File cacheDir = new File(System.getProperty("java.io.tmpdir"), "scoot_cache_test_" + System.currentTimeMillis());
+    try {
+      HBaseSchemaParseCache cache = new HBaseSchemaParseCache(cacheDir);
+      HBaseSchemaLoader loader = new HBaseSchemaLoader(ScootTestUtils.SCOOT_FILE_PARSER);
+      loader.setCache(cache);
+      Map<String, HTableDescriptor> first = loader.load("src/test/resources/MultiFileSchema").getTablesByName();
+      assertEquals(0, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      Map<String, HTableDescriptor> second = loader.load("src/test/resources/MultiFileSchema").getTablesByName();
+      assertEquals(2, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      assertEquals(first, second);
+      // a different parser doesn't share entries
+      HBaseSchemaLoader streamingLoader = new HBaseSchemaLoader(HBaseScootStreamingXMLParser.class.getName());
+      streamingLoader.setCache(cache);
+      streamingLoader.load("src/test/resources/MultiFileSchema");
+      assertEquals(4, cache.getMisses());
+    } finally {
+      FileUtils.deleteDirectory(cacheDir);
+    }
+  }
+
+  /**
+   * Compiling a schema and loading it back (via the command line) should give the same tables as parsing the xml
+   */
+  public void testCompiledSchemaRoundTrip() throws Exception {
+    File compiled = File.createTempFile("scoot_compile_test", HBaseCompiledSchemaParser.FILE_EXTENSION);
+    try {
+      String xmlFile = "src/test/resources/DiffScriptGenerationTestB.xml";
+      new Scoot(new String[] {"compile", xmlFile, "-o", compiled.getPath()}).run();
+      HBaseCompiledSchemaParser parser = new HBaseCompiledSchemaParser();
+      parser.setResourceToParse(compiled.getPath());
+      HBaseSchema schema = parser.parse();
+      assertEquals(parse(new HBaseScootXMLParser(), xmlFile).getTablesByName(), schema.getTablesByName());
+      assertEquals(xmlFile, parser.getProperties().get("source"));
+    } finally {
+      compiled.delete();
+    }
+  }
+
+  /**
+   * Tables outside the filter are left out of the diff entirely, in both schemas
+   */
+  public void testTableFilter() throws Exception {
+    HBaseTableFilter filter = new HBaseTableFilter(new String[] {"alter.*", "drop.*", "create.*"}, new String[] {"drop.*"});
+    assertTrue(filter.matches("alterMe"));
+    assertFalse(filter.matches("dropMe"));
+    assertFalse(filter.matches("ignoreMe"));
+    assertFalse(filter.matches("xalterMe"));
+    assertFalse(filter.matchesAll());
+    assertTrue(HBaseTableFilter.ALL.matches("anything"));
+
+    HBaseSchema a = parse(new HBaseScootXMLParser(), "src/test/resources/DiffScriptGenerationTestA.xml");
+    HBaseSchema b = parse(new HBaseScootXMLParser(), "src/test/resources/DiffScriptGenerationTestB.xml");
+    HBaseSchemaDiff unfiltered = new HBaseSchemaDiff(a, b);
+    assertEquals(1, unfiltered.getTableChangesByType(ChangeType.DROP).size());
+    assertEquals(1, unfiltered.getTableChangesByType(ChangeType.IGNORE).size());
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(a, b, filter);
+    assertEquals(0, diff.getTableChangesByType(ChangeType.DROP).size());
+    assertEquals(0, diff.getTableChangesByType(ChangeType.IGNORE).size());
+    assertEquals(1, diff.getTableChangesByType(ChangeType.CREATE).size());
+    assertEquals(1, diff.getTableChangesByType(ChangeType.ALTER).size());
+  }
+
+  /**
+   * A snapshot is used as is, unless it's older than the configured max age
+   */
+  public void testSnapshotMaxAge() throws Exception {
+    File snapshot = File.createTempFile("scoot_snapshot_test", HBaseCompiledSchemaParser.FILE_EXTENSION);
+    try {
+      Map<String, String> properties = new HashMap<String, String>();
+      properties.put("source", "localhost:2181");
+      properties.put("snapshotAt", String.valueOf(System.currentTimeMillis()));
+      properties.put("clusterId", "testCluster");
+      HBaseSchema b = parse(new HBaseScootXMLParser(), "src/test/resources/DiffScriptGenerationTestB.xml");
+      HBaseCompiledSchemaWriter.write(b, properties, snapshot);
+
+      // no max age, so it's used regardless
+      HBaseClusterSnapshotParser parser = new HBaseClusterSnapshotParser();
+      parser.setResourceToParse(snapshot.getPath());
+      assertEquals(b.getTablesByName(), parser.parse().getTablesByName());
+      assertFalse(parser.isStale());
+
+      // recent enough
+      Configuration config = new Configuration(false);
+      config.setLong(HBaseClusterSnapshotParser.MAX_AGE_KEY, 3600000);
+      parser.setConfiguration(config);
+      assertEquals(b.getTablesByName(), parser.parse().getTablesByName());
+      assertFalse(parser.isStale());
+    } finally {
+      snapshot.delete();
+    }
+  }
+
+  /**
+   * A snapshot parser whose cluster has one table, "liveTable", and needs no connection
+   */
+  public static class LiveSnapshotParser extends HBaseClusterSnapshotParser {
+    @Override
+    protected HBaseClusterParser getLiveParser() {
+      return new HBaseClusterParser() {
+        @Override
+        public HBaseSchema parse() {
+          HBaseSchema live = new HBaseSchema();
+          live.addTable(new HTableDescriptor("liveTable"));
+          return live;
+        }
+      };
+    }
+  }
+
+  /**
+   * Snapshots aren't served from the parse cache: the max age is checked on every load, so a snapshot that has 
+   * gone stale comes from the cluster even though the file hasn't changed, and what the cluster had isn't kept
+   */
+  public void testSnapshotParseCache() throws Exception {
+    File snapshot = File.createTempFile("scoot_snapshot_cache_test", HBaseCompiledSchemaParser.FILE_EXTENSION);
+    File cacheDir = new File(System.getProperty("java.io.tmpdir"), "scoot_snapshot_cache_test_" + System.currentTimeMillis());
+    try {
+      Map<String, String> properties = new HashMap<String, String>();
+      properties.put("source", "localhost:2181");
+      properties.put("snapshotAt", String.valueOf(System.currentTimeMillis() - 60000));
+      properties.put("clusterId", "testCluster");
+      HBaseSchema b = parse(new HBaseScootXMLParser(), "src/test/resources/DiffScriptGenerationTestB.xml");
+      HBaseCompiledSchemaWriter.write(b, properties, snapshot);
+
+      HBaseSchemaParseCache cache = new HBaseSchemaParseCache(cacheDir);
+      Configuration config = new Configuration(false);
+      config.setLong(HBaseClusterSnapshotParser.MAX_AGE_KEY, 3600000);
+      HBaseSchemaLoader loader = new HBaseSchemaLoader(LiveSnapshotParser.class.getName());
+      loader.setCache(cache);
+      loader.setConfiguration(config);
+      assertEquals(b.getTablesByName(), loader.load(snapshot.getPath()).getTablesByName());
+
+      // now it's too old
+      config.setLong(HBaseClusterSnapshotParser.MAX_AGE_KEY, 1000);
+      assertEquals(Arrays.asList("liveTable"), new ArrayList<String>(loader.load(snapshot.getPath()).getTablesByName().keySet()));
+      config.setLong(HBaseClusterSnapshotParser.MAX_AGE_KEY, 3600000);
+      assertEquals(b.getTablesByName(), loader.load(snapshot.getPath()).getTablesByName());
+      assertEquals(0, cache.getHits());
+      assertEquals(0, cache.getMisses());
+
+      // other compiled schemas are still cached
+      HBaseSchemaLoader compiledLoader = new HBaseSchemaLoader(HBaseCompiledSchemaParser.class.getName());
+      compiledLoader.setCache(cache);
+      compiledLoader.load(snapshot.getPath());
+      compiledLoader.load(snapshot.getPath());
+      assertEquals(1, cache.getHits());
+    } finally {
+      snapshot.delete();
+      FileUtils.deleteDirectory(cacheDir);
+    }
+  }
+
+  /**
+   * Fingerprints depend on a table's content, but not on the order it was set in
+   */
+  public void testTableFingerprint() throws Exception {
+    HTableDescriptor a = new HTableDescriptor("fingerprintMe");
+    a.setValue("k1", "v1");
+    a.setValue("k2", "v2");
+    a.addFamily(new HColumnDescriptor("cf1"));
+    a.addFamily(new HColumnDescriptor("cf2"));
+    HTableDescriptor b = new HTableDescriptor("fingerprintMe");
+    b.addFamily(new HColumnDescriptor("cf2"));
+    b.addFamily(new HColumnDescriptor("cf1"));
+    b.setValue("k2", "v2");
+    b.setValue("k1", "v1");
+    assertEquals(HBaseTableFingerprint.of(a), HBaseTableFingerprint.of(b));
+
+    // any change to a name, key or value changes it; so does moving bytes from a key to its value
+    b.setValue("k1", "v1 ");
+    assertFalse(HBaseTableFingerprint.of(a) == HBaseTableFingerprint.of(b));
+    b.remove(Bytes.toBytes("k1"));
+    b.setValue("k", "1v1");
+    assertFalse(HBaseTableFingerprint.of(a) == HBaseTableFingerprint.of(b));
+    b.remove(Bytes.toBytes("k"));
+    b.setValue("k1", "v1");
+    b.getFamily(Bytes.toBytes("cf1")).setMaxVersions(7);
+    assertFalse(HBaseTableFingerprint.of(a) == HBaseTableFingerprint.of(b));
+    assertFalse(HBaseTableFingerprint.of(a) == HBaseTableFingerprint.of(new HTableDescriptor("fingerprintMe2")));
+
+    // and the diff still finds the changes
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(a);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(b);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    assertEquals(1, diff.getTableChangesByType(ChangeType.ALTER).size());
+    assertEquals("fingerprintMe:cf1:VERSIONS:3->7;", diff.getTableChangesByType(ChangeType.ALTER).get(0).propertyChanges.get(0).toString());
+  }
+
+  /**
+   * Diffing on several threads gives exactly the same changes, in the same (name) order, as diffing on one
+   */
+  public void testParallelDiff() throws Exception {
+    File fromFile = File.createTempFile("scoot_parallel_diff_test", ".xml");
+    File toFile = File.createTempFile("scoot_parallel_diff_test", ".xml");
+    try {
+      ScootBenchmark.writeGeneratedSchema(fromFile, 5000, 0);
+      ScootBenchmark.writeGeneratedSchema(toFile, 5000, 7);
+      HBaseSchema from = parse(new HBaseScootStreamingXMLParser(), fromFile.getPath());
+      HBaseSchema to = parse(new HBaseScootStreamingXMLParser(), toFile.getPath());
+      to.addTable(new HTableDescriptor("createMe"));
+      List<HBaseSchemaChange> expected = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1).getTableChanges();
+      List<HBaseSchemaChange> actual = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 4).getTableChanges();
+      assertEquals(5001, actual.size());
+      String previous = "";
+      for (int x = 0; x < expected.size(); x++) {
+        assertEquals(expected.get(x).tableName, actual.get(x).tableName);
+        assertEquals(expected.get(x).type, actual.get(x).type);
+        assertEquals(expected.get(x).propertyChanges.toString(), actual.get(x).propertyChanges.toString());
+        assertTrue(previous.compareTo(actual.get(x).tableName) < 0);
+        previous = actual.get(x).tableName;
+      }
+    } finally {
+      fromFile.delete();
+      toFile.delete();
+    }
+  }
+
+  /**
+   * Changes handed to a visitor are the same ones a diff keeps, in the same order; and a scripter fed by a
+   * visiting diff writes the same script as one given the whole diff
+   */
+  public void testDiffVisitor() throws Exception {
+    File fromFile = File.createTempFile("scoot_diff_visitor_test", ".xml");
+    File toFile = File.createTempFile("scoot_diff_visitor_test", ".xml");
+    try {
+      ScootBenchmark.writeGeneratedSchema(fromFile, 3000, 0);
+      ScootBenchmark.writeGeneratedSchema(toFile, 3000, 100);
+      HBaseSchema from = parse(new HBaseScootStreamingXMLParser(), fromFile.getPath());
+      HBaseSchema to = parse(new HBaseScootStreamingXMLParser(), toFile.getPath());
+      to.addTable(new HTableDescriptor("createMe"));
+      List<HBaseSchemaChange> expected = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1).getTableChanges();
+      for (int threads : new int[] { 1, 3 }) {
+        final List<HBaseSchemaChange> visited = new ArrayList<HBaseSchemaChange>();
+        HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, threads, new HBaseSchemaChangeVisitor() {
+          public void visit(HBaseSchemaChange change) {
+            visited.add(change);
+          }
+        });
+        assertEquals(0, diff.getTableChanges().size());
+        assertEquals(30, diff.getChangeCount(ChangeType.ALTER));
+        assertEquals(2970, diff.getChangeCount(ChangeType.IGNORE));
+        assertEquals(1, diff.getChangeCount(ChangeType.CREATE));
+        assertEquals(expected.size(), visited.size());
+        for (int x = 0; x < expected.size(); x++) {
+          assertEquals(expected.get(x).tableName, visited.get(x).tableName);
+          assertEquals(expected.get(x).type, visited.get(x).type);
+          assertEquals(expected.get(x).propertyChanges.toString(), visited.get(x).propertyChanges.toString());
+        }
+      }
+
+      // unchanged tables can be counted without being kept
+      HBaseSchemaDiff counted = new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1, false);
+      assertEquals(31, counted.getTableChanges().size());
+      assertEquals(0, counted.getTableChangesByType(ChangeType.IGNORE).size());
+      assertEquals(2970, counted.getChangeCount(ChangeType.IGNORE));
+
+      // and the scripts come out the same either way
+      String script = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(from, to)).generateScript();
+      HBaseRubySchemaPatchScripter visitingScripter = new HBaseRubySchemaPatchScripter();
+      new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 3, visitingScripter);
+      assertEquals(script, visitingScripter.generateScript());
+      String unlisted = new HBaseRubySchemaPatchScripter(counted).generateScript();
+      assertTrue(unlisted.contains("#  * Ignore 2970 unchanged tables (not listed)."));
+      assertFalse(unlisted.contains("#       table1\n"));
+      assertEquals(script.substring(script.indexOf("# Initialization")), unlisted.substring(unlisted.indexOf("# Initialization")));
+    } finally {
+      fromFile.delete();
+      toFile.delete();
+    }
+  }
+
+  /**
+   * Property changes are costed by attribute, altered tables cost as much as their most expensive change, and
+   * the scripter only disables the tables it has to
+   */
+  public void testChangeCost() throws Exception {
+    assertEquals(HBaseSchemaChangeCost.METADATA_ONLY, HBaseSchemaChangeCost.of("OWNER"));
+    assertEquals(HBaseSchemaChangeCost.METADATA_ONLY, HBaseSchemaChangeCost.of("fullSchema"));
+    assertEquals(HBaseSchemaChangeCost.ONLINE_MODIFY, HBaseSchemaChangeCost.of("VERSIONS"));
+    assertEquals(HBaseSchemaChangeCost.DISABLE_REQUIRED, HBaseSchemaChangeCost.of("READONLY"));
+    assertEquals(HBaseSchemaChangeCost.DISABLE_REQUIRED, HBaseSchemaChangeCost.of("coprocessor$1"));
+
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    for (String name : new String[] { "owner", "versions", "removeFamily" }) {
+      HTableDescriptor t = new HTableDescriptor(name);
+      t.setOwnerString("scoot");
+      t.addFamily(new HColumnDescriptor("cf1"));
+      t.addFamily(new HColumnDescriptor("cf2"));
+      from.addTable(t);
+      to.addTable(new HTableDescriptor(t));
+    }
+    to.getTablesByName().get("owner").setOwnerString("someoneElse");
+    to.getTablesByName().get("versions").getFamily(Bytes.toBytes("cf1")).setMaxVersions(7);
+    to.getTablesByName().get("removeFamily").removeFamily(Bytes.toBytes("cf2"));
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    Map<String, HBaseSchemaChangeCost> costs = new HashMap<String, HBaseSchemaChangeCost>();
+    for (HBaseSchemaChange c : diff.getTableChangesByType(ChangeType.ALTER)) {
+      costs.put(c.tableName, c.getCost());
+    }
+    assertEquals(HBaseSchemaChangeCost.METADATA_ONLY, costs.get("owner"));
+    assertEquals(HBaseSchemaChangeCost.ONLINE_MODIFY, costs.get("versions"));
+    assertEquals(HBaseSchemaChangeCost.DISABLE_REQUIRED, costs.get("removeFamily"));
+
+    // without online schema updates, everything is disabled to be modified
+    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+    assertEquals(3, script.split("admin.disableTable\\(tablename\\)").length - 1);
+    assertTrue(script.contains("#       expected unavailability: whole table, while disabled for modification (metadata only; could be modified online"));
+
+    // with them, only the table that has to be is
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setOnlineSchemaUpdates(true);
+    script = scripter.generateScript();
+    assertEquals(1, script.split("admin.disableTable\\(tablename\\)").length - 1);
+    assertTrue(script.contains("# Modify table: removeFamily\ntablename = \"removeFamily\""));
+    assertTrue(script.indexOf("admin.disableTable(tablename)") > script.indexOf("# Modify table: removeFamily"));
+    assertEquals(4, script.split("admin.getAlterStatus").length - 1); // twice for each table modified online
+    assertTrue(script.contains("#       owner\n#       property change: owner:OWNER:scoot->someoneElse;\n#       expected unavailability: none (metadata only; regions reopen one at a time)\n"));
+    assertTrue(script.contains("#       expected unavailability: one region at a time, while each reopens\n"));
+    assertTrue(script.contains("#       expected unavailability: whole table, while disabled for modification (required)\n"));
+  }
+
+  /**
+   * Altered tables only have the column families and values that changed scripted (a modified family starts from
+   * its definition on the cluster); online, several changes to one table are applied with a single modifyTable
+   */
+  public void testTargetedAlter() throws Exception {
+    HTableDescriptor t = new HTableDescriptor("alterMe");
+    t.setOwnerString("scoot");
+    t.addFamily(new HColumnDescriptor("cf1"));
+    t.addFamily(new HColumnDescriptor("cf2"));
+    t.addFamily(new HColumnDescriptor("cf3"));
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(t);
+    HTableDescriptor altered = new HTableDescriptor(t);
+    altered.getFamily(Bytes.toBytes("cf1")).setMaxVersions(7);
+    altered.removeFamily(Bytes.toBytes("cf2"));
+    altered.addFamily(new HColumnDescriptor("cf4"));
+    altered.setValue("custom", "value");
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(altered);
+
+    String script = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(from, to)).generateScript();
+    String modification = script.substring(script.indexOf("# Modify table: alterMe"), script.indexOf("puts \"Modified table"));
+    assertTrue(modification.contains("admin.modifyColumn(tablename, cf)"));
+    String modifiedFamily = modification.substring(modification.indexOf("getFamily(Bytes.toBytes(\"cf1\"))"), 
+        modification.indexOf("admin.modifyColumn"));
+    assertTrue(modifiedFamily.contains("cf.setValue(\"VERSIONS\", \"7\")"));
+    assertFalse(modifiedFamily.contains("BLOCKSIZE"));
+    assertTrue(modification.contains("admin.deleteColumn(tablename, \"cf2\")"));
+    assertTrue(modification.contains("admin.addColumn(tablename, cf)"));
+    assertFalse(modification.contains("HColumnDescriptor.new(\"cf3\")"));
+    assertTrue(modification.contains("table.setValue(\"custom\", \"value\")"));
+    assertFalse(modification.contains("OWNER"));
+    // the table's own values are modified last, so the descriptor it reads already has the new families
+    assertTrue(modification.indexOf("admin.modifyTable") > modification.indexOf("admin.addColumn"));
+    assertEquals(1, modification.split("admin.disableTable").length - 1);
+
+    // online (without the family removal, which needs the table disabled), it's one modifyTable
+    altered.addFamily(new HColumnDescriptor("cf2"));
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(from, to));
+    scripter.setOnlineSchemaUpdates(true);
+    script = scripter.generateScript();
+    modification = script.substring(script.indexOf("# Modify table: alterMe"), script.indexOf("puts \"Modified table"));
+    assertFalse(modification.contains("admin.disableTable"));
+    assertFalse(modification.contains("Column(tablename"));
+    assertEquals(1, modification.split("admin.modifyTable").length - 1);
+    assertEquals(1, modification.split("table.addFamily\\(cf\\)").length - 1);
+    assertTrue(modification.contains("cf = table.getFamily(Bytes.toBytes(\"cf1\"))"));
+  }
+
+  /**
+   * Values that mean the same thing to HBase (and missing values vs. defaults) aren't changes, but are reported
+   */
+  public void testEquivalentValues() throws Exception {
+    assertEquals("NONE", HBaseSchemaAttribute.COMPRESSION.normalize("none"));
+    assertEquals("64", HBaseSchemaAttribute.BLOCKSIZE.normalize("+064"));
+    assertEquals("true", HBaseSchemaAttribute.BLOCKCACHE.normalize("TRUE "));
+    assertEquals("ivarley", HBaseSchemaAttribute.OWNER.normalize("ivarley"));
+
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    for (String name : new String[] { "sameTable", "changedTable" }) {
+      HTableDescriptor t = new HTableDescriptor(name);
+      t.setValue(HTableDescriptor.MAX_FILESIZE, HBaseSchemaAttribute.MAX_FILESIZE.defaultValue);
+      HColumnDescriptor cf = new HColumnDescriptor("cf1");
+      cf.setValue(HColumnDescriptor.COMPRESSION, "none");
+      cf.setValue(HBaseSchemaAttribute.VERSIONS.name, "03");
+      t.addFamily(cf);
+      from.addTable(t);
+      HTableDescriptor equivalent = new HTableDescriptor(name);
+      HColumnDescriptor equivalentCf = new HColumnDescriptor("cf1");
+      equivalentCf.setValue(HColumnDescriptor.COMPRESSION, "NONE");
+      equivalentCf.setValue(HBaseSchemaAttribute.VERSIONS.name, "3");
+      equivalent.addFamily(equivalentCf);
+      to.addTable(equivalent);
+    }
+    to.getTablesByName().get("changedTable").setOwnerString("someoneElse");
+
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    HBaseSchemaChange same = diff.getTableChangesByType(ChangeType.IGNORE).get(0);
+    assertEquals("sameTable", same.tableName);
+    assertEquals("[sameTable:MAX_FILESIZE:" + HBaseSchemaAttribute.MAX_FILESIZE.defaultValue + "->null;, " 
+        + "sameTable:cf1:COMPRESSION:none->NONE;, sameTable:cf1:VERSIONS:03->3;]", same.suppressedChanges.toString());
+    HBaseSchemaChange changed = diff.getTableChangesByType(ChangeType.ALTER).get(0);
+    assertEquals("[changedTable:OWNER:null->someoneElse;]", changed.propertyChanges.toString());
+    assertEquals(3, changed.suppressedChanges.size());
+
+    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+    assertTrue(script.contains("#  * Disregard 6 differences between equivalent values:\n"));
+    assertTrue(script.contains("#       changedTable:cf1:COMPRESSION:none->NONE;\n"));
+  }
+
+  /**
+   * A table with a change the diff suppressed (compression none -> NONE) and a real one (the owner): the alter
+   * only writes the real one, so validating the result has to accept the equivalent value that's still there
+   */
+  public void testEquivalentValidation() throws Exception {
+    assertTrue(HBaseSchemaAttribute.isEquivalent("COMPRESSION", HColumnDescriptor.class, "none", "NONE"));
+    assertTrue(HBaseSchemaAttribute.isEquivalent("VERSIONS", HColumnDescriptor.class, null, "03"));
+    assertFalse(HBaseSchemaAttribute.isEquivalent("VERSIONS", HColumnDescriptor.class, null, "4"));
+    assertFalse(HBaseSchemaAttribute.isEquivalent("compression", HColumnDescriptor.class, "none", "NONE"));
+    assertFalse(HBaseSchemaAttribute.isEquivalent("COMPRESSION", HTableDescriptor.class, "none", "NONE"));
+    assertFalse(HBaseSchemaAttribute.isEquivalent("OWNER", HTableDescriptor.class, null, "someone"));
+    assertTrue(HBaseSchemaAttribute.isEquivalent("OWNER", HTableDescriptor.class, null, null));
+
+    HBaseSchema from = new HBaseSchema();
+    HTableDescriptor t = new HTableDescriptor("changedTable");
+    HColumnDescriptor cf = new HColumnDescriptor("cf1");
+    cf.setValue(HColumnDescriptor.COMPRESSION, "none");
+    t.addFamily(cf);
+    from.addTable(t);
+    HBaseSchema to = new HBaseSchema();
+    HTableDescriptor changed = new HTableDescriptor("changedTable");
+    changed.setOwnerString("someoneElse");
+    HColumnDescriptor changedCf = new HColumnDescriptor("cf1");
+    changedCf.setValue(HColumnDescriptor.COMPRESSION, "NONE");
+    changed.addFamily(changedCf);
+    to.addTable(changed);
+
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    HBaseSchemaChange c = diff.getTableChangesByType(ChangeType.ALTER).get(0);
+    assertEquals("[changedTable:OWNER:null->someoneElse;]", c.propertyChanges.toString());
+    assertEquals("[changedTable:cf1:COMPRESSION:none->NONE;]", c.suppressedChanges.toString());
+
+    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+    String post = script.substring(script.indexOf("# Post Validation"));
+    assertTrue(post.contains("    compare(postErrors, table, \"alter\", \"OWNER\", \"someoneElse\")\n"));
+    assertTrue(post.contains("    compare(postErrors, cf, \"alter\", \"COMPRESSION\", \"NONE\", :enum, \"none\")\n"));
+    assertTrue(post.contains("    compare(postErrors, cf, \"alter\", \"VERSIONS\", \"3\", :number, \"3\")\n"));
+    assertFalse(post.contains("preErrors"));
+    assertTrue(post.contains("if (postErrors.length > 0)\n"));
+    assertTrue(script.contains("def compare(errs, obj, action, attr, val, kind = nil, default = nil)\n"));
+  }
+
+  /**
+   * Modifications split into lanes: each changed table is in exactly one of them, dealt out in turn, and there are 
+   * no more lanes than changed tables; validation isn't split up
+   */
+  public void testLanes() throws Exception {
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    for (int i = 0; i < 6; i++) {
+      HTableDescriptor t = new HTableDescriptor("table" + i);
+      t.addFamily(new HColumnDescriptor("cf"));
+      if (i != 0) from.addTable(t); // created
+      HTableDescriptor altered = new HTableDescriptor(t);
+      if (i % 2 == 1) altered.getFamily(Bytes.toBytes("cf")).setMaxVersions(7);
+      if (i != 5) to.addTable(altered); // dropped
+    }
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    String sequential = new HBaseRubySchemaPatchScripter(diff).generateScript();
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setLanes(1);
+    assertEquals(sequential, scripter.generateScript());
+    assertFalse(sequential.contains("scoot_lane_"));
+
+    scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setLanes(2);
+    String script = scripter.generateScript();
+    String lane1 = script.substring(script.indexOf("def scoot_lane_1(conf)"), script.indexOf("def scoot_lane_2(conf)"));
+    String lane2 = script.substring(script.indexOf("def scoot_lane_2(conf)"), script.indexOf("laneThreads = Array.new"));
+    // tables 0 (created), 1, 3 and 5 (altered & dropped) changed; 2 and 4 didn't
+    assertTrue(lane1.contains("# Create Table: table0"));
+    assertTrue(lane2.contains("# Modify table: table1"));
+    assertTrue(lane1.contains("# Modify table: table3"));
+    assertTrue(lane2.contains("# Drop Table: table5"));
+    assertFalse(script.contains("# Modify table: table2"));
+    assertEquals(1, script.split("Pre Validation").length - 1);
+    assertTrue(script.indexOf("if (preErrors.length > 0)") < script.indexOf("def scoot_lane_1"));
+    assertTrue(script.indexOf("laneErrors = laneThreads") < script.indexOf("# Post Validation"));
+
+    scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setLanes(10);
+    script = scripter.generateScript();
+    assertTrue(script.contains("laneThreads << Thread.new { scoot_lane_4(conf) }"));
+    assertFalse(script.contains("scoot_lane_5"));
+  }
+
+  /**
+   * Throttled scripts wait for regions in transition before every table operation, and pause between the 
+   * operations in each lane; the throttle adds up the time it spends
+   */
+  public void testThrottle() throws Exception {
+    assertFalse(new HBaseRolloutThrottle(new Configuration()).isThrottling());
+    HBaseSchema to = new HBaseSchema();
+    for (int i = 0; i < 5; i++) {
+      HTableDescriptor t = new HTableDescriptor("table" + i);
+      t.addFamily(new HColumnDescriptor("cf"));
+      to.addTable(t);
+    }
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(new HBaseSchema(), to);
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setThrottle(new HBaseRolloutThrottle(new Configuration()));
+    assertEquals(new HBaseRubySchemaPatchScripter(diff).generateScript(), scripter.generateScript());
+
+    Configuration config = new Configuration();
+    config.setInt(HBaseRolloutThrottle.MAX_REGIONS_IN_TRANSITION_KEY, 10);
+    config.setLong(HBaseRolloutThrottle.PAUSE_KEY, 2500);
+    scripter = new HBaseRubySchemaPatchScripter(diff);
+    scripter.setLanes(2);
+    scripter.setThrottle(new HBaseRolloutThrottle(config));
+    String script = scripter.generateScript();
+    assertTrue(script.contains("while (admin.getClusterStatus().getRegionsInTransition().size() > 10)"));
+    assertTrue(script.contains("    sleep 2.5\n"));
+    assertEquals(5, script.split("\nscoot_await_regions_in_transition\\(admin\\)\n# Create Table").length - 1);
+    // 3 tables in the first lane, 2 in the second; the first in each doesn't pause
+    assertEquals(3, script.split("\nscoot_pause\\(\\)\n").length - 1);
+    String lane2 = script.substring(script.indexOf("def scoot_lane_2(conf)"), script.indexOf("laneThreads = Array.new"));
+    assertTrue(lane2.indexOf("scoot_pause()") > lane2.indexOf("# Create Table: table1"));
+    assertTrue(script.indexOf("puts \"Throttled for") > script.indexOf("laneErrors = laneThreads"));
+
+    HBaseRolloutThrottle throttle = new HBaseRolloutThrottle(-1, 20, 1);
+    throttle.pause();
+    throttle.pause();
+    assertTrue(throttle.getPausedMs() >= 40);
+    assertEquals(0, throttle.getWaitedMs());
+  }
+
+  /**
+   * Tables are pre-split on keys worked out by their split algorithm, over the range of keys they give, and 
+   * scripted with those keys
+   */
+  public void testSplitKeys() throws Exception {
+    HTableDescriptor t = new HTableDescriptor("presplit");
+    t.addFamily(new HColumnDescriptor("cf"));
+    assertNull(HBaseSplitKeys.getSplitKeys(t));
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "1");
+    assertNull(HBaseSplitKeys.getSplitKeys(t));
+
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "4");
+    t.setValue(HBaseSchemaAttribute.SPLITALGO.name(), "HexStringSplit");
+    byte[][] keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(3, keys.length);
+    assertEquals("40000000", Bytes.toString(keys[0]));
+    assertEquals("80000000", Bytes.toString(keys[1]));
+    assertEquals("c0000000", Bytes.toString(keys[2]));
+    t.setValue(HBaseSchemaAttribute.SPLITFIRSTROW.name(), "10000000");
+    t.setValue(HBaseSchemaAttribute.SPLITLASTROW.name(), "20000000");
+    keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals("14000000", Bytes.toString(keys[0]));
+    assertEquals("1c000000", Bytes.toString(keys[2]));
+
+    // the default, by class name
+    t.setValue(HBaseSchemaAttribute.SPLITALGO.name(), RegionSplitter.UniformSplit.class.getName());
+    t.remove(Bytes.toBytes(HBaseSchemaAttribute.SPLITFIRSTROW.name()));
+    t.remove(Bytes.toBytes(HBaseSchemaAttribute.SPLITLASTROW.name()));
+    keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(3, keys.length);
+    assertEquals((byte)0x40, keys[0][0]);
+    assertEquals((byte)0xC0, keys[2][0]);
+
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(t);
+    String script = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(new HBaseSchema(), to)).generateScript();
+    assertTrue(script.contains("splits = Java::byte[][3].new\n"));
+    assertTrue(script.contains("splits[0] = Bytes.toBytesBinary(\"@\\\\x00\\\\x00\\\\x00\\\\x00\\\\x00\\\\x00\\\\x00\")\n"));
+    assertTrue(script.contains("admin.createTable(table, splits)\n"));
+
+    t.setValue(HBaseSchemaAttribute.SPLITALGO.name(), "NoSuchSplit");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected an unknown algorithm to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to pre-split table presplit: Unknown split algorithm NoSuchSplit"));
+    }
+  }
+
+  /**
+   * Tables pre-split from sampled keys (or a histogram) are split where the data is, not evenly over the key space
+   */
+  public void testSampledSplitKeys() throws Exception {
+    File samples = File.createTempFile("scoot_samples_test", ".txt");
+    try {
+      // 90% of the keys start with "a"
+      StringBuilder sb = new StringBuilder("# sampled keys\n");
+      for (int i = 899; i >= 0; i--) sb.append(String.format("a%03d\n", i));
+      for (int i = 0; i < 100; i++) sb.append(String.format("b%03d\n", i));
+      FileUtils.writeStringToFile(samples, sb.toString(), "UTF-8");
+      HTableDescriptor t = new HTableDescriptor("sampled");
+      t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "4");
+      t.setValue(HBaseSchemaAttribute.SPLITSAMPLES.name(), samples.getPath());
+      byte[][] keys = HBaseSplitKeys.getSplitKeys(t);
+      assertEquals(3, keys.length);
+      assertEquals("a250", Bytes.toString(keys[0]));
+      assertEquals("a500", Bytes.toString(keys[1]));
+      assertEquals("a750", Bytes.toString(keys[2]));
+      t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "2");
+      t.setValue(HBaseSchemaAttribute.SPLITFIRSTROW.name(), "a500");
+      assertEquals("a750", Bytes.toString(HBaseSplitKeys.getSplitKeys(t)[0]));
+
+      // a histogram, with binary keys
+      FileUtils.writeStringToFile(samples, "\\x00\t40\n\\x01\t10\n\\x02\\xFF\t40\n\\x03\t10\n", "UTF-8");
+      t.remove(Bytes.toBytes(HBaseSchemaAttribute.SPLITFIRSTROW.name()));
+      keys = HBaseSplitKeys.getSplitKeys(t);
+      assertEquals(1, keys.length);
+      assertTrue(Bytes.equals(new byte[] {0x02, (byte)0xFF}, keys[0]));
+      t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "10");
+      try {
+        HBaseSplitKeys.getSplitKeys(t);
+        fail("Expected too few keys to fail");
+      } catch (ScootException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("from the 4 distinct key(s)"));
+      }
+      t.setValue(HBaseSchemaAttribute.SPLITALGO.name(), "HexStringSplit");
+      try {
+        HBaseSplitKeys.getSplitKeys(t);
+        fail("Expected an algorithm and samples to fail");
+      } catch (ScootException e) {
+        assertTrue(e.getMessage(), e.getMessage().endsWith("but not both"));
+      }
+    } finally {
+      samples.delete();
+    }
+  }
+
+  /**
+   * A relative sample file is found next to the schema file that names it (by either xml parser, and whatever the
+   * working directory), and the pre-split values aren't part of the table on the cluster or of the diff
+   */
+  public void testSampleFileRelativeToSchema() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"), "scoot_relative_samples_test_" + System.currentTimeMillis());
+    File otherDir = new File(dir, "other");
+    File cacheDir = new File(dir, "cache");
+    try {
+      assertTrue(otherDir.mkdirs());
+      String xml = "<schema><table name=\"sampled\" numRegionsToPreSplitOnCreation=\"2\" splitSampleFile=\"samples.txt\">"
+          + "<columnFamilies><columnFamily name=\"cf\"/></columnFamilies></table></schema>";
+      FileUtils.writeStringToFile(new File(dir, "schema.xml"), xml, "UTF-8");
+      FileUtils.writeStringToFile(new File(dir, "samples.txt"), "a\nb\nc\nd\n", "UTF-8");
+      FileUtils.writeStringToFile(new File(otherDir, "schema.xml"), xml, "UTF-8");
+      FileUtils.writeStringToFile(new File(otherDir, "samples.txt"), "w\nx\ny\nz\n", "UTF-8");
+
+      for (HBaseSchemaParser parser : new HBaseSchemaParser[] {new HBaseScootXMLParser(), new HBaseScootStreamingXMLParser()}) {
+        HTableDescriptor t = parse(parser, new File(dir, "schema.xml").getPath()).getTables().get(0);
+        assertEquals(new File(dir, "samples.txt").getAbsolutePath(), t.getValue(HBaseSchemaAttribute.SPLITSAMPLES.name));
+        assertEquals("c", Bytes.toString(HBaseSplitKeys.getSplitKeys(t)[0]));
+      }
+
+      // the same file somewhere else names a different sample file, so it isn't the same cache entry
+      HBaseSchemaLoader loader = new HBaseSchemaLoader(ScootTestUtils.SCOOT_FILE_PARSER);
+      loader.setCache(new HBaseSchemaParseCache(cacheDir));
+      HTableDescriptor t = loader.load(new File(dir, "schema.xml").getPath()).getTables().get(0);
+      HTableDescriptor other = loader.load(new File(otherDir, "schema.xml").getPath()).getTables().get(0);
+      assertEquals("c", Bytes.toString(HBaseSplitKeys.getSplitKeys(t)[0]));
+      assertEquals("y", Bytes.toString(HBaseSplitKeys.getSplitKeys(other)[0]));
+
+      HTableDescriptor stored = HBaseSchemaValues.forCluster(t);
+      assertNull(stored.getValue(HBaseSchemaAttribute.SPLITSAMPLES.name));
+      assertNull(stored.getValue(HBaseSchemaAttribute.NUMREGIONS.name));
+      HBaseSchema from = new HBaseSchema();
+      from.addTable(stored);
+      HBaseSchema to = new HBaseSchema();
+      to.addTable(t);
+      assertEquals(1, new HBaseSchemaDiff(from, to).getChangeCount(ChangeType.IGNORE));
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  /**
+   * Salted tables are split at the start of every bucket, and (with more regions than buckets) within each one
+   */
+  public void testSaltedSplitKeys() throws Exception {
+    HTableDescriptor t = new HTableDescriptor("salted");
+    t.setValue(HBaseSchemaAttribute.SALTBUCKETS.name(), "4");
+    byte[][] keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(3, keys.length);
+    for (int b = 1; b < 4; b++) {
+      assertTrue(Bytes.equals(new byte[] {(byte)b}, keys[b - 1]));
+    }
+
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "8");
+    t.setValue(HBaseSchemaAttribute.SPLITALGO.name(), "HexStringSplit");
+    keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(7, keys.length);
+    assertEquals("\\x0080000000", Bytes.toStringBinary(keys[0]));
+    assertEquals("\\x01", Bytes.toStringBinary(keys[1]));
+    assertEquals("\\x0180000000", Bytes.toStringBinary(keys[2]));
+    assertEquals("\\x0380000000", Bytes.toStringBinary(keys[6]));
+
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "6");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected regions that don't divide between the buckets to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("can't be divided evenly between its 4 salt buckets"));
+    }
+
+    // wider prefixes
+    t = new HTableDescriptor("salted");
+    t.setValue(HBaseSchemaAttribute.SALTBUCKETS.name(), "300");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected too many buckets for one byte to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("300 buckets don't fit in 1 byte(s)"));
+    }
+    t.setValue(HBaseSchemaAttribute.SALTWIDTH.name(), "2");
+    keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(299, keys.length);
+    assertTrue(Bytes.equals(new byte[] {0x00, 0x01}, keys[0]));
+    assertTrue(Bytes.equals(new byte[] {0x01, 0x2B}, keys[298]));
+
+    // they only say how to split the table, so they aren't stored on the cluster
+    HTableDescriptor stored = HBaseSchemaValues.forCluster(t);
+    assertNull(stored.getValue(HBaseSchemaAttribute.SALTBUCKETS.name()));
+    assertNull(stored.getValue(HBaseSchemaAttribute.SALTWIDTH.name()));
+    assertEquals(299, HBaseSplitKeys.getSplitKeys(t).length);
+  }
+
+  /**
+   * Split keys listed with SPLITKEYS are read back the way they're written, commas and all
+   */
+  public void testDeclaredSplitKeys() throws Exception {
+    byte[][] listed = new byte[][] {new byte[] {0x00, (byte)0xFF}, Bytes.toBytes("a,b"), Bytes.toBytes("m")};
+    String declared = HBaseSplitKeys.toString(listed);
+    assertEquals("\\x00\\xFF,a\\x2Cb,m", declared);
+    HTableDescriptor t = new HTableDescriptor("declared");
+    t.setValue(HBaseSchemaAttribute.SPLITKEYS.name(), declared);
+    byte[][] keys = HBaseSplitKeys.getSplitKeys(t);
+    assertEquals(3, keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      assertTrue(Bytes.equals(listed[i], keys[i]));
+    }
+
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "3");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected a number of regions that doesn't match the keys to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("has 3 regions, but lists 3 split keys"));
+    }
+    t.setValue(HBaseSchemaAttribute.SPLITKEYS.name(), "m,a");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected keys out of order to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("m comes before a"));
+    }
+    t = new HTableDescriptor("declared");
+    t.setValue(HBaseSchemaAttribute.SPLITKEYS.name(), "a,m");
+    t.setValue(HBaseSchemaAttribute.SALTBUCKETS.name(), "4");
+    try {
+      HBaseSplitKeys.getSplitKeys(t);
+      fail("Expected listed keys with salt buckets to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("lists its split keys, so it can't have SALTBUCKETS as well"));
+    }
+  }
+
+  /**
+   * Region layouts are compared boundary by boundary, for the tables both sides have
+   */
+  public void testRegionLayoutDiff() throws Exception {
+    HBaseRegionLayout cluster = new HBaseRegionLayout();
+    cluster.addTable("matching", keys("g", "p"));
+    cluster.addTable("split", keys("c", "k", "x"));
+    cluster.addTable("unsplit", keys());
+    cluster.addTable("clusterOnly", keys("a"));
+
+    HBaseSchema schema = new HBaseSchema();
+    HTableDescriptor t = new HTableDescriptor("matching");
+    t.setValue(HBaseSchemaAttribute.SPLITKEYS.name(), "g,p");
+    schema.addTable(t);
+    t = new HTableDescriptor("split");
+    t.setValue(HBaseSchemaAttribute.SPLITKEYS.name(), "c,f,p,x");
+    schema.addTable(t);
+    t = new HTableDescriptor("unsplit");
+    t.setValue(HBaseSchemaAttribute.SALTBUCKETS.name(), "2");
+    schema.addTable(t);
+    schema.addTable(new HTableDescriptor("clusterOnly"));
+    t = new HTableDescriptor("schemaOnly");
+    t.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "2");
+    schema.addTable(t);
+    HBaseRegionLayout reference = HBaseRegionLayout.fromSchema(schema);
+    // tables that don't declare their splits aren't in the layout
+    assertEquals(4, reference.getTableCount());
+    assertNull(reference.getBoundaries("clusterOnly"));
+
+    HBaseRegionLayoutDiff diff = new HBaseRegionLayoutDiff(cluster, reference);
+    assertEquals(1, diff.getMatchingTableCount());
+    assertEquals(2, diff.getTableChanges().size());
+    HBaseRegionLayoutDiff.TableLayoutChange split = diff.getTableChanges().get(0);
+    assertEquals("split", split.tableName);
+    assertEquals(Bytes.toStringBinary(Bytes.toBytes("f")) + "," + Bytes.toStringBinary(Bytes.toBytes("p")), 
+        HBaseSplitKeys.toString(split.missing.toArray(new byte[0][])));
+    assertEquals("k", HBaseSplitKeys.toString(split.extra.toArray(new byte[0][])));
+    assertEquals(4, split.fromCount);
+    assertEquals(5, split.toCount);
+    HBaseRegionLayoutDiff.TableLayoutChange unsplit = diff.getTableChanges().get(1);
+    assertEquals("\\x01", HBaseSplitKeys.toString(unsplit.missing.toArray(new byte[0][])));
+    assertTrue(unsplit.extra.isEmpty());
+    assertEquals(3, diff.getMissingCount());
+    assertEquals("[clusterOnly]", diff.getTablesOnlyInFrom().toString());
+    assertEquals("[schemaOnly]", diff.getTablesOnlyInTo().toString());
+    String report = diff.getReport();
+    assertTrue(report, report.startsWith("Region layouts: 2 table(s) differ, 1 match; 3 boundaries missing, 1 extra."));
+    assertTrue(report, report.contains("    missing f\n    missing p\n    extra   k\n"));
+
+    // a layout survives being written to properties, as snapshots do
+    Map<String, String> properties = new HashMap<String, String>();
+    properties.put("other", "x");
+    cluster.toProperties(properties, "regions.");
+    HBaseRegionLayout restored = HBaseRegionLayout.fromProperties(properties, "regions.");
+    assertEquals(cluster.getTableNames(), restored.getTableNames());
+    diff = new HBaseRegionLayoutDiff(cluster, restored);
+    assertEquals(4, diff.getMatchingTableCount());
+    assertTrue(diff.getTableChanges().isEmpty());
+    // and so do keys with backslashes and commas in them
+    byte[][] keys = { Bytes.toBytes(92), Bytes.toBytes("a\\x41,b"), new byte[] { (byte)0xff } };
+    assertTrue(Arrays.deepEquals(keys, HBaseSplitKeys.fromString(HBaseSplitKeys.toString(keys))));
+  }
+
+  /**
+   * The split script splits at each missing boundary (escaped for ruby), throttled, and only lists the extra ones
+   */
+  public void testRegionSplitScript() throws Exception {
+    HBaseRegionLayout cluster = new HBaseRegionLayout();
+    cluster.addTable("table1", keys("k"));
+    cluster.addTable("table2", keys());
+    HBaseRegionLayout reference = new HBaseRegionLayout();
+    reference.addTable("table1", keys("f"));
+    List<byte[]> table2 = new ArrayList<byte[]>();
+    table2.add(new byte[] {'"', 0x00});
+    table2.add(Bytes.toBytes("#{x}"));
+    reference.addTable("table2", table2);
+    HBaseRubyRegionSplitScripter scripter = new HBaseRubyRegionSplitScripter(new HBaseRegionLayoutDiff(cluster, reference));
+    scripter.setThrottle(new HBaseRolloutThrottle(5, 2000, 500));
+    scripter.setTimeoutMs(60000);
+    String script = scripter.generateScript();
+    assertTrue(script, script.contains("#  * Add 3 region boundaries:\n#      table1: 1 split(s), from 2 region(s) to 3\n#      table2: 2 split(s), from 1 region(s) to 3\n"));
+    assertTrue(script, script.contains("#  * Leave 1 extra region boundary in place (regions can't be merged online):\n#      table1: k\n"));
+    assertTrue(script, script.contains("#  * 0 tables already match."));
+    assertTrue(script, script.contains("        if (Time.now - started > 60.0)"));
+    assertTrue(script, script.contains("        sleep 0.5"));
+    assertTrue(script, script.contains("error = scoot_split(admin, tablename, Bytes.toBytesBinary(\"f\"))"));
+    assertTrue(script, script.contains("error = scoot_split(admin, tablename, Bytes.toBytesBinary(\"\\#{x}\"))"));
+    assertTrue(script, script.contains("error = scoot_split(admin, tablename, Bytes.toBytesBinary(\"\\\"\\\\x00\"))"));
+    // the first split doesn't pause, but the rest do, and they all wait for the regions in transition
+    assertTrue(script, script.contains("tablename = \"table1\"\nscoot_await_regions_in_transition(admin)\nstarted = Time.now"));
+    assertEquals(2, script.split("\nscoot_pause\\(\\)\nscoot_await_regions_in_transition\\(admin\\)\nstarted").length - 1);
+    assertTrue(script, script.contains("puts \"Throttled for "));
+
+    scripter = new HBaseRubyRegionSplitScripter(new HBaseRegionLayoutDiff(cluster, cluster));
+    script = scripter.generateScript();
+    assertTrue(script, script.contains("#  * Add 0 region boundaries."));
+    assertFalse(script, script.contains("error = scoot_split("));
+    assertFalse(script, script.contains("$throttleLock"));
+
+    // written to a file, it replaces what's there without leaving temp files behind; a backslash in a key is escaped
+    // for Bytes.toBytesBinary, as well as for ruby
+    HBaseRegionLayout backslashed = new HBaseRegionLayout();
+    backslashed.addTable("table1", Arrays.asList(new byte[] {'a', '\\'}));
+    File directory = File.createTempFile("scoot_split_script_test", "");
+    directory.delete();
+    directory.mkdir();
+    try {
+      File scriptFile = new File(directory, "split.rb");
+      FileUtils.writeStringToFile(scriptFile, "an old script");
+      new HBaseRubyRegionSplitScripter(new HBaseRegionLayoutDiff(cluster, backslashed)).writeScript(scriptFile);
+      script = FileUtils.readFileToString(scriptFile, "UTF-8");
+      assertTrue(script, script.contains("error = scoot_split(admin, tablename, Bytes.toBytesBinary(\"a\\\\x5C\"))"));
+      assertEquals(Arrays.asList("split.rb"), Arrays.asList(directory.list()));
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  private static List<byte[]> keys(String... keys) {
+    List<byte[]> result = new ArrayList<byte[]>();
+    for (String key : keys) {
+      result.add(Bytes.toBytes(key));
+    }
+    return result;
+  }
+
+  /**
+   * The advisor's rules flag families by their settings and hints; rules can be added and disabled, and findings
+   * can fail the check, and come out as JSON
+   */
+  public void testAdvisor() throws Exception {
+    HBaseSchema schema = new HBaseSchema();
+    HTableDescriptor t = new HTableDescriptor("events");
+    HColumnDescriptor big = new HColumnDescriptor("d");
+    big.setValue(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name(), "500");
+    big.setValue(HBaseSchemaAttribute.ACCESS_PATTERN.name(), "random");
+    big.setBlocksize(256 * 1024);
+    big.setMaxVersions(100);
+    t.addFamily(big);
+    HColumnDescriptor lookup = new HColumnDescriptor("lookup");
+    lookup.setValue(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name(), "2");
+    lookup.setInMemory(true);
+    lookup.setCompressionType(Compression.Algorithm.GZ);
+    t.addFamily(lookup);
+    schema.addTable(t);
+    t = new HTableDescriptor("clean");
+    t.addFamily(new HColumnDescriptor("c"));
+    schema.addTable(t);
+
+    Configuration config = new Configuration();
+    HBaseSchemaAdvisor advisor = new HBaseSchemaAdvisor(config);
+    List<HBaseSchemaFinding> findings = advisor.advise(schema);
+    List<String> found = new ArrayList<String>();
+    for (HBaseSchemaFinding finding : findings) {
+      found.add(finding.severity + " " + finding.getLocation() + " " + finding.getAttributeName() + "=" + finding.value + " " + finding.rule);
+    }
+    assertEquals(Arrays.asList(
+        "WARNING events:d COMPRESSION=NONE compression",
+        "WARNING events:d BLOOMFILTER=NONE bloomfilter",
+        "WARNING events:d BLOCKSIZE=262144 blocksize",
+        "ERROR events:lookup IN_MEMORY=true in-memory",
+        "WARNING events:d VERSIONS=100 versions",
+        "INFO events:lookup NAME=lookup family-name"), found);
+    assertTrue(HBaseSchemaAdvisor.getReport(findings).endsWith("6 finding(s): 1 error(s), 4 warning(s), 1 info.\n"));
+    // nothing fails unless it's asked to
+    advisor.check(findings);
+
+    config.set(HBaseSchemaAdvisor.DISABLED_KEY, "in-memory,family-name");
+    config.set(HBaseSchemaAdvisor.RULES_KEY, OwnerRule.class.getName());
+    config.set(HBaseSchemaAdvisor.FAIL_ON_KEY, "warning");
+    config.setInt(HBaseSchemaRules.MAX_VERSIONS_KEY, 100);
+    advisor = new HBaseSchemaAdvisor(config);
+    findings = advisor.advise(schema);
+    assertEquals(5, findings.size());
+    assertEquals("INFO clean OWNER [owner] Table has no owner", findings.get(0).toString());
+    assertEquals(3, HBaseSchemaAdvisor.count(findings)[HBaseSchemaFinding.Severity.WARNING.ordinal()]);
+    try {
+      advisor.check(findings);
+      fail("Expected warnings to fail the check");
+    } catch (ScootException e) {
+      assertEquals("Schema advice failed: 3 finding(s) at WARNING or above.", e.getMessage());
+    }
+
+    String json = HBaseSchemaAdvisor.toJson(findings.subList(0, 1));
+    assertEquals("{\n  \"findings\": [\n" 
+        + "    {\"severity\": \"INFO\", \"rule\": \"owner\", \"table\": \"clean\", \"family\": null, \"attribute\": \"OWNER\", \"value\": null, \"message\": \"Table has no owner\"}\n" 
+        + "  ],\n  \"counts\": {\"INFO\": 1, \"WARNING\": 0, \"ERROR\": 0}\n}\n", json);
+    assertEquals("{\n  \"findings\": [],\n  \"counts\": {\"INFO\": 0, \"WARNING\": 0, \"ERROR\": 0}\n}\n", 
+        HBaseSchemaAdvisor.toJson(new ArrayList<HBaseSchemaFinding>()));
+  }
+
+  /**
+   * A rule to plug into the advisor, that looks at the table rather than its families
+   */
+  public static class OwnerRule extends HBaseSchemaRule {
+    public String getName() {
+      return "owner";
+    }
+
+    @Override
+    public void checkTable(HTableDescriptor table, List<HBaseSchemaFinding> findings) {
+      if (table.getValue(HBaseSchemaAttribute.OWNER.name) == null) {
+        findings.add(finding(HBaseSchemaFinding.Severity.INFO, table, null, HBaseSchemaAttribute.OWNER, "Table has no owner"));
+      }
+    }
+  }
+
+  /**
+   * The advisor's hints stay in the parsed schema, but never reach the cluster: adding them isn't a change, and
+   * they aren't written (or checked) by the script
+   */
+  public void testAdvisorHintsNotStored() throws Exception {
+    HBaseSchema from = new HBaseSchema();
+    HTableDescriptor t = new HTableDescriptor("hinted");
+    t.addFamily(new HColumnDescriptor("d"));
+    from.addTable(t);
+    HBaseSchema to = new HBaseSchema();
+    HTableDescriptor hinted = new HTableDescriptor("hinted");
+    HColumnDescriptor d = new HColumnDescriptor("d");
+    d.setValue(HBaseSchemaAttribute.ACCESS_PATTERN.name, "random");
+    d.setValue(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name, "500");
+    hinted.addFamily(d);
+    to.addTable(hinted);
+    HTableDescriptor created = new HTableDescriptor("created");
+    HColumnDescriptor scanned = new HColumnDescriptor("d");
+    scanned.setValue(HBaseSchemaAttribute.ACCESS_PATTERN.name, "scan");
+    created.addFamily(scanned);
+    to.addTable(created);
+
+    assertFalse(HBaseSchemaAttribute.ACCESS_PATTERN.storedOnCluster);
+    assertFalse(HBaseSchemaAttribute.isStoredOnCluster("EXPECTED_SIZE_GB", HColumnDescriptor.class));
+    assertTrue(HBaseSchemaAttribute.isStoredOnCluster("EXPECTED_SIZE_GB", HTableDescriptor.class));
+    HTableDescriptor stored = HBaseSchemaValues.forCluster(hinted);
+    assertNull(stored.getFamily(Bytes.toBytes("d")).getValue(HBaseSchemaAttribute.ACCESS_PATTERN.name));
+    assertEquals("random", hinted.getFamily(Bytes.toBytes("d")).getValue(HBaseSchemaAttribute.ACCESS_PATTERN.name));
+    assertSame(from.getTables().get(0), HBaseSchemaValues.forCluster(from.getTables().get(0)));
+
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    assertEquals(1, diff.getChangeCount(ChangeType.IGNORE));
+    assertEquals(0, diff.getChangeCount(ChangeType.ALTER));
+    assertEquals(1, diff.getChangeCount(ChangeType.CREATE));
+    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
+    assertFalse(script.contains(HBaseSchemaAttribute.ACCESS_PATTERN.name));
+    assertFalse(script.contains(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name));
+  }
+
+  /**
+   * The capacity model adds up what each table's regions ask of the servers, counting regions the way the profile,
+   * the cluster and the schema say, and flags what doesn't fit
+   */
+  public void testCapacityModel() throws Exception {
+    Configuration config = new Configuration(false);
+    assertFalse(HBaseCapacityModel.isConfigured(config));
+    config.setInt(HBaseCapacityModel.REGION_SERVERS_KEY, 4);
+    config.setLong(HBaseCapacityModel.HEAP_MB_KEY, 4096);
+    assertTrue(HBaseCapacityModel.isConfigured(config));
+
+    HBaseSchema schema = new HBaseSchema();
+    HTableDescriptor presplit = new HTableDescriptor("presplit");
+    presplit.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "16");
+    presplit.setMemStoreFlushSize(64 * 1024 * 1024);
+    presplit.addFamily(new HColumnDescriptor("d"));
+    schema.addTable(presplit);
+    HTableDescriptor existing = new HTableDescriptor("existing");
+    HColumnDescriptor cached = new HColumnDescriptor("c");
+    cached.setInMemory(true);
+    cached.setValue(HBaseSchemaAttribute.EXPECTED_SIZE_GB.name(), "1");
+    existing.addFamily(cached);
+    schema.addTable(existing);
+    HTableDescriptor plain = new HTableDescriptor("plain");
+    HColumnDescriptor unsized = new HColumnDescriptor("u");
+    unsized.setInMemory(true);
+    plain.addFamily(unsized);
+    schema.addTable(plain);
+
+    // 16 regions at 64 MB, and 1 each at the default 128 MB, over 4 servers; 256 MB of in-memory cache each
+    HBaseCapacityModel.Projection projection = new HBaseCapacityModel(config).project(schema, null);
+    assertEquals(18, projection.getRegions());
+    assertEquals((16 * 64 + 2 * 128) / 4.0, projection.getMemstoreBytesPerServer() / (1024 * 1024));
+    assertEquals(256.0, projection.getInMemoryBytesPerServer() / (1024 * 1024));
+    assertFalse(projection.getReport(), projection.isOverCommitted());
+    assertEquals(1, projection.getFindings().size());
+    assertEquals("INFO (cluster) IN_MEMORY [in-memory-cache] 1 in-memory family doesn't have EXPECTED_SIZE_GB, so can't be counted: [plain:u]", 
+        projection.getFindings().get(0).toString());
+    assertEquals("presplit", projection.getBiggestTables().get(0).tableName);
+
+    // the cluster's region counts beat the schema's, and the profile's beat both
+    HBaseRegionLayout layout = new HBaseRegionLayout();
+    List<byte[]> boundaries = new ArrayList<byte[]>();
+    for (int i = 1; i < 100; i++) {
+      boundaries.add(Bytes.toBytes(i));
+    }
+    layout.addTable("existing", boundaries);
+    layout.addTable("presplit", boundaries);
+    config.setLong(HBaseCapacityModel.TABLE_REGIONS_KEY_PREFIX + "presplit", 8);
+    config.setFloat(HBaseCapacityModel.IN_MEMORY_FRACTION_KEY, 0.2f);
+    projection = new HBaseCapacityModel(config).project(schema, layout);
+    assertEquals(8 + 100 + 1, projection.getRegions());
+    assertEquals((8 * 64 + 101 * 128) / 4.0, projection.getMemstoreBytesPerServer() / (1024 * 1024));
+    assertEquals("existing", projection.getBiggestTables().get(0).tableName);
+    assertTrue(projection.getReport(), projection.isOverCommitted());
+    List<String> found = new ArrayList<String>();
+    for (HBaseSchemaFinding finding : projection.getFindings()) {
+      found.add(finding.severity + " " + finding.rule + " " + finding.getAttributeName());
+    }
+    // 3360 MB of memstores is over the 1638.4 MB limit; 256 MB of in-memory families is over 204.8 MB
+    assertEquals(Arrays.asList("ERROR memstore MEMSTORE_FLUSHSIZE", "ERROR in-memory-cache IN_MEMORY", "INFO in-memory-cache IN_MEMORY"), found);
+
+    config.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.45f);
+    try {
+      new HBaseCapacityModel(config);
+      fail("Expected a profile HBase wouldn't start with to fail");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("HBase won't start like that"));
+    }
+  }
+
+  /**
+   * A diff with a cluster profile projects the "to" schema with the region counts a snapshot "from" records, the 
+   * same as the capacity command would
+   */
+  public void testDiffCapacityFromSnapshot() throws Exception {
+    File directory = File.createTempFile("scoot_diff_capacity_test", "");
+    directory.delete();
+    directory.mkdir();
+    File snapshot = new File(directory, "snapshot" + HBaseCompiledSchemaParser.FILE_EXTENSION);
+    File toFile = new File(directory, "to.xml");
+    PrintStream originalStdOut = System.out;
+    try {
+      HBaseSchema from = new HBaseSchema();
+      HTableDescriptor existing = new HTableDescriptor("existing");
+      existing.addFamily(new HColumnDescriptor("cf1"));
+      from.addTable(existing);
+      HBaseRegionLayout layout = new HBaseRegionLayout();
+      List<byte[]> boundaries = new ArrayList<byte[]>();
+      for (int i = 1; i < 100; i++) {
+        boundaries.add(Bytes.toBytes(i));
+      }
+      layout.addTable("existing", boundaries);
+      Map<String, String> properties = new HashMap<String, String>();
+      properties.put("source", "localhost:2181");
+      properties.put("snapshotAt", String.valueOf(System.currentTimeMillis()));
+      properties.put("clusterId", "testCluster");
+      properties.put("regionLayout", "true");
+      layout.toProperties(properties, "regions.");
+      HBaseCompiledSchemaWriter.write(from, properties, snapshot);
+      FileUtils.writeStringToFile(toFile, "<schema><table name=\"existing\"><columnFamilies><columnFamily name=\"cf1\"/>"
+          + "</columnFamilies></table></schema>");
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      System.setOut(new PrintStream(output));
+      new Scoot(new String[] {snapshot.getPath(), toFile.getPath(), "-output", new File(directory, "script.rb").getPath(), 
+          "-D" + HBaseCapacityModel.REGION_SERVERS_KEY + "=4", "-D" + HBaseCapacityModel.HEAP_MB_KEY + "=4096"}).run();
+      String report = output.toString();
+      assertTrue(report, report.contains("  Regions:     100 in all, 25.0 per server\n"));
+    } finally {
+      System.setOut(originalStdOut);
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  /**
+   * Scripts written to a file (with their sections kept in temp files) are the same as generated ones, replace
+   * whatever's there, and don't leave any temp files behind
+   */
+  public void testWriteScript() throws Exception {
+    File directory = File.createTempFile("scoot_write_script_test", "");
+    directory.delete();
+    directory.mkdir();
+    File fromFile = new File(directory, "from.xml");
+    File toFile = new File(directory, "to.xml");
+    File scriptFile = new File(directory, "script.rb");
+    try {
+      ScootBenchmark.writeGeneratedSchema(fromFile, 300, 0);
+      ScootBenchmark.writeGeneratedSchema(toFile, 300, 10);
+      HBaseSchema from = parse(new HBaseScootStreamingXMLParser(), fromFile.getPath());
+      HBaseSchema to = parse(new HBaseScootStreamingXMLParser(), toFile.getPath());
+      String expected = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(from, to)).generateScript();
+
+      FileUtils.writeStringToFile(scriptFile, "an old script");
+      HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter();
+      scripter.setSectionDirectory(directory);
+      new HBaseSchemaDiff(from, to, HBaseTableFilter.ALL, 1, scripter);
+      assertEquals(11, directory.list().length); // the schemas, and a temp file for each section
+      scripter.writeScript(scriptFile);
+      assertEquals(expected, FileUtils.readFileToString(scriptFile, "UTF-8"));
+      assertEquals(3, directory.list().length);
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  /**
+   * If the diff fails before the script is written, its section temp files don't stay behind next to the output
+   */
+  public void testDiscardScript() throws Exception {
+    File directory = File.createTempFile("scoot_discard_script_test", "");
+    directory.delete();
+    directory.mkdir();
+    File toFile = new File(directory, "to.xml");
+    try {
+      FileUtils.writeStringToFile(toFile, "<schema><table name=\"badSplit\" numRegionsToPreSplitOnCreation=\"4\" "
+          + "splitAlgorithm=\"NoSuchSplit\"><columnFamilies><columnFamily name=\"cf1\"/></columnFamilies></table></schema>");
+      try {
+        new Scoot(new String[] {"src/test/resources/EmptySchema.xml", toFile.getPath(), "-output", 
+            new File(directory, "script.rb").getPath()}).run();
+        fail("Expected an unknown split algorithm to fail");
+      } catch (ScootException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Unknown split algorithm NoSuchSplit"));
+      }
+      assertEquals(Arrays.asList("to.xml"), Arrays.asList(directory.list()));
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
 }
@@ -35,8 +35,22 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
-def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
+# HBase treats some differently written values the same way (like compression "none" and "NONE"), and a missing
+# value the same as its default; the kind and default of the attributes it defines make these compare as equal.
+def scoot_normalize(val, kind)
+    s = val.to_s.strip
+    case kind
+    when :number then (s =~ /\A[+-]?\d+\z/) ? s.to_i.to_s : val.to_s
+    when :boolean then (s =~ /\A(true|false)\z/i) ? s.downcase : val.to_s
+    when :enum then s.upcase
+    else val.to_s
+    end
+end
+
+def compare(errs, obj, action, attr, val, kind = nil, default = nil)
+    actual = obj.getValue(attr)
+    actual = default if actual.nil?
+    if (scoot_normalize(actual, kind) != scoot_normalize(val, kind))
         errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
     end
 end
@@ -85,7 +99,6 @@ table.setValue("IS_META", "false")
 table.setValue("IS_ROOT", "false")
 table.setValue("MAX_FILESIZE", "268435456")
 table.setValue("MEMSTORE_FLUSHSIZE", "67108864")
-table.setValue("NUMREGIONS", "12")
 table.setValue("OWNER", "ivarley")
 table.setValue("READONLY", "false")
 table.setValue("fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" numRegionsToPreSplitOnCreation=\"12\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
@@ -104,7 +117,19 @@ cf.setValue("TTL", "2147483647")
 cf.setValue("VERSIONS", "3")
 table.addFamily(cf)
 puts "Creating table '#{tablename}' ... "
-admin.createTable(table, Bytes.toBytes("\x00"), Bytes.toBytes("\xFF"), 12)
+splits = Java::byte[][11].new
+splits[0] = Bytes.toBytesBinary("\\x15UUUUUUU")
+splits[1] = Bytes.toBytesBinary("*\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA")
+splits[2] = Bytes.toBytesBinary("?\\xFF\\xFF\\xFF\\xFF\\xFF\\xFF\\xFF")
+splits[3] = Bytes.toBytesBinary("UUUUUUUT")
+splits[4] = Bytes.toBytesBinary("j\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA\\xA9")
+splits[5] = Bytes.toBytesBinary("\\x7F\\xFF\\xFF\\xFF\\xFF\\xFF\\xFF\\xFE")
+splits[6] = Bytes.toBytesBinary("\\x95UUUUUUS")
+splits[7] = Bytes.toBytesBinary("\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA\\xA8")
+splits[8] = Bytes.toBytesBinary("\\xBF\\xFF\\xFF\\xFF\\xFF\\xFF\\xFF\\xFD")
+splits[9] = Bytes.toBytesBinary("\\xD5UUUUUUR")
+splits[10] = Bytes.toBytesBinary("\\xEA\\xAA\\xAA\\xAA\\xAA\\xAA\\xAA\\xA7")
+admin.createTable(table, splits)
 puts "Created table '#{tablename}'"
 
 puts "Table creations & modifications successful."
@@ -118,38 +143,47 @@ puts "Table creations & modifications successful."
 # Table 'createMe' should exist
 tablename = "createMe"
 if !admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
+    postErrors << "Table '#{tablename}' should exist, but it does not.\n"
 end
 
 # Table 'createMe' will error if it doesn't match the expected definition.
 if admin.tableExists(tablename)
     table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preErrors, table, "create", "DEFERRED_LOG_FLUSH", "false")
-    compare(preErrors, table, "create", "IS_META", "false")
-    compare(preErrors, table, "create", "IS_ROOT", "false")
-    compare(preErrors, table, "create", "MAX_FILESIZE", "268435456")
-    compare(preErrors, table, "create", "MEMSTORE_FLUSHSIZE", "67108864")
-    compare(preErrors, table, "create", "NUMREGIONS", "12")
-    compare(preErrors, table, "create", "OWNER", "ivarley")
-    compare(preErrors, table, "create", "READONLY", "false")
-    compare(preErrors, table, "create", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" numRegionsToPreSplitOnCreation=\"12\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
+    compare(postErrors, table, "create", "DEFERRED_LOG_FLUSH", "false", :boolean, "false")
+    compare(postErrors, table, "create", "IS_META", "false", :boolean, "false")
+    compare(postErrors, table, "create", "IS_ROOT", "false", :boolean, "false")
+    compare(postErrors, table, "create", "MAX_FILESIZE", "268435456", :number, "10737418240")
+    compare(postErrors, table, "create", "MEMSTORE_FLUSHSIZE", "67108864", :number, "134217728")
+    compare(postErrors, table, "create", "OWNER", "ivarley")
+    compare(postErrors, table, "create", "READONLY", "false", :boolean, "false")
+    compare(postErrors, table, "create", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" numRegionsToPreSplitOnCreation=\"12\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
     # Column family: createMeColumnFamily1
-    cf = HColumnDescriptor.new("createMeColumnFamily1")
-    compare(preErrors, cf, "create", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "create", "BLOCKSIZE", "65536")
-    compare(preErrors, cf, "create", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "create", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "create", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "create", "IN_MEMORY", "false")
-    compare(preErrors, cf, "create", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "create", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "create", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "create", "TTL", "2147483647")
-    compare(preErrors, cf, "create", "VERSIONS", "3")
+    cfname = "createMeColumnFamily1"
+    cf = table.getFamily(cfname.bytes.to_a)
+    compare(postErrors, cf, "create", "BLOCKCACHE", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "BLOCKSIZE", "65536", :number, "65536")
+    compare(postErrors, cf, "create", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "COMPRESSION", "NONE", :enum, "none")
+    compare(postErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "IN_MEMORY", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "MIN_VERSIONS", "0", :number, "0")
+    compare(postErrors, cf, "create", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(postErrors, cf, "create", "TTL", "2147483647", :number, "2147483647")
+    compare(postErrors, cf, "create", "VERSIONS", "3", :number, "3")
 end
 
-puts "Post-validation successful."
+
+# If any post-validations had errors, report them and fail the script.
+if (postErrors.length > 0)
+    puts "There were #{postErrors.length} error(s) during table post-validation:"
+    print "#{postErrors.collect{|msg| "Error: " + msg}}"
+    raise
+    exit
+else
+    puts "Post-validation successful."
+end
 
 puts "Script complete. Share and enjoy."
 exit
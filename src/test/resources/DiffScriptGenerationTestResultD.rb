@@ -35,8 +35,22 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
-def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
+# HBase treats some differently written values the same way (like compression "none" and "NONE"), and a missing
+# value the same as its default; the kind and default of the attributes it defines make these compare as equal.
+def scoot_normalize(val, kind)
+    s = val.to_s.strip
+    case kind
+    when :number then (s =~ /\A[+-]?\d+\z/) ? s.to_i.to_s : val.to_s
+    when :boolean then (s =~ /\A(true|false)\z/i) ? s.downcase : val.to_s
+    when :enum then s.upcase
+    else val.to_s
+    end
+end
+
+def compare(errs, obj, action, attr, val, kind = nil, default = nil)
+    actual = obj.getValue(attr)
+    actual = default if actual.nil?
+    if (scoot_normalize(actual, kind) != scoot_normalize(val, kind))
         errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
     end
 end
@@ -58,29 +72,29 @@ end
 # Table 'createMe' will warn if it doesn't match the expected definition.
 if admin.tableExists(tablename)
     table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preWarnings, table, "drop", "DEFERRED_LOG_FLUSH", "false")
-    compare(preWarnings, table, "drop", "IS_META", "false")
-    compare(preWarnings, table, "drop", "IS_ROOT", "false")
-    compare(preWarnings, table, "drop", "MAX_FILESIZE", "268435456")
-    compare(preWarnings, table, "drop", "MEMSTORE_FLUSHSIZE", "67108864")
+    compare(preWarnings, table, "drop", "DEFERRED_LOG_FLUSH", "false", :boolean, "false")
+    compare(preWarnings, table, "drop", "IS_META", "false", :boolean, "false")
+    compare(preWarnings, table, "drop", "IS_ROOT", "false", :boolean, "false")
+    compare(preWarnings, table, "drop", "MAX_FILESIZE", "268435456", :number, "10737418240")
+    compare(preWarnings, table, "drop", "MEMSTORE_FLUSHSIZE", "67108864", :number, "134217728")
     compare(preWarnings, table, "drop", "OWNER", "ivarley")
-    compare(preWarnings, table, "drop", "READONLY", "false")
+    compare(preWarnings, table, "drop", "READONLY", "false", :boolean, "false")
     compare(preWarnings, table, "drop", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
     # Column family: createMeColumnFamily1
     cfname = "createMeColumnFamily1"
     cf = table.getFamily(cfname.bytes.to_a)
-    compare(preWarnings, cf, "drop", "BLOCKCACHE", "true")
-    compare(preWarnings, cf, "drop", "BLOCKSIZE", "65536")
-    compare(preWarnings, cf, "drop", "BLOOMFILTER", "NONE")
-    compare(preWarnings, cf, "drop", "COMPRESSION", "NONE")
-    compare(preWarnings, cf, "drop", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preWarnings, cf, "drop", "ENCODE_ON_DISK", "true")
-    compare(preWarnings, cf, "drop", "IN_MEMORY", "false")
-    compare(preWarnings, cf, "drop", "KEEP_DELETED_CELLS", "false")
-    compare(preWarnings, cf, "drop", "MIN_VERSIONS", "0")
-    compare(preWarnings, cf, "drop", "REPLICATION_SCOPE", "0")
-    compare(preWarnings, cf, "drop", "TTL", "2147483647")
-    compare(preWarnings, cf, "drop", "VERSIONS", "3")
+    compare(preWarnings, cf, "drop", "BLOCKCACHE", "true", :boolean, "true")
+    compare(preWarnings, cf, "drop", "BLOCKSIZE", "65536", :number, "65536")
+    compare(preWarnings, cf, "drop", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(preWarnings, cf, "drop", "COMPRESSION", "NONE", :enum, "none")
+    compare(preWarnings, cf, "drop", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(preWarnings, cf, "drop", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(preWarnings, cf, "drop", "IN_MEMORY", "false", :boolean, "false")
+    compare(preWarnings, cf, "drop", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(preWarnings, cf, "drop", "MIN_VERSIONS", "0", :number, "0")
+    compare(preWarnings, cf, "drop", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(preWarnings, cf, "drop", "TTL", "2147483647", :number, "2147483647")
+    compare(preWarnings, cf, "drop", "VERSIONS", "3", :number, "3")
 end
 
 
@@ -128,10 +142,19 @@ puts "Table creations & modifications successful."
 # Table 'createMe' should not exist
 tablename = "createMe"
 if admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should not already exist, but it does.\n"
+    postErrors << "Table '#{tablename}' should not already exist, but it does.\n"
 end
 
-puts "Post-validation successful."
+
+# If any post-validations had errors, report them and fail the script.
+if (postErrors.length > 0)
+    puts "There were #{postErrors.length} error(s) during table post-validation:"
+    print "#{postErrors.collect{|msg| "Error: " + msg}}"
+    raise
+    exit
+else
+    puts "Post-validation successful."
+end
 
 puts "Script complete. Share and enjoy."
 exit
@@ -8,6 +8,7 @@
 #  * Alter 1 table:
 #       minimal
 #       property change: minimal:fullSchema:<table isReadOnly="false" maxFileSizeMB="10240" memStoreFlushSizeMB="128" name="minimal" useDeferredLogFlush="false"><columnFamilies><columnFamily blockCache="true" blockSizeKB="64" bloomFilter="NONE" inMemory="false" maxVersions="3" name="minimalColumnFamily1" replicationScope="0" timeToLiveMS="2147483647"></columnFamily></columnFamilies></table>-><table name="minimal"><columnFamilies><columnFamily name="minimalColumnFamily1"></columnFamily></columnFamilies></table>;
+#       expected unavailability: whole table, while disabled for modification (metadata only; could be modified online if hbase.online.schema.update.enable were enabled)
 #
 #  * Drop 0 tables.
 #
@@ -36,8 +37,22 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
-def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
+# HBase treats some differently written values the same way (like compression "none" and "NONE"), and a missing
+# value the same as its default; the kind and default of the attributes it defines make these compare as equal.
+def scoot_normalize(val, kind)
+    s = val.to_s.strip
+    case kind
+    when :number then (s =~ /\A[+-]?\d+\z/) ? s.to_i.to_s : val.to_s
+    when :boolean then (s =~ /\A(true|false)\z/i) ? s.downcase : val.to_s
+    when :enum then s.upcase
+    else val.to_s
+    end
+end
+
+def compare(errs, obj, action, attr, val, kind = nil, default = nil)
+    actual = obj.getValue(attr)
+    actual = default if actual.nil?
+    if (scoot_normalize(actual, kind) != scoot_normalize(val, kind))
         errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
     end
 end
@@ -59,28 +74,28 @@ end
 # Table 'minimal' will error if it doesn't match the expected definition.
 if admin.tableExists(tablename)
     table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false")
-    compare(preErrors, table, "alter", "IS_META", "false")
-    compare(preErrors, table, "alter", "IS_ROOT", "false")
-    compare(preErrors, table, "alter", "MAX_FILESIZE", "10737418240")
-    compare(preErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "134217728")
-    compare(preErrors, table, "alter", "READONLY", "false")
+    compare(preErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false", :boolean, "false")
+    compare(preErrors, table, "alter", "IS_META", "false", :boolean, "false")
+    compare(preErrors, table, "alter", "IS_ROOT", "false", :boolean, "false")
+    compare(preErrors, table, "alter", "MAX_FILESIZE", "10737418240", :number, "10737418240")
+    compare(preErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "134217728", :number, "134217728")
+    compare(preErrors, table, "alter", "READONLY", "false", :boolean, "false")
     compare(preErrors, table, "alter", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"10240\" memStoreFlushSizeMB=\"128\" name=\"minimal\" useDeferredLogFlush=\"false\"><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"minimalColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"></columnFamily></columnFamilies></table>")
     # Column family: minimalColumnFamily1
     cfname = "minimalColumnFamily1"
     cf = table.getFamily(cfname.bytes.to_a)
-    compare(preErrors, cf, "alter", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "alter", "BLOCKSIZE", "65536")
-    compare(preErrors, cf, "alter", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "alter", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "alter", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "alter", "IN_MEMORY", "false")
-    compare(preErrors, cf, "alter", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "alter", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "alter", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "alter", "TTL", "2147483647")
-    compare(preErrors, cf, "alter", "VERSIONS", "3")
+    compare(preErrors, cf, "alter", "BLOCKCACHE", "true", :boolean, "true")
+    compare(preErrors, cf, "alter", "BLOCKSIZE", "65536", :number, "65536")
+    compare(preErrors, cf, "alter", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(preErrors, cf, "alter", "COMPRESSION", "NONE", :enum, "none")
+    compare(preErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(preErrors, cf, "alter", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(preErrors, cf, "alter", "IN_MEMORY", "false", :boolean, "false")
+    compare(preErrors, cf, "alter", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(preErrors, cf, "alter", "MIN_VERSIONS", "0", :number, "0")
+    compare(preErrors, cf, "alter", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(preErrors, cf, "alter", "TTL", "2147483647", :number, "2147483647")
+    compare(preErrors, cf, "alter", "VERSIONS", "3", :number, "3")
 end
 
 
@@ -106,30 +121,10 @@ end
 
 # Modify table: minimal
 tablename = "minimal"
-table = admin.getTableDescriptor(tablename.bytes.to_a)
-table.setValue("DEFERRED_LOG_FLUSH", "false")
-table.setValue("IS_META", "false")
-table.setValue("IS_ROOT", "false")
-table.setValue("MAX_FILESIZE", "10737418240")
-table.setValue("MEMSTORE_FLUSHSIZE", "134217728")
-table.setValue("READONLY", "false")
-table.setValue("fullSchema", "<table name=\"minimal\"><columnFamilies><columnFamily name=\"minimalColumnFamily1\"></columnFamily></columnFamilies></table>")
-cf = HColumnDescriptor.new("minimalColumnFamily1")
-cf.setValue("BLOCKCACHE", "true")
-cf.setValue("BLOCKSIZE", "65536")
-cf.setValue("BLOOMFILTER", "NONE")
-cf.setValue("COMPRESSION", "NONE")
-cf.setValue("DATA_BLOCK_ENCODING", "NONE")
-cf.setValue("ENCODE_ON_DISK", "true")
-cf.setValue("IN_MEMORY", "false")
-cf.setValue("KEEP_DELETED_CELLS", "false")
-cf.setValue("MIN_VERSIONS", "0")
-cf.setValue("REPLICATION_SCOPE", "0")
-cf.setValue("TTL", "2147483647")
-cf.setValue("VERSIONS", "3")
-table.addFamily(cf)
 puts "Disabling table '#{tablename}' prior to modification ..."
 admin.disableTable(tablename)
+table = admin.getTableDescriptor(tablename.bytes.to_a)
+table.setValue("fullSchema", "<table name=\"minimal\"><columnFamilies><columnFamily name=\"minimalColumnFamily1\"></columnFamily></columnFamilies></table>")
 puts "Modifying table '#{tablename}' ..."
 admin.modifyTable(tablename.bytes.to_a, table)
 puts "Enabling table '#{tablename}' after modification ..."
@@ -147,37 +142,46 @@ puts "Table creations & modifications successful."
 # Table 'minimal' should exist
 tablename = "minimal"
 if !admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
+    postErrors << "Table '#{tablename}' should exist, but it does not.\n"
 end
 
 # Table 'minimal' will error if it doesn't match the expected definition.
 if admin.tableExists(tablename)
     table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false")
-    compare(preErrors, table, "alter", "IS_META", "false")
-    compare(preErrors, table, "alter", "IS_ROOT", "false")
-    compare(preErrors, table, "alter", "MAX_FILESIZE", "10737418240")
-    compare(preErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "134217728")
-    compare(preErrors, table, "alter", "READONLY", "false")
-    compare(preErrors, table, "alter", "fullSchema", "<table name=\"minimal\"><columnFamilies><columnFamily name=\"minimalColumnFamily1\"></columnFamily></columnFamilies></table>")
+    compare(postErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false", :boolean, "false")
+    compare(postErrors, table, "alter", "IS_META", "false", :boolean, "false")
+    compare(postErrors, table, "alter", "IS_ROOT", "false", :boolean, "false")
+    compare(postErrors, table, "alter", "MAX_FILESIZE", "10737418240", :number, "10737418240")
+    compare(postErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "134217728", :number, "134217728")
+    compare(postErrors, table, "alter", "READONLY", "false", :boolean, "false")
+    compare(postErrors, table, "alter", "fullSchema", "<table name=\"minimal\"><columnFamilies><columnFamily name=\"minimalColumnFamily1\"></columnFamily></columnFamilies></table>")
     # Column family: minimalColumnFamily1
     cfname = "minimalColumnFamily1"
     cf = table.getFamily(cfname.bytes.to_a)
-    compare(preErrors, cf, "alter", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "alter", "BLOCKSIZE", "65536")
-    compare(preErrors, cf, "alter", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "alter", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "alter", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "alter", "IN_MEMORY", "false")
-    compare(preErrors, cf, "alter", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "alter", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "alter", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "alter", "TTL", "2147483647")
-    compare(preErrors, cf, "alter", "VERSIONS", "3")
+    compare(postErrors, cf, "alter", "BLOCKCACHE", "true", :boolean, "true")
+    compare(postErrors, cf, "alter", "BLOCKSIZE", "65536", :number, "65536")
+    compare(postErrors, cf, "alter", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "alter", "COMPRESSION", "NONE", :enum, "none")
+    compare(postErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "alter", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(postErrors, cf, "alter", "IN_MEMORY", "false", :boolean, "false")
+    compare(postErrors, cf, "alter", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(postErrors, cf, "alter", "MIN_VERSIONS", "0", :number, "0")
+    compare(postErrors, cf, "alter", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(postErrors, cf, "alter", "TTL", "2147483647", :number, "2147483647")
+    compare(postErrors, cf, "alter", "VERSIONS", "3", :number, "3")
 end
 
-puts "Post-validation successful."
+
+# If any post-validations had errors, report them and fail the script.
+if (postErrors.length > 0)
+    puts "There were #{postErrors.length} error(s) during table post-validation:"
+    print "#{postErrors.collect{|msg| "Error: " + msg}}"
+    raise
+    exit
+else
+    puts "Post-validation successful."
+end
 
 puts "Script complete. Share and enjoy."
 exit
@@ -35,8 +35,22 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
-def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
+# HBase treats some differently written values the same way (like compression "none" and "NONE"), and a missing
+# value the same as its default; the kind and default of the attributes it defines make these compare as equal.
+def scoot_normalize(val, kind)
+    s = val.to_s.strip
+    case kind
+    when :number then (s =~ /\A[+-]?\d+\z/) ? s.to_i.to_s : val.to_s
+    when :boolean then (s =~ /\A(true|false)\z/i) ? s.downcase : val.to_s
+    when :enum then s.upcase
+    else val.to_s
+    end
+end
+
+def compare(errs, obj, action, attr, val, kind = nil, default = nil)
+    actual = obj.getValue(attr)
+    actual = default if actual.nil?
+    if (scoot_normalize(actual, kind) != scoot_normalize(val, kind))
         errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
     end
 end
@@ -129,51 +143,60 @@ puts "Table creations & modifications successful."
 # Table 'PHOENIX_TEST' should exist
 tablename = "PHOENIX_TEST"
 if !admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
+    postErrors << "Table '#{tablename}' should exist, but it does not.\n"
 end
 
 # Table 'PHOENIX_TEST' will error if it doesn't match the expected definition.
 if admin.tableExists(tablename)
     table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preErrors, table, "create", "DEFERRED_LOG_FLUSH", "false")
-    compare(preErrors, table, "create", "IS_META", "false")
-    compare(preErrors, table, "create", "IS_ROOT", "false")
-    compare(preErrors, table, "create", "MAX_FILESIZE", "10737418240")
-    compare(preErrors, table, "create", "MEMSTORE_FLUSHSIZE", "134217728")
-    compare(preErrors, table, "create", "READONLY", "false")
+    compare(postErrors, table, "create", "DEFERRED_LOG_FLUSH", "false", :boolean, "false")
+    compare(postErrors, table, "create", "IS_META", "false", :boolean, "false")
+    compare(postErrors, table, "create", "IS_ROOT", "false", :boolean, "false")
+    compare(postErrors, table, "create", "MAX_FILESIZE", "10737418240", :number, "10737418240")
+    compare(postErrors, table, "create", "MEMSTORE_FLUSHSIZE", "134217728", :number, "134217728")
+    compare(postErrors, table, "create", "READONLY", "false", :boolean, "false")
     # Column family: 1
     cfname = "1"
     cf = table.getFamily(cfname.bytes.to_a)
-    compare(preErrors, cf, "create", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "create", "BLOCKSIZE", "65536")
-    compare(preErrors, cf, "create", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "create", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "create", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "create", "IN_MEMORY", "false")
-    compare(preErrors, cf, "create", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "create", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "create", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "create", "TTL", "2147483647")
-    compare(preErrors, cf, "create", "VERSIONS", "3")
+    compare(postErrors, cf, "create", "BLOCKCACHE", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "BLOCKSIZE", "65536", :number, "65536")
+    compare(postErrors, cf, "create", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "COMPRESSION", "NONE", :enum, "none")
+    compare(postErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "IN_MEMORY", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "MIN_VERSIONS", "0", :number, "0")
+    compare(postErrors, cf, "create", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(postErrors, cf, "create", "TTL", "2147483647", :number, "2147483647")
+    compare(postErrors, cf, "create", "VERSIONS", "3", :number, "3")
     # Column family: 2
     cfname = "2"
     cf = table.getFamily(cfname.bytes.to_a)
-    compare(preErrors, cf, "create", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "create", "BLOCKSIZE", "65536")
-    compare(preErrors, cf, "create", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "create", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "create", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "create", "IN_MEMORY", "false")
-    compare(preErrors, cf, "create", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "create", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "create", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "create", "TTL", "2147483647")
-    compare(preErrors, cf, "create", "VERSIONS", "3")
+    compare(postErrors, cf, "create", "BLOCKCACHE", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "BLOCKSIZE", "65536", :number, "65536")
+    compare(postErrors, cf, "create", "BLOOMFILTER", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "COMPRESSION", "NONE", :enum, "none")
+    compare(postErrors, cf, "create", "DATA_BLOCK_ENCODING", "NONE", :enum, "NONE")
+    compare(postErrors, cf, "create", "ENCODE_ON_DISK", "true", :boolean, "true")
+    compare(postErrors, cf, "create", "IN_MEMORY", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "KEEP_DELETED_CELLS", "false", :boolean, "false")
+    compare(postErrors, cf, "create", "MIN_VERSIONS", "0", :number, "0")
+    compare(postErrors, cf, "create", "REPLICATION_SCOPE", "0", :number, "0")
+    compare(postErrors, cf, "create", "TTL", "2147483647", :number, "2147483647")
+    compare(postErrors, cf, "create", "VERSIONS", "3", :number, "3")
 end
 
-puts "Post-validation successful."
+
+# If any post-validations had errors, report them and fail the script.
+if (postErrors.length > 0)
+    puts "There were #{postErrors.length} error(s) during table post-validation:"
+    print "#{postErrors.collect{|msg| "Error: " + msg}}"
+    raise
+    exit
+else
+    puts "Post-validation successful."
+end
 
 puts "Script complete. Share and enjoy."
 exit